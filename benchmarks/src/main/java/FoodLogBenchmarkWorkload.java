@@ -0,0 +1,188 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarked food log operations against the local food log
+ * database using a synthetic data set. The synthetic entries are dated well
+ * before any real entries and are removed again by tearDown, but the
+ * benchmarks should still be run against a scratch copy of the database.
+ *
+ * @author iDoc1
+ *
+ */
+public class FoodLogBenchmarkWorkload implements foodlog.benchmarks.FoodLogWorkload {
+
+    private static final long SEED = 42;
+
+    private FoodLogConnection foodLogConn;
+    private FoodLogComm foodLogComm;
+    private SyntheticFoodLogData data;
+
+    // Fetched once so the ReportBuilder benchmarks only time in-memory work
+    private ResultSet rangeResults;
+    private ResultSet calorieData;
+    private Map<String, CalorieTableEntry> calorieMap;
+
+    private List<FoodTableEntry> insertBatch;
+    private LocalDate middleDate;
+    private LocalDate monthStart;
+    private LocalDate monthEnd;
+    private PrintStream discardOutput;
+
+    @Override
+    public void setUp(int entryCount, int foodCardinality, int daySpan) throws Exception {
+        this.foodLogConn = new FoodLogConnection();
+        this.foodLogComm = new FoodLogComm(this.foodLogConn);
+        this.data = new SyntheticFoodLogData(foodCardinality, daySpan, SEED);
+
+        // Add calorie details before entries so every entry's food is known
+        for (int i = 0; i < this.data.getFoodCardinality(); i++) {
+            this.foodLogComm.insertFoodDetails(this.data.foodName(i), this.data.caloriesPerServing(i)
+                    , this.data.foodCategory(i));
+        }
+
+        BatchInsertResult result = this.foodLogComm.insertRows(this.data.generateEntries(entryCount));
+        if (!result.isSuccessful()) {
+            throw new IllegalStateException(result.getFailedRows().size() + " synthetic entries not inserted.");
+        }
+
+        this.rangeResults = this.foodLogComm.fetchDataFromDateRange(this.data.getStartDate(), this.data.getEndDate());
+        this.calorieData = this.foodLogComm.fetchCalorieData();
+        this.calorieMap = this.foodLogComm.getCalorieMap();
+
+        this.insertBatch = this.data.generateEntries(FoodLogComm.DEFAULT_BATCH_SIZE);
+        this.middleDate = this.data.dateAt(daySpan / 2);
+        this.monthStart = this.data.dateAt(daySpan / 2);
+        this.monthEnd = this.data.dateAt(daySpan / 2 + 30);
+        this.discardOutput = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        try (Connection connection = this.foodLogConn.getFoodLogConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM food_log_database.food_log WHERE entry_notes = ?")) {
+                statement.setString(1, SyntheticFoodLogData.ENTRY_NOTES);
+                statement.executeUpdate();
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE c FROM food_log_database.calorie_table c JOIN food_log_database.foods f " +
+                    "ON f.food_id = c.food_id WHERE f.food_name LIKE ?")) {
+                statement.setString(1, SyntheticFoodLogData.FOOD_NAME_PREFIX + "%");
+                statement.executeUpdate();
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM food_log_database.foods WHERE food_name LIKE ?")) {
+                statement.setString(1, SyntheticFoodLogData.FOOD_NAME_PREFIX + "%");
+                statement.executeUpdate();
+            }
+
+            // Recompute the daily summaries of the synthetic date span
+            List<LocalDate> dates = new ArrayList<>();
+            for (int i = 0; i < this.data.getDaySpan(); i++) {
+                dates.add(this.data.dateAt(i));
+                if (dates.size() == FoodLogComm.DEFAULT_BATCH_SIZE || i == this.data.getDaySpan() - 1) {
+                    DailySummaryTable.refreshDates(connection, dates);
+                    dates.clear();
+                }
+            }
+
+            connection.commit();
+        } finally {
+            this.foodLogConn.closeConn();
+        }
+    }
+
+    @Override
+    public Object getDataReport() throws SQLException {
+        this.calorieData.beforeFirst();
+        return new ReportBuilder(this.rangeResults).getDataReport(this.calorieData);
+    }
+
+    @Override
+    public Object getDataReportFromCalorieMap() {
+        return new ReportBuilder(this.rangeResults).getDataReport(this.calorieMap);
+    }
+
+    @Override
+    public Object getResultsMap() {
+        return new ReportBuilder(this.rangeResults).getResultsMap();
+    }
+
+    @Override
+    public Object getCalorieMap() throws SQLException {
+        this.calorieData.beforeFirst();
+        return new ReportBuilder(this.rangeResults).getCalorieMap(this.calorieData);
+    }
+
+    @Override
+    public void printResults() {
+        PrintStream console = System.out;
+        System.setOut(this.discardOutput);
+        try {
+            new ReportBuilder(this.rangeResults).printResults();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    @Override
+    public boolean insertRowGivenDate() {
+        FoodDetails foodEaten = new FoodDetails(this.data.randomFoodName(), this.data.randomMealType(), 1);
+        return this.foodLogComm.insertRowGivenDate(foodEaten, this.data.randomDate()
+                , SyntheticFoodLogData.ENTRY_NOTES);
+    }
+
+    @Override
+    public Object insertRows(int batchSize) {
+        return this.foodLogComm.insertRows(this.insertBatch, batchSize);
+    }
+
+    @Override
+    public Object fetchDataFromDate() {
+        return this.foodLogComm.fetchDataFromDate(this.middleDate);
+    }
+
+    @Override
+    public Object fetchDataFromDateRange() {
+        return this.foodLogComm.fetchDataFromDateRange(this.monthStart, this.monthEnd);
+    }
+
+    @Override
+    public Object fetchDataFromFood() {
+        return this.foodLogComm.fetchDataFromFood(this.data.foodName(0));
+    }
+
+    @Override
+    public Object streamDataReport() {
+        return this.foodLogComm.streamDataFromDateRange(this.data.getStartDate(), this.data.getEndDate()
+                , results -> new ReportBuilder(results).getDataReport(this.foodLogComm.getCalorieMap()));
+    }
+
+    @Override
+    public Object aggregateDataReport() {
+        return this.foodLogComm.aggregateDataReport(this.data.getStartDate(), this.data.getEndDate());
+    }
+
+    @Override
+    public Object fetchSummaryDataReport() {
+        return this.foodLogComm.fetchSummaryDataReport(this.data.getStartDate(), this.data.getEndDate());
+    }
+
+    @Override
+    public Object fetchCalorieData() {
+        return this.foodLogComm.fetchCalorieData();
+    }
+}
@@ -0,0 +1,134 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible synthetic food log for benchmarks. Entries are
+ * spread randomly over a span of days starting at a fixed date well before
+ * any real entries, and every generated food has calorie details. All
+ * generated entries carry the same entry notes so they can be removed again.
+ *
+ * @author iDoc1
+ *
+ */
+public class SyntheticFoodLogData {
+
+    public static final String ENTRY_NOTES = "jmh synthetic entry";
+    public static final String FOOD_NAME_PREFIX = "jmh food ";
+    public static final LocalDate START_DATE = LocalDate.of(1990, 1, 1);
+
+    private static final String[] MEAL_TYPES = {"breakfast", "brunch", "lunch", "dinner", "snack"};
+    private static final String[] FOOD_CATEGORIES = {"grain", "fruit", "vegetable", "dairy", "protein", "other"};
+
+    private final int foodCardinality;
+    private final int daySpan;
+    private final Random random;
+
+    /**
+     * Constructs a SyntheticFoodLogData generator
+     * @param foodCardinality   Number of distinct foods to generate entries for
+     * @param daySpan           Number of days the entries are spread over
+     * @param seed              Seed of the random generator, so runs are repeatable
+     */
+    public SyntheticFoodLogData(int foodCardinality, int daySpan, long seed) {
+        this.foodCardinality = Math.max(1, foodCardinality);
+        this.daySpan = Math.max(1, daySpan);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates the given number of random food log entries
+     * @param entryCount    Number of entries to generate
+     * @return              Entries ready for FoodLogComm.insertRows
+     */
+    public List<FoodTableEntry> generateEntries(int entryCount) {
+        List<FoodTableEntry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(new FoodTableEntry(this.randomDate(), this.randomFoodName(), this.randomMealType()
+                    , 0.5 + this.random.nextInt(6) / 2.0, ENTRY_NOTES));
+        }
+        return entries;
+    }
+
+    /**
+     * @param foodIndex Index of a generated food, from 0 to the food cardinality
+     * @return          Name of the food
+     */
+    public String foodName(int foodIndex) {
+        return String.format("%s%05d", FOOD_NAME_PREFIX, foodIndex);
+    }
+
+    /**
+     * @param foodIndex Index of a generated food
+     * @return          Calories per serving of the food
+     */
+    public int caloriesPerServing(int foodIndex) {
+        return 50 + (foodIndex * 37) % 500;
+    }
+
+    /**
+     * @param foodIndex Index of a generated food
+     * @return          Category of the food
+     */
+    public String foodCategory(int foodIndex) {
+        return FOOD_CATEGORIES[foodIndex % FOOD_CATEGORIES.length];
+    }
+
+    /**
+     * @return  Number of distinct foods
+     */
+    public int getFoodCardinality() {
+        return this.foodCardinality;
+    }
+
+    /**
+     * @return  First date entries may fall on
+     */
+    public LocalDate getStartDate() {
+        return START_DATE;
+    }
+
+    /**
+     * @return  Last date entries may fall on
+     */
+    public LocalDate getEndDate() {
+        return START_DATE.plusDays(this.daySpan - 1);
+    }
+
+    /**
+     * @param dayOffset Number of days after the start date
+     * @return          The date
+     */
+    public LocalDate dateAt(int dayOffset) {
+        return START_DATE.plusDays(Math.min(dayOffset, this.daySpan - 1));
+    }
+
+    /**
+     * @return  Number of days the entries are spread over
+     */
+    public int getDaySpan() {
+        return this.daySpan;
+    }
+
+    /**
+     * @return  A random date within the day span
+     */
+    public LocalDate randomDate() {
+        return START_DATE.plusDays(this.random.nextInt(this.daySpan));
+    }
+
+    /**
+     * @return  A random generated food name
+     */
+    public String randomFoodName() {
+        return this.foodName(this.random.nextInt(this.foodCardinality));
+    }
+
+    /**
+     * @return  A random meal type
+     */
+    public String randomMealType() {
+        return MEAL_TYPES[this.random.nextInt(MEAL_TYPES.length)];
+    }
+}
@@ -0,0 +1,77 @@
+package foodlog.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the FoodLogComm insert, fetch, and report methods against the
+ * local food log database, including the database round trips.
+ *
+ * @author iDoc1
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FoodLogCommBenchmark {
+
+    @Param({"500"})
+    public int batchSize;
+
+    @Benchmark
+    public boolean insertRowGivenDate(FoodLogState state) {
+        return state.workload.insertRowGivenDate();
+    }
+
+    @Benchmark
+    public Object insertRows(FoodLogState state) {
+        return state.workload.insertRows(this.batchSize);
+    }
+
+    @Benchmark
+    public Object fetchDataFromDate(FoodLogState state) {
+        return state.workload.fetchDataFromDate();
+    }
+
+    @Benchmark
+    public Object fetchDataFromDateRange(FoodLogState state) {
+        return state.workload.fetchDataFromDateRange();
+    }
+
+    @Benchmark
+    public Object fetchDataFromFood(FoodLogState state) {
+        return state.workload.fetchDataFromFood();
+    }
+
+    @Benchmark
+    public Object fetchCalorieData(FoodLogState state) {
+        return state.workload.fetchCalorieData();
+    }
+
+    @Benchmark
+    public Object streamDataReport(FoodLogState state) {
+        return state.workload.streamDataReport();
+    }
+
+    @Benchmark
+    public Object aggregateDataReport(FoodLogState state) {
+        return state.workload.aggregateDataReport();
+    }
+
+    @Benchmark
+    public Object fetchSummaryDataReport(FoodLogState state) {
+        return state.workload.fetchSummaryDataReport();
+    }
+}
@@ -0,0 +1,49 @@
+package foodlog.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state that loads a synthetic food log into the local database
+ * once per trial and removes it afterwards. The size and shape of the data
+ * can be changed with JMH's -p option, for example -p entryCount=1000000.
+ *
+ * @author iDoc1
+ *
+ */
+@State(Scope.Benchmark)
+public class FoodLogState {
+
+    @Param({"10000"})
+    public int entryCount;
+
+    @Param({"200"})
+    public int foodCardinality;
+
+    @Param({"365"})
+    public int daySpan;
+
+    public FoodLogWorkload workload;
+
+    /**
+     * Creates the workload and loads the synthetic data
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workload = (FoodLogWorkload) Class.forName("FoodLogBenchmarkWorkload")
+                .getDeclaredConstructor().newInstance();
+        this.workload.setUp(this.entryCount, this.foodCardinality, this.daySpan);
+    }
+
+    /**
+     * Removes the synthetic data
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.workload.tearDown();
+    }
+}
@@ -0,0 +1,56 @@
+package foodlog.benchmarks;
+
+/**
+ * The operations measured by the food log benchmarks. The app's classes are
+ * in the default package, which classes in a named package such as the JMH
+ * benchmarks cannot refer to, so the benchmarks call the app through this
+ * interface and FoodLogBenchmarkWorkload implements it in the default package.
+ *
+ * @author iDoc1
+ *
+ */
+public interface FoodLogWorkload {
+
+    /**
+     * Loads synthetic entries and calorie details into the local food log database
+     * @param entryCount        Number of food log entries to generate
+     * @param foodCardinality   Number of distinct foods in the generated entries
+     * @param daySpan           Number of days the generated entries are spread over
+     */
+    void setUp(int entryCount, int foodCardinality, int daySpan) throws Exception;
+
+    /**
+     * Removes all synthetic data added by setUp and the insert operations
+     */
+    void tearDown() throws Exception;
+
+    // ReportBuilder operations over results fetched during setUp
+    Object getDataReport() throws Exception;
+
+    Object getDataReportFromCalorieMap();
+
+    Object getResultsMap();
+
+    Object getCalorieMap() throws Exception;
+
+    void printResults();
+
+    // FoodLogComm operations against the database
+    boolean insertRowGivenDate();
+
+    Object insertRows(int batchSize);
+
+    Object fetchDataFromDate();
+
+    Object fetchDataFromDateRange();
+
+    Object fetchDataFromFood();
+
+    Object streamDataReport();
+
+    Object aggregateDataReport();
+
+    Object fetchSummaryDataReport();
+
+    Object fetchCalorieData();
+}
@@ -0,0 +1,50 @@
+package foodlog.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the ReportBuilder methods over food log results that were fetched
+ * from the database once during setup, so only the in-memory work is timed.
+ *
+ * @author iDoc1
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBuilderBenchmark {
+
+    @Benchmark
+    public Object getDataReport(FoodLogState state) throws Exception {
+        return state.workload.getDataReport();
+    }
+
+    @Benchmark
+    public Object getDataReportFromCalorieMap(FoodLogState state) {
+        return state.workload.getDataReportFromCalorieMap();
+    }
+
+    @Benchmark
+    public Object getResultsMap(FoodLogState state) {
+        return state.workload.getResultsMap();
+    }
+
+    @Benchmark
+    public Object getCalorieMap(FoodLogState state) throws Exception {
+        return state.workload.getCalorieMap();
+    }
+
+    @Benchmark
+    public void printResults(FoodLogState state) {
+        state.workload.printResults();
+    }
+}
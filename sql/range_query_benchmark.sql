@@ -0,0 +1,81 @@
+-- Measures food_log lookup latency before and after the indexes added by
+-- schema migrations 1, 3, and 6 (see SchemaMigrator.java). Run this against a scratch
+-- copy of food_log_database after the app has started once, since the script
+-- inserts 1,000,000 synthetic entries spread over the last ten years.
+--
+-- Each query is run twice with EXPLAIN ANALYZE: once with the new indexes
+-- ignored (the full table scan the queries used to do) and once as the app
+-- runs it. Compare the "actual time" of the top line of each plan.
+
+USE food_log_database;
+
+-- Generate 1,000,000 entries over 3,650 days with 500 distinct foods
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT IGNORE INTO foods (food_name)
+WITH RECURSIVE seq (n) AS (
+    SELECT 0
+    UNION ALL
+    SELECT n + 1 FROM seq WHERE n < 499
+)
+SELECT CONCAT('food ', n) FROM seq;
+
+INSERT INTO food_log (entry_date, food_id, meal_type, serving_quantity, entry_notes)
+WITH RECURSIVE seq (n) AS (
+    SELECT 1
+    UNION ALL
+    SELECT n + 1 FROM seq WHERE n < 1000000
+)
+SELECT CURDATE() - INTERVAL (n MOD 3650) DAY,
+       f.food_id,
+       ELT(1 + n MOD 5, 'breakfast', 'brunch', 'lunch', 'dinner', 'snack'),
+       1 + (n MOD 3),
+       NULL
+FROM seq JOIN foods f ON f.food_name = CONCAT('food ', n MOD 500);
+
+ANALYZE TABLE food_log;
+
+-- fetchDataFromDate
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    IGNORE INDEX (idx_food_log_entry_date_entry_id, idx_food_log_entry_date_meal_type)
+    WHERE a.entry_date = CURDATE() - INTERVAL 100 DAY ORDER BY a.entry_date;
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    WHERE a.entry_date = CURDATE() - INTERVAL 100 DAY ORDER BY a.entry_date;
+
+-- fetchDataFromDateRange (one week)
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    IGNORE INDEX (idx_food_log_entry_date_entry_id, idx_food_log_entry_date_meal_type)
+    WHERE a.entry_date >= CURDATE() - INTERVAL 107 DAY
+    AND a.entry_date <= CURDATE() - INTERVAL 100 DAY ORDER BY a.entry_date;
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    WHERE a.entry_date >= CURDATE() - INTERVAL 107 DAY
+    AND a.entry_date <= CURDATE() - INTERVAL 100 DAY ORDER BY a.entry_date;
+
+-- fetchMonthData
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    IGNORE INDEX (idx_food_log_entry_date_entry_id, idx_food_log_entry_date_meal_type)
+    WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH;
+EXPLAIN ANALYZE SELECT * FROM food_log a
+    WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH;
+
+-- Meal type lookups within a date range
+EXPLAIN ANALYZE SELECT COUNT(*) FROM food_log a
+    IGNORE INDEX (idx_food_log_entry_date_entry_id, idx_food_log_entry_date_meal_type)
+    WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH AND a.meal_type = 'dinner';
+EXPLAIN ANALYZE SELECT COUNT(*) FROM food_log a
+    WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH AND a.meal_type = 'dinner';
+
+-- Exact food name lookup through the foods table (schema migrations 3 and 6)
+EXPLAIN ANALYZE SELECT a.* FROM food_log a IGNORE INDEX (idx_food_log_food_id_entry_date_entry_id)
+    JOIN foods f ON f.food_id = a.food_id
+    WHERE f.food_name = 'food 42' ORDER BY a.entry_date;
+EXPLAIN ANALYZE SELECT a.* FROM food_log a
+    JOIN foods f ON f.food_id = a.food_id
+    WHERE f.food_name = 'food 42' ORDER BY a.entry_date;
+
+-- Rows matched by deleteOldEntries(3285), which keeps the last nine years
+EXPLAIN ANALYZE SELECT COUNT(*) FROM food_log a
+    IGNORE INDEX (idx_food_log_entry_date_entry_id, idx_food_log_entry_date_meal_type)
+    WHERE a.entry_date < CURDATE() - INTERVAL 3285 DAY;
+EXPLAIN ANALYZE SELECT COUNT(*) FROM food_log a
+    WHERE a.entry_date < CURDATE() - INTERVAL 3285 DAY;
@@ -0,0 +1,264 @@
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs the operations of a FoodLogComm on a dedicated pool of JDBC threads
+ * and returns CompletableFutures of their typed results, so callers can
+ * start independent queries at the same time and combine them without
+ * blocking. The pool has one thread per pooled database connection, so
+ * queued operations wait in the executor instead of for a connection.
+ * Operations that FoodLogComm reports as failed by returning null, false,
+ * or -1 complete the future exceptionally with an SQLException instead.
+ *
+ * @author iDoc1
+ *
+ */
+public class AsyncFoodLogComm {
+
+    // Time close waits for running operations to finish
+    private static final long CLOSE_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final FoodLogComm foodLogComm;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs an AsyncFoodLogComm with one JDBC thread per pooled database connection
+     * @param foodLogComm   Object used to communicate with the food log database
+     */
+    public AsyncFoodLogComm(FoodLogComm foodLogComm) {
+        this(foodLogComm, foodLogComm.getMaxConnections());
+    }
+
+    /**
+     * Constructs an AsyncFoodLogComm
+     * @param foodLogComm   Object used to communicate with the food log database
+     * @param threadCount   Number of operations run at the same time
+     */
+    public AsyncFoodLogComm(FoodLogComm foodLogComm, int threadCount) {
+        this.foodLogComm = foodLogComm;
+
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threadCount), task -> {
+            Thread thread = new Thread(task, "food-log-jdbc-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Inserts an entry with the given date
+     * @param foodEaten     The FoodDetails object with food name, meal type, and serving size
+     * @param entryDate     The date of the entry to be inserted
+     * @param entryNotes    Notes associated with the entry to be inserted
+     * @return              Completes when the entry is inserted
+     */
+    public CompletableFuture<Void> insertRowGivenDate(FoodDetails foodEaten, LocalDate entryDate
+            , String entryNotes) {
+        return this.run(() -> this.foodLogComm.insertRowGivenDate(foodEaten, entryDate, entryNotes)
+                , "The entry was not inserted.");
+    }
+
+    /**
+     * Inserts many entries in batches
+     * @param entries   Entries to be inserted
+     * @return          The number of rows inserted and the reason each failed row was not inserted
+     */
+    public CompletableFuture<BatchInsertResult> insertRows(List<FoodTableEntry> entries) {
+        return this.supply(() -> this.foodLogComm.insertRows(entries), "The entries were not inserted.");
+    }
+
+    /**
+     * Returns a single entry given its entry ID
+     * @param entryID   The ID of a specific entry
+     * @return          The entry. Completes with null if there is no such entry or it could
+     *                  not be read, as FoodLogComm does not tell the two apart.
+     */
+    public CompletableFuture<FoodTableEntry> fetchEntry(int entryID) {
+        return CompletableFuture.supplyAsync(() -> this.foodLogComm.fetchEntry(entryID), this.executor);
+    }
+
+    /**
+     * Returns all entries that occur on a given date
+     * @param date  The date to find entries for
+     * @return      Entries keyed by entry ID, ordered by entry date then entry ID
+     */
+    public CompletableFuture<LinkedHashMap<Integer, FoodTableEntry>> fetchEntriesFromDate(LocalDate date) {
+        return this.fetchEntriesFromDateRange(date, date);
+    }
+
+    /**
+     * Returns all entries between a start date (inclusive) and an end date (inclusive)
+     * @param startDate The start of the date range (inclusive)
+     * @param endDate   The end of the date range (inclusive)
+     * @return          Entries keyed by entry ID, ordered by entry date then entry ID
+     */
+    public CompletableFuture<LinkedHashMap<Integer, FoodTableEntry>> fetchEntriesFromDateRange(
+            LocalDate startDate, LocalDate endDate) {
+        return this.supply(() -> this.foodLogComm.fetchEntriesFromDateRange(startDate, endDate)
+                , "Entries could not be read.");
+    }
+
+    /**
+     * Returns the names of foods in the food log that contain the given text
+     * @param searchText    Partial or full food name
+     * @return              The matching food names
+     */
+    public CompletableFuture<List<String>> searchFoodNames(String searchText) {
+        return this.supply(() -> this.foodLogComm.searchFoodNames(searchText), "Food names could not be read.");
+    }
+
+    /**
+     * Builds a DataReport for a date range from the daily summaries
+     * @param startDate The start of the date range (inclusive)
+     * @param endDate   The end of the date range (inclusive)
+     * @return          A DataReport for the date range
+     */
+    public CompletableFuture<DataReport> fetchDataReport(LocalDate startDate, LocalDate endDate) {
+        return this.supply(() -> this.foodLogComm.fetchDataReport(startDate, endDate)
+                , "The report could not be built.");
+    }
+
+    /**
+     * @return  A DataReport of yesterday's entries
+     */
+    public CompletableFuture<DataReport> fetchYesterdayReport() {
+        return this.supply(this.foodLogComm::fetchYesterdayReport, "The report could not be built.");
+    }
+
+    /**
+     * @return  A DataReport of the past month's entries
+     */
+    public CompletableFuture<DataReport> fetchMonthReport() {
+        return this.supply(this.foodLogComm::fetchMonthReport, "The report could not be built.");
+    }
+
+    /**
+     * Builds a DataReport for a date range from its entries, reading the entries and the
+     * calorie table at the same time then joining them in memory
+     * @param startDate The start of the date range (inclusive)
+     * @param endDate   The end of the date range (inclusive)
+     * @return          A DataReport for the date range
+     */
+    public CompletableFuture<DataReport> buildDataReport(LocalDate startDate, LocalDate endDate) {
+        return this.fetchEntriesFromDateRange(startDate, endDate)
+                .thenCombine(this.getCalorieMap()
+                        , (entries, calorieMap) -> ReportBuilder.getDataReport(entries.values(), calorieMap));
+    }
+
+    /**
+     * @return  Food names mapped to their calorie details
+     */
+    public CompletableFuture<Map<String, CalorieTableEntry>> getCalorieMap() {
+        return this.supply(this.foodLogComm::getCalorieMap, "The calorie table could not be read.");
+    }
+
+    /**
+     * Writes the entries of a date range to a file
+     * @param startDate The start of the date range (inclusive)
+     * @param endDate   The end of the date range (inclusive)
+     * @param file      Path of the file to write
+     * @return          Number of entries written
+     */
+    public CompletableFuture<Integer> exportEntries(LocalDate startDate, LocalDate endDate, Path file) {
+        return this.count(() -> this.foodLogComm.exportEntries(startDate, endDate, file)
+                , "Entries were not exported.");
+    }
+
+    /**
+     * Deletes all entries older than the given number of days
+     * @param deleteDays    Number of days older than to delete
+     * @return              Completes when the entries are deleted
+     */
+    public CompletableFuture<Void> deleteOldEntries(int deleteDays) {
+        return this.run(() -> this.foodLogComm.deleteOldEntries(deleteDays), "Entries were not deleted.");
+    }
+
+    /**
+     * Updates the entry with the given entry ID with the new values given
+     * @param entryID           entry ID of row
+     * @param entryDate         date of food entry
+     * @param foodName          name of food entry
+     * @param mealType          meal type of food entry
+     * @param servingQuantity   double value of serving quantity
+     * @param entryNotes        entry notes
+     * @return                  Completes when the entry is updated
+     */
+    public CompletableFuture<Void> editEntry(int entryID, LocalDate entryDate, String foodName
+            , String mealType, double servingQuantity, String entryNotes) {
+        return this.run(() -> this.foodLogComm.editEntry(entryID, entryDate, foodName, mealType
+                , servingQuantity, entryNotes), "The entry was not edited.");
+    }
+
+    /**
+     * Inserts the calorie details of a food
+     * @param foodName      name of the food
+     * @param calories      calories per serving
+     * @param foodCategory  category of the food
+     * @return              Completes when the details are inserted
+     */
+    public CompletableFuture<Void> insertFoodDetails(String foodName, int calories, String foodCategory) {
+        return this.run(() -> this.foodLogComm.insertFoodDetails(foodName, calories, foodCategory)
+                , "Calorie details were not inserted.");
+    }
+
+    /**
+     * Deletes the calorie details of a food
+     * @param foodName  name of the food
+     * @return          Number of calorie table rows deleted
+     */
+    public CompletableFuture<Integer> deleteFoodDetails(String foodName) {
+        return this.count(() -> this.foodLogComm.deleteFoodDetails(foodName), "Calorie details were not deleted.");
+    }
+
+    /**
+     * Stops accepting operations and waits for running ones to finish. The FoodLogComm
+     * is left open.
+     */
+    public void close() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs an operation that returns null on failure
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> operation, String failure) {
+        return CompletableFuture.supplyAsync(operation, this.executor).thenCompose(result -> result == null
+                ? CompletableFuture.failedFuture(new SQLException(failure))
+                : CompletableFuture.completedFuture(result));
+    }
+
+    /**
+     * Runs an operation that returns false on failure
+     */
+    private CompletableFuture<Void> run(BooleanSupplier operation, String failure) {
+        return this.supply(() -> operation.getAsBoolean() ? Boolean.TRUE : null, failure)
+                .thenApply(success -> null);
+    }
+
+    /**
+     * Runs an operation that returns -1 on failure
+     */
+    private CompletableFuture<Integer> count(IntSupplier operation, String failure) {
+        return this.supply(() -> {
+            int count = operation.getAsInt();
+            return count < 0 ? null : count;
+        }, failure);
+    }
+}
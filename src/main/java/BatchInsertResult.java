@@ -0,0 +1,62 @@
+import java.util.LinkedHashMap;
+
+/**
+ * This class represents the outcome of inserting a batch of rows into the
+ * food log database. It stores the number of rows that were inserted and,
+ * for every row that could not be inserted, the row's position in the batch
+ * along with the reason it failed.
+ *
+ * @author iDoc1
+ *
+ */
+
+public class BatchInsertResult {
+    private int insertedCount;
+    private LinkedHashMap<Integer, String> failedRows;  // Row index to failure reason
+
+    /**
+     * Constructs an empty BatchInsertResult
+     */
+    public BatchInsertResult() {
+        this.insertedCount = 0;
+        this.failedRows = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds the given number of rows to the inserted row count
+     * @param rowCount  Number of rows that were inserted
+     */
+    public void addInserted(int rowCount) {
+        this.insertedCount += rowCount;
+    }
+
+    /**
+     * Records that the row at the given index in the batch was not inserted
+     * @param rowIndex  Index of the row in the list given for insertion
+     * @param reason    Reason the row was not inserted
+     */
+    public void addFailure(int rowIndex, String reason) {
+        this.failedRows.put(rowIndex, reason);
+    }
+
+    /**
+     * @return  true if every row in the batch was inserted, false otherwise
+     */
+    public boolean isSuccessful() {
+        return this.failedRows.isEmpty();
+    }
+
+    /**
+     * @return  Number of rows that were inserted
+     */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * @return  Index and failure reason of each row that was not inserted, in batch order
+     */
+    public LinkedHashMap<Integer, String> getFailedRows() {
+        return failedRows;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A long lived copy of the food log calorie table kept in memory so that
+ * data reports do not need to query the calorie table every time. The cache
+ * is loaded on first use, updated as foods are added or deleted through this
+ * app, and optionally reloaded after a time to live so that changes made by
+ * other processes are eventually picked up.
+ *
+ * @author iDoc1
+ *
+ */
+public class CalorieTableCache {
+
+    private final Supplier<HashMap<String, CalorieTableEntry>> loader;
+    private final long ttlMillis;
+
+    // Replaced as a whole on every change so that readers never see a partial update
+    private volatile Map<String, CalorieTableEntry> calorieMap = null;
+    private volatile long loadedAtMillis;
+
+    /**
+     * Constructs an empty CalorieTableCache
+     * @param loader    Reads the entire calorie table, returning null if it cannot be read
+     * @param ttlMillis Time after which the cache is reloaded, or 0 to never reload
+     */
+    public CalorieTableCache(Supplier<HashMap<String, CalorieTableEntry>> loader, long ttlMillis) {
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the cached calorie table, loading it first if it has not been loaded
+     * or its time to live has passed
+     * @return  An unmodifiable Map of food name to calorie details, or null if the
+     *          calorie table could not be loaded
+     */
+    public Map<String, CalorieTableEntry> getCalorieMap() {
+        Map<String, CalorieTableEntry> current = this.calorieMap;
+        if (current != null && !this.isExpired()) {
+            return current;
+        }
+
+        synchronized (this) {
+
+            // Another thread may have reloaded the cache while this one waited
+            if (this.calorieMap == null || this.isExpired()) {
+                HashMap<String, CalorieTableEntry> loaded = this.loader.get();
+                if (loaded == null) {
+                    return this.calorieMap;  // Keep serving the old copy if one exists
+                }
+                this.calorieMap = Collections.unmodifiableMap(loaded);
+                this.loadedAtMillis = System.currentTimeMillis();
+            }
+            return this.calorieMap;
+        }
+    }
+
+    /**
+     * Adds or replaces the calorie details of a food. Has no effect until the cache
+     * has been loaded, since the food will be read when it is.
+     * @param foodName      Name of the food
+     * @param calorieEntry  Calories per serving and category of the food
+     */
+    public synchronized void put(String foodName, CalorieTableEntry calorieEntry) {
+        if (this.calorieMap != null) {
+            HashMap<String, CalorieTableEntry> updated = new HashMap<>(this.calorieMap);
+            updated.put(foodName, calorieEntry);
+            this.calorieMap = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    /**
+     * Removes the calorie details of a food. Names are matched ignoring case, the
+     * same way the database matches them when deleting.
+     * @param foodName  Name of the food
+     */
+    public synchronized void remove(String foodName) {
+        if (this.calorieMap != null) {
+            HashMap<String, CalorieTableEntry> updated = new HashMap<>(this.calorieMap);
+            updated.keySet().removeIf(name -> name.equalsIgnoreCase(foodName));
+            this.calorieMap = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    /**
+     * Discards the cached calorie table so that it is reloaded on next use
+     */
+    public synchronized void invalidate() {
+        this.calorieMap = null;
+    }
+
+    /**
+     * @return  true if a time to live is set and it has passed since the last load
+     */
+    private boolean isExpired() {
+        return this.ttlMillis > 0 && System.currentTimeMillis() - this.loadedAtMillis > this.ttlMillis;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Records which of breakfast, brunch, lunch, and dinner have already been
+ * eaten on each day of a data report, so that each of those meals is only
+ * counted once per day. Days are identified by their epoch day number and
+ * each day's meals are stored as bits of one byte in an array covering the
+ * range of days seen so far. Snacks are not tracked since every snack counts.
+ *
+ * @author iDoc1
+ *
+ */
+public class DailyMealTracker {
+
+    // Day number used for entries that have no date
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long firstDay;  // Epoch day stored at index 0 of mealsByDay
+    private byte[] mealsByDay;  // Bit per meal type eaten on each day
+    private byte mealsWithNoDate;
+
+    /**
+     * Constructs an empty DailyMealTracker
+     */
+    public DailyMealTracker() {
+        this.mealsByDay = null;
+        this.mealsWithNoDate = 0;
+    }
+
+    /**
+     * Records that a meal was eaten on the given day and reports whether it is the
+     * first meal of its type that day
+     * @param epochDay  Day the meal was eaten, as a LocalDate epoch day, or NO_DATE
+     * @param mealType  Type of meal eaten
+     * @return          true if this meal type had not yet been eaten on the given day
+     */
+    public boolean markFirstMeal(long epochDay, MealType mealType) {
+        int mealBit = 1 << mealType.ordinal();
+
+        if (epochDay == NO_DATE) {
+            boolean first = (this.mealsWithNoDate & mealBit) == 0;
+            this.mealsWithNoDate |= mealBit;
+            return first;
+        }
+
+        int index = this.indexOf(epochDay);
+        boolean first = (this.mealsByDay[index] & mealBit) == 0;
+        this.mealsByDay[index] |= mealBit;
+        return first;
+    }
+
+    /**
+     * Returns the array index of the given day, growing the array if the day is
+     * outside of the range of days it currently covers
+     * @param epochDay  Day to find the index of
+     * @return          Index of the day in mealsByDay
+     */
+    private int indexOf(long epochDay) {
+        if (this.mealsByDay == null) {
+            this.mealsByDay = new byte[INITIAL_CAPACITY];
+            this.firstDay = epochDay;
+            return 0;
+        }
+
+        long offset = epochDay - this.firstDay;
+        if (offset >= 0 && offset < this.mealsByDay.length) {
+            return (int) offset;
+        }
+
+        // Grow to cover the new day, at least doubling so that growth stays amortized
+        long newFirstDay = Math.min(this.firstDay, epochDay);
+        long newLastDay = Math.max(this.firstDay + this.mealsByDay.length - 1, epochDay);
+        long newLength = Math.max(newLastDay - newFirstDay + 1, 2L * this.mealsByDay.length);
+        if (newLength > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Date range of data report is too large.");
+        }
+
+        // Leave the extra space on the side the array grew towards
+        if (epochDay < this.firstDay) {
+            newFirstDay = newLastDay - newLength + 1;
+        }
+
+        byte[] grown = new byte[(int) newLength];
+        System.arraycopy(this.mealsByDay, 0, grown, (int) (this.firstDay - newFirstDay), this.mealsByDay.length);
+        this.mealsByDay = grown;
+        this.firstDay = newFirstDay;
+        return (int) (epochDay - newFirstDay);
+    }
+}
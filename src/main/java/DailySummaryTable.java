@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Maintains the daily_summary table, which holds one precomputed row per
+ * date in the food log with that day's total calories, whether breakfast,
+ * brunch, lunch, and dinner were eaten, the number of snacks, and the
+ * servings of each food category. FoodLogComm refreshes the affected days
+ * in the same transaction as every write to the food log or calorie table,
+ * so data reports can be built from one row per day instead of every entry.
+ *
+ * @author iDoc1
+ *
+ */
+public class DailySummaryTable {
+
+    /*  Computes summary rows from the food log for the days matching a condition on
+        the food log table, which is aliased as a. Breakfast, brunch, lunch, and dinner
+        are only counted once per day, while every snack is counted. Only foods found in
+        the calorie table count towards calories and food categories.
+     */
+    private static final String SUMMARY_SELECT = "SELECT a.entry_date, " +
+            "COALESCE(SUM(c.calories_per_serving * a.serving_quantity), 0), " +
+            "MAX(a.meal_type = 'breakfast'), " +
+            "MAX(a.meal_type = 'brunch'), " +
+            "MAX(a.meal_type = 'lunch'), " +
+            "MAX(a.meal_type = 'dinner'), " +
+            "SUM(a.meal_type = 'snack'), " +
+            categoryServings("grain") + ", " +
+            categoryServings("fruit") + ", " +
+            categoryServings("vegetable") + ", " +
+            categoryServings("dairy") + ", " +
+            categoryServings("protein") + ", " +
+            categoryServings("other") + " " +
+            "FROM food_log_database.food_log a " +
+            "LEFT JOIN food_log_database.calorie_table c ON c.food_id = a.food_id " +
+            "WHERE %s GROUP BY a.entry_date";
+
+    private static final String SUMMARY_INSERT = "INSERT INTO food_log_database.daily_summary " +
+            "(entry_date, total_calories, breakfast_count, brunch_count, lunch_count, dinner_count, " +
+            "snack_count, grain_servings, fruit_servings, vegetable_servings, dairy_servings, " +
+            "protein_servings, other_servings) ";
+
+    /**
+     * Recomputes the summary rows of the given days from the food log. Days that no
+     * longer have any entries are removed from the summary table.
+     * @param connection    A connection to the food log database, inside the transaction
+     *                      that changed the given days
+     * @param entryDates    Dates whose entries have changed
+     * @throws SQLException If the summary rows cannot be written
+     */
+    public static void refreshDates(Connection connection, Collection<LocalDate> entryDates) throws SQLException {
+        if (entryDates.isEmpty()) {
+            return;
+        }
+
+        String dateList = String.join(", ", Collections.nCopies(entryDates.size(), "?"));
+        String deleteString = "DELETE FROM food_log_database.daily_summary WHERE entry_date IN (" + dateList + ")";
+        String insertString = SUMMARY_INSERT + String.format(SUMMARY_SELECT, "a.entry_date IN (" + dateList + ")");
+
+        try (PreparedStatement deleteStatement = connection.prepareStatement(deleteString);
+             PreparedStatement insertStatement = connection.prepareStatement(insertString)) {
+            int parameterIndex = 1;
+            for (LocalDate entryDate : entryDates) {
+                deleteStatement.setObject(parameterIndex, entryDate);
+                insertStatement.setObject(parameterIndex, entryDate);
+                parameterIndex++;
+            }
+
+            deleteStatement.executeUpdate();
+            insertStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Recomputes the summary rows of every day on which the given food was eaten, such
+     * as after the food's calorie details were added or deleted
+     * @param connection    A connection to the food log database, inside the transaction
+     *                      that changed the food's calorie details
+     * @param foodName      Name of the food
+     * @throws SQLException If the summary rows cannot be written
+     */
+    public static void refreshFood(Connection connection, String foodName) throws SQLException {
+        String replaceString = "REPLACE" + SUMMARY_INSERT.substring("INSERT".length()) +
+                String.format(SUMMARY_SELECT, "a.entry_date IN (SELECT b.entry_date " +
+                        "FROM food_log_database.food_log b JOIN food_log_database.foods f " +
+                        "ON f.food_id = b.food_id WHERE f.food_name = ?)");
+
+        try (PreparedStatement statement = connection.prepareStatement(replaceString)) {
+            statement.setString(1, foodName);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes the summary rows of days before the given date
+     * @param connection    A connection to the food log database, inside the transaction
+     *                      that deleted the entries of those days
+     * @param cutoffDate    Summary rows dated before this are deleted
+     * @throws SQLException If the summary rows cannot be deleted
+     */
+    public static void deleteBefore(Connection connection, LocalDate cutoffDate) throws SQLException {
+        String sqlString = "DELETE FROM food_log_database.daily_summary WHERE entry_date < ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(sqlString)) {
+            statement.setObject(1, cutoffDate);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @param foodCategory  A food category
+     * @return              SQL expression for the servings eaten of that category
+     */
+    private static String categoryServings(String foodCategory) {
+        return "COALESCE(SUM(CASE WHEN c.food_category = '" + foodCategory + "' " +
+                "THEN a.serving_quantity END), 0)";
+    }
+}
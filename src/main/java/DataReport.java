@@ -1,20 +1,32 @@
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class represents a report that contains information about meals that
  * occurred over a certain time span, as determined by the calling class. This
  * class is used mainly by the ReportBuilder class to store and return
- * information regarding past meals.
+ * information regarding past meals. Meal type counts and food category
+ * servings are kept in arrays indexed by MealType and FoodCategory, so adding
+ * to the report does not allocate, and partial reports can be merged.
  *
  * @author iDoc1
  *
  */
 
 public class DataReport {
+
+    // Copies of the enum constants, since values() allocates a new array on every call
+    private static final MealType[] MEAL_TYPES = MealType.values();
+    private static final FoodCategory[] FOOD_CATEGORIES = FoodCategory.values();
+
     private double totalCalories;
     private int mealCount;
-    private HashMap<String, Integer> mealTypeCount;  // Count of each type of meal eaten
-    private HashMap<String, Double> mealCategoryCount;  // Count of each meal cetegory eaten
+    private int[] mealTypeCount;  // Count of each type of meal eaten, indexed by MealType
+    private double[] mealCategoryCount;  // Count of each meal cetegory eaten, indexed by FoodCategory
 
     /**
      * Construct a YesterdayReport object and initialize data members
@@ -22,24 +34,10 @@ public class DataReport {
     public DataReport() {
         this.totalCalories = 0;
         this.mealCount = 0;
-        this.mealTypeCount = new HashMap<>();
-
-        // Initialize meal type counts to zero
-        this.mealTypeCount.put("breakfast", 0);
-        this.mealTypeCount.put("brunch", 0);
-        this.mealTypeCount.put("lunch", 0);
-        this.mealTypeCount.put("dinner", 0);
-        this.mealTypeCount.put("snack", 0);
 
-        this.mealCategoryCount = new HashMap<>();
-
-        // Initialize meal category counts to zero
-        this.mealCategoryCount.put("grain", 0.0);
-        this.mealCategoryCount.put("fruit", 0.0);
-        this.mealCategoryCount.put("vegetable", 0.0);
-        this.mealCategoryCount.put("dairy", 0.0);
-        this.mealCategoryCount.put("protein", 0.0);
-        this.mealCategoryCount.put("other", 0.0);
+        // Meal type counts and meal category counts start at zero
+        this.mealTypeCount = new int[MEAL_TYPES.length];
+        this.mealCategoryCount = new double[FOOD_CATEGORIES.length];
     }
 
     /**
@@ -51,6 +49,14 @@ public class DataReport {
         this.totalCalories += (caloriesPerServing * servingQuantity);
     }
 
+    /**
+     * Adds the given number of calories to the current total calories amount
+     * @param calories  Number of calories to add
+     */
+    public void addTotalCalories(double calories) {
+        this.totalCalories += calories;
+    }
+
     /**
      * Calculates and returns calories per meal eaten yesterday
      * @return  Calories per meal eaten yesterday
@@ -68,9 +74,34 @@ public class DataReport {
      * @param mealType  Meal type (breakfast, brunch, lunch, dinner, or snack)
      */
     public void incrementMealType(String mealType) {
-        int currCount = this.mealTypeCount.get(mealType);
-        this.mealTypeCount.put(mealType, currCount + 1);  // Increment count
-        this.mealCount += 1;
+        this.addMealType(toMealType(mealType), 1);
+    }
+
+    /**
+     * Increments the meal type count by one based on the given meal type
+     * @param mealType  Meal type
+     */
+    public void incrementMealType(MealType mealType) {
+        this.addMealType(mealType, 1);
+    }
+
+    /**
+     * Increases the meal type count and the meal count by the given number of meals
+     * @param mealType  Meal type (breakfast, brunch, lunch, dinner, or snack)
+     * @param count     Number of meals of this type eaten
+     */
+    public void addMealType(String mealType, int count) {
+        this.addMealType(toMealType(mealType), count);
+    }
+
+    /**
+     * Increases the meal type count and the meal count by the given number of meals
+     * @param mealType  Meal type
+     * @param count     Number of meals of this type eaten
+     */
+    public void addMealType(MealType mealType, int count) {
+        this.mealTypeCount[mealType.ordinal()] += count;
+        this.mealCount += count;
     }
 
     /**
@@ -78,8 +109,38 @@ public class DataReport {
      * @param mealCategory  Meal category (grain, vegetable, fruit, protein, dairy, other)
      */
     public void incrementMealCategory(String mealCategory, double servingQuantity) {
-        double currentCount = this.mealCategoryCount.get(mealCategory);
-        this.mealCategoryCount.put(mealCategory, currentCount + servingQuantity);
+        FoodCategory category = FoodCategory.fromName(mealCategory);
+        if (category == null) {
+            throw new IllegalArgumentException("Unknown food category: " + mealCategory);
+        }
+        this.incrementMealCategory(category, servingQuantity);
+    }
+
+    /**
+     * Increments the count of the given meal by one
+     * @param mealCategory  Meal category
+     */
+    public void incrementMealCategory(FoodCategory mealCategory, double servingQuantity) {
+        this.mealCategoryCount[mealCategory.ordinal()] += servingQuantity;
+    }
+
+    /**
+     * Adds all totals and counts of another report to this report. Reports built
+     * over separate date ranges can be merged to get the report for all of the
+     * ranges combined.
+     * @param other The report to add to this report
+     */
+    public void merge(DataReport other) {
+        this.totalCalories += other.totalCalories;
+        this.mealCount += other.mealCount;
+
+        for (int i = 0; i < this.mealTypeCount.length; i++) {
+            this.mealTypeCount[i] += other.mealTypeCount[i];
+        }
+
+        for (int i = 0; i < this.mealCategoryCount.length; i++) {
+            this.mealCategoryCount[i] += other.mealCategoryCount[i];
+        }
     }
 
     /**
@@ -111,16 +172,140 @@ public class DataReport {
     }
 
     /**
-     * @return Counts of breakfast, brunch, lunch, dinner, and snacks eaten yesterday
+     * @param mealType  Meal type
+     * @return          Count of the given meal type eaten yesterday
      */
-    public HashMap<String, Integer> getMealTypeCount() {
-        return mealTypeCount;
+    public int getMealTypeCount(MealType mealType) {
+        return this.mealTypeCount[mealType.ordinal()];
     }
 
     /**
-     * @return Counts of category of meals eaten yesterday
+     * @param mealCategory  Meal category
+     * @return              Servings of the given category eaten yesterday
      */
-    public HashMap<String, Double> getMealCategoryCount() {
-        return mealCategoryCount;
+    public double getMealCategoryCount(FoodCategory mealCategory) {
+        return this.mealCategoryCount[mealCategory.ordinal()];
+    }
+
+    /**
+     * @return Counts of breakfast, brunch, lunch, dinner, and snacks eaten yesterday, as a
+     *         read only view keyed by meal type name
+     */
+    public Map<String, Integer> getMealTypeCount() {
+        return new ArrayMapView<>(MEAL_TYPES.length) {
+            @Override
+            String keyAt(int index) {
+                return MEAL_TYPES[index].getMealName();
+            }
+
+            @Override
+            Integer valueAt(int index) {
+                return mealTypeCount[index];
+            }
+
+            @Override
+            int indexOf(Object key) {
+                MealType mealType = key instanceof String ? MealType.fromName((String) key) : null;
+                return mealType == null ? -1 : mealType.ordinal();
+            }
+        };
+    }
+
+    /**
+     * @return Counts of category of meals eaten yesterday, as a read only view keyed by
+     *         category name
+     */
+    public Map<String, Double> getMealCategoryCount() {
+        return new ArrayMapView<>(FOOD_CATEGORIES.length) {
+            @Override
+            String keyAt(int index) {
+                return FOOD_CATEGORIES[index].getCategoryName();
+            }
+
+            @Override
+            Double valueAt(int index) {
+                return mealCategoryCount[index];
+            }
+
+            @Override
+            int indexOf(Object key) {
+                FoodCategory category = key instanceof String ? FoodCategory.fromName((String) key) : null;
+                return category == null ? -1 : category.ordinal();
+            }
+        };
+    }
+
+    /**
+     * Converts a meal type name to a MealType
+     * @param mealType  Meal type (breakfast, brunch, lunch, dinner, or snack)
+     * @return          The matching MealType
+     */
+    private static MealType toMealType(String mealType) {
+        MealType type = MealType.fromName(mealType);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown meal type: " + mealType);
+        }
+        return type;
+    }
+
+    /**
+     * A read only Map view over one of this report's count arrays, so that the
+     * counts can still be read by name without copying them into a HashMap
+     * @param <V>   Type of the counts
+     */
+    private abstract static class ArrayMapView<V> extends AbstractMap<String, V> {
+        private final int size;
+
+        ArrayMapView(int size) {
+            this.size = size;
+        }
+
+        abstract String keyAt(int index);
+
+        abstract V valueAt(int index);
+
+        abstract int indexOf(Object key);
+
+        @Override
+        public V get(Object key) {
+            int index = this.indexOf(key);
+            return index < 0 ? null : this.valueAt(index);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.indexOf(key) >= 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    return new Iterator<>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.index < size;
+                        }
+
+                        @Override
+                        public Map.Entry<String, V> next() {
+                            if (!this.hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = this.index++;
+                            return new AbstractMap.SimpleImmutableEntry<>(keyAt(current), valueAt(current));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
     }
 }
@@ -0,0 +1,23 @@
+import java.time.LocalDate;
+
+/**
+ * Is told which dates a FoodLogStorage has inserted, edited, or deleted
+ * entries on, so that copies of the food log kept outside the storage, such
+ * as the month snapshots of a SnapshotStore, can be thrown away once they no
+ * longer match it. Listeners are called on the thread that made the change,
+ * after the change was committed.
+ *
+ * @author iDoc1
+ *
+ */
+@FunctionalInterface
+public interface EntryChangeListener {
+
+    /**
+     * Called after the entries of a date range were changed
+     * @param startDate The first changed date (inclusive), or LocalDate.MIN if every
+     *                  date up to the end date may have changed
+     * @param endDate   The last changed date (inclusive)
+     */
+    void entriesChanged(LocalDate startDate, LocalDate endDate);
+}
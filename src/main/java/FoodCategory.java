@@ -0,0 +1,57 @@
+/**
+ * The food categories recognized by the food log calorie table. Each
+ * category has an index that DataReport uses to total servings in a plain
+ * array.
+ *
+ * @author iDoc1
+ *
+ */
+public enum FoodCategory {
+    GRAIN("grain"),
+    FRUIT("fruit"),
+    VEGETABLE("vegetable"),
+    DAIRY("dairy"),
+    PROTEIN("protein"),
+    OTHER("other");
+
+    private final String categoryName;
+
+    FoodCategory(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    /**
+     * @return  The food category as it is stored in the calorie table
+     */
+    public String getCategoryName() {
+        return this.categoryName;
+    }
+
+    /**
+     * Returns the FoodCategory matching the name stored in the calorie table
+     * @param categoryName  Food category (grain, fruit, vegetable, dairy, protein, or other)
+     * @return              The matching FoodCategory, or null if the name is not a category
+     */
+    public static FoodCategory fromName(String categoryName) {
+        if (categoryName == null) {
+            return null;
+        }
+
+        switch (categoryName) {
+            case "grain":
+                return GRAIN;
+            case "fruit":
+                return FRUIT;
+            case "vegetable":
+                return VEGETABLE;
+            case "dairy":
+                return DAIRY;
+            case "protein":
+                return PROTEIN;
+            case "other":
+                return OTHER;
+            default:
+                return null;
+        }
+    }
+}
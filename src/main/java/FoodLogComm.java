@@ -1,23 +1,116 @@
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
 
 /**
  * This class takes a connection to the food log database as a parameter
  * then defines a variety of methods by which to manipulate and run
  * queries on this database. This class serves as a communicator to the
- * food log database to perform CRUD operations.
+ * food log database to perform CRUD operations. Each method borrows a
+ * connection from the connection pool for the duration of its operation.
+ * The stream methods read large results in a single forward pass without
+ * buffering them in memory, handing the rows to a ResultSetHandler while
+ * the connection is held, and the page methods return one page of entries
+ * at a time using keyset pagination on entry date and entry ID. Food name searches are resolved against an
+ * in-memory FoodNameIndex, which is kept in sync as entries are written,
+ * and the calorie table is served from a CalorieTableCache. Every write also
+ * refreshes the affected days of the daily_summary table in the same
+ * transaction, which data reports are built from. Dates are passed to and
+ * read from the database as LocalDate values rather than Strings, so the
+ * database compares them natively. Food names are stored once in the foods
+ * table and referenced from food_log and calorie_table by food ID, so joins
+ * between entries and their calorie details compare integers. The food_log
+ * table is partitioned by month, and partitions for the coming months are
+ * created ahead of time as entries are inserted. Old entries are deleted by
+ * a RetentionPurge, which drops whole months and deletes the rest in paced
+ * chunks.
  *
  * @author iDoc1
  *
  */
 
-public class FoodLogComm {
+public class FoodLogComm implements FoodLogStorage {
 
-    private Connection connection;
+    // Number of rows sent to the database per batch by insertRows
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    // Number of entries per page returned by the paged fetch methods
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    // Selects the columns of a food log entry, looking up its food name by food ID. Entries stored
+    // on the undated date are returned without a date.
+    private static final String ENTRY_SELECT = "SELECT a.entry_id, " +
+            "NULLIF(a.entry_date, '" + PartitionManager.UNDATED_DATE + "') AS entry_date, f.food_name, a.meal_type, " +
+            "a.serving_quantity, a.entry_notes FROM food_log_database.food_log a " +
+            "LEFT JOIN food_log_database.foods f ON f.food_id = a.food_id ";
+
+    // Selects the calorie details of each food under the food name used by food log entries
+    private static final String CALORIE_SELECT = "SELECT f.food_name, c.calories_per_serving, c.food_category " +
+            "FROM food_log_database.calorie_table c JOIN food_log_database.foods f ON f.food_id = c.food_id";
+
+    // Inserts an entry, looking up the food ID of its food name, which must already be in the foods table
+    private static final String ENTRY_INSERT = "INSERT INTO food_log_database.food_log (entry_date, food_id" +
+            ", meal_type, serving_quantity, entry_notes) VALUES (?, (SELECT f.food_id " +
+            "FROM food_log_database.foods f WHERE f.food_name = ?), ?, ?, ?)";
+
+    // Number of months after the current month given a partition ahead of time
+    public static final int PARTITION_MONTHS_AHEAD = 3;
+
+    // Entries deleted per transaction and average entries deleted per second by the retention purge
+    public static final int DEFAULT_PURGE_CHUNK_SIZE = 1000;
+    public static final double DEFAULT_PURGE_ROWS_PER_SECOND = 5000;
+
+    // Time close waits for a running retention purge to finish its current chunk
+    private static final long PURGE_STOP_TIMEOUT_MILLIS = 30 * 1000;
+
+    private FoodLogConnection foodLogConn;
+
+    // Deletes old entries a chunk at a time
+    private final RetentionPurge retentionPurge;
+
+    // Last month known to have its own partition of the food_log table
+    private volatile YearMonth partitionedThrough = YearMonth.of(1000, 1);
+
+    // Time waited after a failed attempt to create partitions before inserts try again
+    private static final long PARTITION_RETRY_MILLIS = 10 * 60 * 1000;
+    private volatile long lastPartitionAttemptMillis = 0;
+
+    // Time after which the calorie table cache is reloaded to pick up other processes' changes
+    public static final long CALORIE_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+
+    // Distinct food names in the food log, reloaded when entries may have been removed
+    private final FoodNameIndex foodNameIndex = new FoodNameIndex();
+    private final AtomicLong foodNameChanges = new AtomicLong();  // Counts purges that may remove names
+    private volatile long foodNameIndexVersion = -1;  // Value of foodNameChanges the index was loaded at
+
+    // Told the dates of changed entries, such as by a SnapshotStore
+    private final List<EntryChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    // In-memory copy of the calorie table used by data reports
+    private final CalorieTableCache calorieCache = new CalorieTableCache(this::loadCalorieMap
+            , CALORIE_CACHE_TTL_MILLIS);
+
+    // Creates the disconnected result sets returned by the fetch methods
+    private static RowSetFactory rowSetFactory;
 
     /**
      * Constructs a FoodLogComm object given an existing connection to
@@ -25,7 +118,9 @@ public class FoodLogComm {
      * @param foodLogConn   An existing connection to the food log database
      */
     public FoodLogComm(FoodLogConnection foodLogConn) {
-        this.connection = foodLogConn.getFoodLogConnection();
+        this.foodLogConn = foodLogConn;
+        this.retentionPurge = new RetentionPurge(foodLogConn, DEFAULT_PURGE_CHUNK_SIZE
+                , DEFAULT_PURGE_ROWS_PER_SECOND);
     }
 
     /**
@@ -36,14 +131,16 @@ public class FoodLogComm {
      * @param entryNotes    Notes associated with the entry to be inserted
      * @return              true if insertion successful, false otherwise
      */
-    public boolean insertRowGivenDate(FoodDetails foodEaten, String entryDate, String entryNotes) {
-        String sqlString = "INSERT INTO food_log_database.food_log (entry_date, food_name, meal_type" +
-                ", serving_quantity, entry_notes) VALUES (?, ?, ?, ?, ?)";
+    @Override
+    public boolean insertRowGivenDate(FoodDetails foodEaten, LocalDate entryDate, String entryNotes) {
+        this.ensurePartitions();
 
         // Create PreparedStatement using given parameters
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlString);
-            statement.setString(1, entryDate);
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(ENTRY_INSERT)) {
+            connection.setAutoCommit(false);
+            addFoods(connection, Collections.singleton(foodEaten.getFoodName()));
+            statement.setObject(1, storedDate(entryDate));
             statement.setString(2, foodEaten.getFoodName().toLowerCase());
             statement.setString(3, foodEaten.getMealType());
             statement.setDouble(4, foodEaten.getServingQuantity());
@@ -51,10 +148,17 @@ public class FoodLogComm {
 
             // Execute query and return false if insertion fails
             statement.executeUpdate();
+
+            // Update the entry date's daily summary along with the insertion
+            DailySummaryTable.refreshDates(connection, Collections.singleton(entryDate));
+            connection.commit();
         } catch (SQLException e) {
             return false;
         }
 
+        this.foodNameIndex.add(foodEaten.getFoodName());
+        this.notifyEntriesChanged(Collections.singleton(entryDate));
+
         // Return true since insertion succeeded
         return true;
     }
@@ -66,14 +170,248 @@ public class FoodLogComm {
      * @param entryNotes    Notes associated with the entry to be inserted
      * @return              true if insertion successful, false otherwise
      */
+    @Override
     public boolean insertRowCurrDate(FoodDetails foodEaten, String entryNotes) {
 
-        // Store today's date in yyyy-MM-dd format
-        Date date = new Date();
-        String entryDate = new SimpleDateFormat("yyyy-MM-dd").format(date);
-
         // Add entry using insertRowGivenDate method and return boolean result
-        return this.insertRowGivenDate(foodEaten, entryDate, entryNotes);
+        return this.insertRowGivenDate(foodEaten, LocalDate.now(), entryNotes);
+    }
+
+    /**
+     * Inserts many rows into the food log database using the default batch size
+     * @param entries   Entries to be inserted, each with a date, food, meal type, serving
+     *                  quantity, and notes
+     * @return          The number of rows inserted and the reason each failed row was not inserted
+     */
+    @Override
+    public BatchInsertResult insertRows(List<FoodTableEntry> entries) {
+        return this.insertRows(entries, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts many rows into the food log database. Rows are sent to the database in
+     * batches of the given size and each batch is committed as a single transaction.
+     * If a batch fails, it is rolled back and its rows are retried one at a time so
+     * that only the rows that caused the failure are rejected.
+     * @param entries   Entries to be inserted, each with a date, food, meal type, serving
+     *                  quantity, and notes
+     * @param batchSize Number of rows sent to the database per batch
+     * @return          The number of rows inserted and the reason each failed row was not inserted
+     */
+    public BatchInsertResult insertRows(List<FoodTableEntry> entries, int batchSize) {
+        BatchInsertResult result = new BatchInsertResult();
+        int batchStart = 0;
+        this.ensurePartitions();
+
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(ENTRY_INSERT)) {
+            connection.setAutoCommit(false);
+
+            // Send each batch of rows to the database as one transaction
+            while (batchStart < entries.size()) {
+                int batchEnd = Math.min(batchStart + Math.max(1, batchSize), entries.size());
+
+                try {
+                    HashSet<LocalDate> batchDates = new HashSet<>();
+                    addFoods(connection, foodNames(entries.subList(batchStart, batchEnd)));
+                    for (int i = batchStart; i < batchEnd; i++) {
+                        bindEntry(statement, entries.get(i));
+                        statement.addBatch();
+                        batchDates.add(entries.get(i).getEntryDate());
+                    }
+                    statement.executeBatch();
+                    DailySummaryTable.refreshDates(connection, batchDates);
+                    connection.commit();
+                    result.addInserted(batchEnd - batchStart);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    statement.clearBatch();
+
+                    // Retry the batch row by row to find which rows caused the failure
+                    HashSet<LocalDate> insertedDates = new HashSet<>();
+                    int insertedCount = 0;
+                    for (int i = batchStart; i < batchEnd; i++) {
+                        try {
+                            addFoods(connection, foodNames(entries.subList(i, i + 1)));
+                            bindEntry(statement, entries.get(i));
+                            statement.executeUpdate();
+                            insertedDates.add(entries.get(i).getEntryDate());
+                            insertedCount++;
+                        } catch (SQLException rowError) {
+                            result.addFailure(i, rowError.getMessage());
+                        }
+                    }
+                    DailySummaryTable.refreshDates(connection, insertedDates);
+                    connection.commit();
+                    result.addInserted(insertedCount);
+                }
+
+                batchStart = batchEnd;
+            }
+        } catch (SQLException e) {
+
+            // Rows in the unfinished batch and any after it were not inserted
+            for (int i = batchStart; i < entries.size(); i++) {
+                if (!result.getFailedRows().containsKey(i)) {
+                    result.addFailure(i, e.getMessage());
+                }
+            }
+        }
+
+        // Index the names of the inserted rows
+        HashSet<LocalDate> insertedDates = new HashSet<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (!result.getFailedRows().containsKey(i)) {
+                this.foodNameIndex.add(entries.get(i).getFoodName());
+                insertedDates.add(entries.get(i).getEntryDate());
+            }
+        }
+        this.notifyEntriesChanged(insertedDates);
+
+        return result;
+    }
+
+    /**
+     * Inserts the given rows into the food log database as a single transaction. Unlike
+     * insertRows, nothing is inserted if any row fails and the failure is thrown, so that
+     * callers such as WriteBehindQueue can tell failures worth retrying from bad rows.
+     * @param entries       Entries to be inserted, each with a date, food, meal type, serving
+     *                      quantity, and notes
+     * @throws SQLException If the rows could not be inserted, in which case none were
+     */
+    public void insertRowsAtomically(List<FoodTableEntry> entries) throws SQLException {
+        this.ensurePartitions();
+
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(ENTRY_INSERT)) {
+            connection.setAutoCommit(false);
+
+            HashSet<LocalDate> entryDates = new HashSet<>();
+            addFoods(connection, foodNames(entries));
+            for (FoodTableEntry entry : entries) {
+                bindEntry(statement, entry);
+                statement.addBatch();
+                entryDates.add(entry.getEntryDate());
+            }
+            statement.executeBatch();
+            DailySummaryTable.refreshDates(connection, entryDates);
+            connection.commit();
+        }
+
+        // Index the names of the inserted rows
+        HashSet<LocalDate> entryDates = new HashSet<>();
+        for (FoodTableEntry entry : entries) {
+            this.foodNameIndex.add(entry.getFoodName());
+            entryDates.add(entry.getEntryDate());
+        }
+        this.notifyEntriesChanged(entryDates);
+    }
+
+    /**
+     * Adds the given food names to the foods table, skipping names already in it, so
+     * that entries and calorie details can refer to them by food ID. Names already in
+     * the table are looked up first, since every attempted insert uses up an
+     * AUTO_INCREMENT value even when the name turns out to be a duplicate.
+     * @param connection    A connection to the food log database, inside the transaction
+     *                      that inserts the entries or calorie details
+     * @param foodNames     Food names, in any case. Null names are skipped.
+     * @throws SQLException If the names cannot be inserted
+     */
+    private static void addFoods(Connection connection, Collection<String> foodNames) throws SQLException {
+        HashSet<String> newNames = new HashSet<>();
+        for (String foodName : foodNames) {
+            if (foodName != null) {
+                newNames.add(foodName.toLowerCase());
+            }
+        }
+        if (newNames.isEmpty()) {
+            return;
+        }
+
+        String lookupString = "SELECT f.food_name FROM food_log_database.foods f " +
+                "WHERE f.food_name IN (" + placeholders(newNames.size()) + ")";
+        try (PreparedStatement lookup = connection.prepareStatement(lookupString)) {
+            int i = 1;
+            for (String foodName : newNames) {
+                lookup.setString(i++, foodName);
+            }
+            try (ResultSet results = lookup.executeQuery()) {
+                while (results.next()) {
+                    newNames.remove(results.getString("food_name").toLowerCase());
+                }
+            }
+        }
+        if (newNames.isEmpty()) {
+            return;
+        }
+
+        // Another connection may add the same name after the lookup, which IGNORE skips
+        String sqlString = "INSERT IGNORE INTO food_log_database.foods (food_name) VALUES (?)";
+        try (PreparedStatement statement = connection.prepareStatement(sqlString)) {
+            for (String foodName : newNames) {
+                statement.setString(1, foodName);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * @param entries   Food log entries
+     * @return          The distinct food names of the entries
+     */
+    private static HashSet<String> foodNames(List<FoodTableEntry> entries) {
+        HashSet<String> foodNames = new HashSet<>();
+        for (FoodTableEntry entry : entries) {
+            foodNames.add(entry.getFoodName());
+        }
+        return foodNames;
+    }
+
+    /**
+     * Sets the parameters of a food log insert statement to the values of the given entry
+     * @param statement     Insert statement with entry date, food name, meal type, serving
+     *                      quantity, and entry notes parameters
+     * @param entry         The entry to be inserted
+     * @throws SQLException If a parameter cannot be set
+     */
+    private static void bindEntry(PreparedStatement statement, FoodTableEntry entry) throws SQLException {
+        statement.setObject(1, storedDate(entry.getEntryDate()));
+        statement.setString(2, entry.getFoodName() == null ? null : entry.getFoodName().toLowerCase());
+        statement.setString(3, entry.getMealType());
+        statement.setDouble(4, entry.getServingQuantity());
+        statement.setString(5, entry.getEntryNotes());
+    }
+
+    /**
+     * Returns a single entry given its entry ID
+     * @param entryID   The ID of a specific entry within the food log database
+     * @return          The entry, or null if it does not exist or an error is thrown
+     */
+    @Override
+    public FoodTableEntry fetchEntry(int entryID) {
+        String sqlQuery = ENTRY_SELECT + "WHERE a.entry_id = ?";
+
+        LinkedHashMap<Integer, FoodTableEntry> rows = this.streamQuery(sqlQuery
+                , results -> new ReportBuilder(results).getResultsMap(), entryID);
+        return rows == null ? null : rows.get(entryID);
+    }
+
+    /**
+     * Returns all entries in the food log that occur between a start date (inclusive)
+     * and an end date (inclusive)
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @return          Entries keyed by entry ID, ordered by entry date then entry ID, or
+     *                  null if an error is thrown
+     */
+    @Override
+    public LinkedHashMap<Integer, FoodTableEntry> fetchEntriesFromDateRange(LocalDate startDate, LocalDate endDate) {
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE a.entry_date >= ? AND a.entry_date <= ? ORDER BY a.entry_date, a.entry_id";
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getResultsMap()
+                , startDate, endDate);
     }
 
     /**
@@ -82,15 +420,15 @@ public class FoodLogComm {
      * @return      The ResultSet object for a single row
      */
     public ResultSet fetchDataFromID(int rowID) {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a WHERE a.entry_id = ?";
+        String sqlQuery = ENTRY_SELECT + "WHERE a.entry_id = ?";
 
         // Execute query and handle exception
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
+                    , ResultSet.CONCUR_READ_ONLY)) {
             statement.setInt(1, rowID);
-            return statement.executeQuery();  // Return ResultSet object
+            return cacheResults(statement.executeQuery());  // Return ResultSet object
         } catch (SQLException e) {
             return null;  // Return null if an exception is thrown
         }
@@ -98,24 +436,22 @@ public class FoodLogComm {
 
     /**
      * Returns a ResultSet of all the entries in the food log that occur
-     * on a given date, or null if date String is invalid
+     * on a given date
      * @param date  The date that the user wants to find food log entries for
      * @return      The ResultSet object for all entries occurring on given date or
-     *              null if the given date String throws an exception
+     *              null if an error is thrown
      */
-    public ResultSet fetchDataFromDate(String date) {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a " +
+    public ResultSet fetchDataFromDate(LocalDate date) {
+        String sqlQuery = ENTRY_SELECT +
                 "WHERE a.entry_date = ? ORDER BY a.entry_date";
 
         // Execute query and handle exception
-        try {
-
-            // Ensure ResultSet will be scrollable
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            statement.setString(1, date);
-            return statement.executeQuery();  // Return ResultSet object
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            statement.setObject(1, date);
+            return cacheResults(statement.executeQuery());  // Return ResultSet object
         } catch (SQLException e) {
             return null;  // Return null if an exception is thrown
         }
@@ -129,20 +465,18 @@ public class FoodLogComm {
      * @return          The ResultSet object for all entries in given date range, or
      *                  null if an error is thrown
      */
-    public ResultSet fetchDataFromDateRange(String startDate, String endDate) {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a " +
+    public ResultSet fetchDataFromDateRange(LocalDate startDate, LocalDate endDate) {
+        String sqlQuery = ENTRY_SELECT +
                 "WHERE a.entry_date >= ? AND a.entry_date <= ? ORDER BY a.entry_date";
 
         // Execute query and handle exception
-        try {
-
-            // Ensure ResultSet will be scrollable
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            statement.setString(1, startDate);
-            statement.setString(2, endDate);
-            return statement.executeQuery();  // Return ResultSet object
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            statement.setObject(1, startDate);
+            statement.setObject(2, endDate);
+            return cacheResults(statement.executeQuery());  // Return ResultSet object
         } catch (SQLException e) {
             return null;  // Return null if an exception is thrown
         }
@@ -150,22 +484,30 @@ public class FoodLogComm {
 
     /**
      * Returns a ResultSet of all entries in the food log that have a
-     * given food name
+     * given food name. Food names containing the given name are found using the
+     * food name index, then their entries are fetched by exact name.
      * @param foodName  Name of the food to get ResultSet for
      * @return          The ResultSet object for all entries that have the given
      *                  food name, or null if an error is thrown
      */
     public ResultSet fetchDataFromFood(String foodName) {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a " +
-                "WHERE a.food_name LIKE ? ORDER BY a.entry_date";
+        List<String> matchingNames = this.searchFoodNames(foodName);
+        if (matchingNames == null) {
+            return null;
+        }
+        String[] parameters = foodNameParameters(matchingNames);
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE f.food_name IN (" + placeholders(parameters.length) + ") ORDER BY a.entry_date";
 
         // Execute query and handle exception
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            statement.setString(1, "%" + foodName + "%");
-            return statement.executeQuery();  // Return ResultSet object
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setString(i + 1, parameters[i]);
+            }
+            return cacheResults(statement.executeQuery());  // Return ResultSet object
         } catch (SQLException e) {
             return null;  // Return null if an exception is thrown
         }
@@ -176,14 +518,14 @@ public class FoodLogComm {
      * @return  A ResultSet of yesterday's entries
      */
     public ResultSet fetchYesterdayData() {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a " +
+        String sqlQuery = ENTRY_SELECT +
                 "WHERE a.entry_date = CURDATE() - INTERVAL 1 DAY";
 
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            return statement.executeQuery();
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            return cacheResults(statement.executeQuery());
         } catch (SQLException e) {
             return null;
         }
@@ -194,38 +536,494 @@ public class FoodLogComm {
      * @return  A ResultSet of the past month's entries
      */
     public ResultSet fetchMonthData() {
-        String sqlQuery = "SELECT * FROM food_log_database.food_log a " +
+        String sqlQuery = ENTRY_SELECT +
                 "WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH";
 
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            return statement.executeQuery();
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            return cacheResults(statement.executeQuery());
         } catch (SQLException e) {
             return null;
         }
     }
 
+    /**
+     * Streams all the entries in the food log that occur on a given date to the
+     * given handler
+     * @param date      The date that the user wants to find food log entries for
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamDataFromDate(LocalDate date, ResultSetHandler<T> handler) {
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE a.entry_date = ? ORDER BY a.entry_date";
+
+        return this.streamQuery(sqlQuery, handler, date);
+    }
+
+    /**
+     * Streams all entries in the food log that occur between a start date (inclusive)
+     * and an end date (inclusive) to the given handler
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamDataFromDateRange(LocalDate startDate, LocalDate endDate, ResultSetHandler<T> handler) {
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE a.entry_date >= ? AND a.entry_date <= ? ORDER BY a.entry_date";
+
+        return this.streamQuery(sqlQuery, handler, startDate, endDate);
+    }
+
+    /**
+     * Streams the entries between a start date (inclusive) and an end date (inclusive) to
+     * the given handler with the calorie details of each entry's food, joined by food ID
+     * in the database. Rows hold entry_date, meal_type, serving_quantity, calorie_food_id,
+     * calories_per_serving, and food_category, where calorie_food_id is null for foods
+     * that are not in the calorie table. ReportBuilder.getJoinedDataReport builds a
+     * report from these rows without looking foods up by name.
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamCalorieDataFromDateRange(LocalDate startDate, LocalDate endDate
+            , ResultSetHandler<T> handler) {
+        String sqlQuery = "SELECT a.entry_date, a.meal_type, a.serving_quantity, " +
+                "c.food_id AS calorie_food_id, c.calories_per_serving, c.food_category " +
+                "FROM food_log_database.food_log a " +
+                "LEFT JOIN food_log_database.calorie_table c ON c.food_id = a.food_id " +
+                "WHERE a.entry_date >= ? AND a.entry_date <= ?";
+
+        return this.streamQuery(sqlQuery, handler, startDate, endDate);
+    }
+
+    /**
+     * Streams all entries in the food log that have a given food name to the given handler
+     * @param foodName  Name of the food to stream entries for
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamDataFromFood(String foodName, ResultSetHandler<T> handler) {
+        List<String> matchingNames = this.searchFoodNames(foodName);
+        if (matchingNames == null) {
+            return null;
+        }
+        String[] parameters = foodNameParameters(matchingNames);
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE f.food_name IN (" + placeholders(parameters.length) + ") ORDER BY a.entry_date";
+
+        return this.streamQuery(sqlQuery, handler, (Object[]) parameters);
+    }
+
+    /**
+     * Returns the distinct food names in the food log that contain the given text,
+     * ignoring case. The food name index is reloaded from the database first if
+     * entries may have been deleted since the last load started.
+     * @param searchText    Partial or full food name to search for
+     * @return              Matching food names, or null if the index could not be loaded
+     */
+    public List<String> searchFoodNames(String searchText) {
+
+        // Deletes made while loading change the counter, so the index stays stale after this load
+        long version = this.foodNameChanges.get();
+        if (this.foodNameIndexVersion != version) {
+            String sqlQuery = "SELECT f.food_name FROM food_log_database.foods f WHERE EXISTS " +
+                    "(SELECT 1 FROM food_log_database.food_log a WHERE a.food_id = f.food_id)";
+
+            List<String> foodNames = this.streamQuery(sqlQuery, results -> {
+                List<String> names = new ArrayList<>();
+                while (results.next()) {
+                    names.add(results.getString("food_name"));
+                }
+                return names;
+            });
+
+            if (foodNames == null) {
+                return null;
+            }
+
+            // A slower load that started before another must not replace its newer names
+            synchronized (this.foodNameIndex) {
+                if (version > this.foodNameIndexVersion) {
+                    this.foodNameIndex.rebuild(foodNames);
+                    this.foodNameIndexVersion = version;
+                }
+            }
+        }
+
+        return this.foodNameIndex.search(searchText);
+    }
+
+    /**
+     * Streams all entries with a date of yesterday to the given handler
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamYesterdayData(ResultSetHandler<T> handler) {
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE a.entry_date = CURDATE() - INTERVAL 1 DAY";
+
+        return this.streamQuery(sqlQuery, handler);
+    }
+
+    /**
+     * Streams all entries within the last month to the given handler
+     * @param handler   Consumes the entries in a single forward pass
+     * @param <T>       Type of the value produced by the handler
+     * @return          The value returned by the handler, or null if an error is thrown
+     */
+    public <T> T streamMonthData(ResultSetHandler<T> handler) {
+        String sqlQuery = ENTRY_SELECT +
+                "WHERE a.entry_date >= CURDATE() - INTERVAL 1 MONTH";
+
+        return this.streamQuery(sqlQuery, handler);
+    }
+
+    /**
+     * Returns the first page of entries in the food log that occur between a start
+     * date (inclusive) and an end date (inclusive), ordered by entry date then entry ID
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @param pageSize  Maximum number of entries per page
+     * @return          The first page of entries in the given date range, or null if an
+     *                  error is thrown
+     */
+    @Override
+    public FoodLogPage fetchPageFromDateRange(LocalDate startDate, LocalDate endDate, int pageSize) {
+        return this.fetchPage(new PageQuery("a.entry_date >= ? AND a.entry_date <= ?"
+                , new Object[]{startDate, endDate}, null), pageSize, true, null, 0);
+    }
+
+    /**
+     * Returns the first page of entries in the food log that have a given food name,
+     * ordered by entry date then entry ID. Entries without an entry date are skipped,
+     * since they have no position to page from. They are stored on the undated date,
+     * below the first dated day, so the range also keeps the scan out of p_undated.
+     * @param foodName  Name of the food to get entries for
+     * @param pageSize  Maximum number of entries per page
+     * @return          The first page of entries that have the given food name, or null
+     *                  if an error is thrown
+     */
+    @Override
+    public FoodLogPage fetchPageFromFood(String foodName, int pageSize) {
+        List<String> matchingNames = this.searchFoodNames(foodName);
+        if (matchingNames == null) {
+            return null;
+        }
+        String[] parameters = foodNameParameters(matchingNames);
+
+        // Page by food ID so that each food's entries are read in order from the food ID index
+        String sqlQuery = "SELECT f.food_id FROM food_log_database.foods f " +
+                "WHERE f.food_name IN (" + placeholders(parameters.length) + ")";
+        List<Integer> foodIDs = this.streamQuery(sqlQuery, results -> {
+            List<Integer> ids = new ArrayList<>();
+            while (results.next()) {
+                ids.add(results.getInt("food_id"));
+            }
+            return ids;
+        }, (Object[]) parameters);
+        if (foodIDs == null) {
+            return null;
+        }
+
+        return this.fetchPage(new PageQuery("a.entry_date >= '" + PartitionManager.FIRST_DATED_DAY + "'"
+                , new Object[0], foodIDs), pageSize, true, null, 0);
+    }
+
+    /**
+     * Returns the page of entries that follows the given page
+     * @param page  A page returned by one of the page methods
+     * @return      The next page, the given page if it is the last page, or null if an
+     *              error is thrown or the page was returned by another kind of storage
+     */
+    @Override
+    public FoodLogPage fetchNextPage(FoodLogPage page) {
+        if (!(page.getQuery() instanceof PageQuery)) {
+            return null;
+        }
+        if (!page.hasNext() || page.isEmpty()) {
+            return page;
+        }
+
+        return this.fetchPage((PageQuery) page.getQuery(), page.getPageSize(), true
+                , page.getLastEntryDate(), page.getLastEntryID());
+    }
+
+    /**
+     * Returns the page of entries that comes before the given page
+     * @param page  A page returned by one of the page methods
+     * @return      The previous page, the given page if it is the first page, or null if
+     *              an error is thrown or the page was returned by another kind of storage
+     */
+    @Override
+    public FoodLogPage fetchPreviousPage(FoodLogPage page) {
+        if (!(page.getQuery() instanceof PageQuery)) {
+            return null;
+        }
+        if (!page.hasPrevious() || page.isEmpty()) {
+            return page;
+        }
+
+        return this.fetchPage((PageQuery) page.getQuery(), page.getPageSize(), false
+                , page.getFirstEntryDate(), page.getFirstEntryID());
+    }
+
+    /**
+     * Builds a DataReport for all entries between a start date (inclusive) and an end
+     * date (inclusive). The join with the calorie table and all totals are computed by
+     * the database in a single GROUP BY query, so only one row per meal type and food
+     * category is sent back instead of every entry and the whole calorie table.
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if an error is thrown
+     */
+    public DataReport aggregateDataReport(LocalDate startDate, LocalDate endDate) {
+        return this.aggregateQuery("a.entry_date >= ? AND a.entry_date <= ?", startDate, endDate);
+    }
+
+    /**
+     * Builds a DataReport for all entries with a date of yesterday, aggregated by the database
+     * @return  A DataReport of yesterday's entries, or null if an error is thrown
+     */
+    public DataReport aggregateYesterdayData() {
+        return this.aggregateQuery("a.entry_date = CURDATE() - INTERVAL 1 DAY");
+    }
+
+    /**
+     * Builds a DataReport for all entries within the last month, aggregated by the database
+     * @return  A DataReport of the past month's entries, or null if an error is thrown
+     */
+    public DataReport aggregateMonthData() {
+        return this.aggregateQuery("a.entry_date >= CURDATE() - INTERVAL 1 MONTH");
+    }
+
+    /**
+     * Builds a DataReport for all entries between a start date (inclusive) and an end
+     * date (inclusive) by merging the precomputed daily summaries of each day, so the
+     * cost depends on the number of days rather than the number of entries
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if an error is thrown
+     */
+    public DataReport fetchSummaryDataReport(LocalDate startDate, LocalDate endDate) {
+        String sqlQuery = "SELECT * FROM food_log_database.daily_summary s " +
+                "WHERE s.entry_date >= ? AND s.entry_date <= ?";
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getSummaryDataReport()
+                , startDate, endDate);
+    }
+
+    /**
+     * Builds a DataReport from the daily summaries of the given date range
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if an error is thrown
+     */
+    @Override
+    public DataReport fetchDataReport(LocalDate startDate, LocalDate endDate) {
+        return this.fetchSummaryDataReport(startDate, endDate);
+    }
+
+    /**
+     * @return  A DataReport of yesterday's entries from its daily summary, or null if an
+     *          error is thrown
+     */
+    @Override
+    public DataReport fetchYesterdayReport() {
+        return this.fetchYesterdaySummaryReport();
+    }
+
+    /**
+     * @return  A DataReport of the past month's entries from its daily summaries, or null
+     *          if an error is thrown
+     */
+    @Override
+    public DataReport fetchMonthReport() {
+        return this.fetchMonthSummaryReport();
+    }
+
+    /**
+     * Streams all entries in the given date range into a file
+     * @param startDate The start of the date range to export (inclusive)
+     * @param endDate   The end of the date range to export (inclusive)
+     * @param file      Path of the file to write, which is replaced if it exists
+     * @return          The number of entries written, or -1 if an error is thrown
+     */
+    @Override
+    public int exportEntries(LocalDate startDate, LocalDate endDate, Path file) {
+        Integer rowCount = this.streamDataFromDateRange(startDate, endDate
+                , results -> new ReportBuilder(results).exportResults(file));
+        return rowCount == null ? -1 : rowCount;
+    }
+
+    /**
+     * Builds a DataReport for yesterday from its precomputed daily summary
+     * @return  A DataReport of yesterday's entries, or null if an error is thrown
+     */
+    public DataReport fetchYesterdaySummaryReport() {
+        String sqlQuery = "SELECT * FROM food_log_database.daily_summary s " +
+                "WHERE s.entry_date = CURDATE() - INTERVAL 1 DAY";
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getSummaryDataReport());
+    }
+
+    /**
+     * Builds a DataReport for the last month by merging its precomputed daily summaries
+     * @return  A DataReport of the past month's entries, or null if an error is thrown
+     */
+    public DataReport fetchMonthSummaryReport() {
+        String sqlQuery = "SELECT * FROM food_log_database.daily_summary s " +
+                "WHERE s.entry_date >= CURDATE() - INTERVAL 1 MONTH";
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getSummaryDataReport());
+    }
+
     /**
      * Deletes all entries in the food log that are older than the given number
-     * of days parameter
+     * of days parameter. The partitions of whole months before the cutoff are
+     * dropped and the rest of the entries are deleted in paced chunks by the
+     * RetentionPurge, in the calling thread. Entries without a date are kept.
      * @param deleteDays    Number of days older than to delete
      * @return              true if deletion successful, false otherwise
      */
+    @Override
     public boolean deleteOldEntries(int deleteDays) {
-        String sqlString = "DELETE FROM food_log_database.food_log a " +
-                "WHERE a.entry_date < CURDATE() - INTERVAL ? DAY";
-
         try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlString);
-            statement.setInt(1, deleteDays);
-            statement.executeUpdate();
+            this.retentionPurge.purge(deleteDays, this.purgeListener(null));
+            return this.retentionPurge.getProgress().isFinished();
         } catch (SQLException e) {
             return false;
         }
+    }
+
+    /**
+     * Starts deleting entries older than the given number of days in the background.
+     * An interrupted purge is carried on from its checkpoint.
+     * @param deleteDays    Number of days older than to delete
+     * @param listener      Called from the purge thread with the progress after each
+     *                      chunk and when the purge ends, or null
+     * @return              true if the purge was started, false if one is already running
+     */
+    public boolean startPurge(int deleteDays, Consumer<RetentionPurge.Progress> listener) {
+        return this.retentionPurge.start(deleteDays, this.purgeListener(listener));
+    }
+
+    /**
+     * Carries on in the background with a purge that an earlier run of the app did
+     * not finish, if there is one
+     * @param listener  Called from the purge thread with the progress after each chunk
+     *                  and when the purge ends, or null
+     * @return          true if an unfinished purge was resumed
+     */
+    public boolean resumePurge(Consumer<RetentionPurge.Progress> listener) {
+        return this.retentionPurge.resume(this.purgeListener(listener));
+    }
+
+    /**
+     * @return  The purge used to delete old entries, for checking its progress,
+     *          changing its pace, or stopping it
+     */
+    public RetentionPurge getRetentionPurge() {
+        return this.retentionPurge;
+    }
+
+    /**
+     * Wraps a purge listener so that deleted entries mark the food name index stale,
+     * since they may have been the last ones for some food names, and are passed on
+     * to the entry change listeners
+     */
+    private Consumer<RetentionPurge.Progress> purgeListener(Consumer<RetentionPurge.Progress> listener) {
+        return progress -> {
+            this.foodNameChanges.incrementAndGet();
+            if (progress.getCutoffDate() != null) {
+                for (EntryChangeListener changeListener : this.changeListeners) {
+                    changeListener.entriesChanged(LocalDate.MIN, progress.getCutoffDate().minusDays(1));
+                }
+            }
+            if (listener != null) {
+                listener.accept(progress);
+            }
+        };
+    }
+
+    @Override
+    public void addEntryChangeListener(EntryChangeListener listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * Tells the entry change listeners that the entries of the given dates changed.
+     * Entries without a date are not in any month, so null dates are skipped.
+     * @param entryDates    Dates of the changed entries
+     */
+    private void notifyEntriesChanged(Collection<LocalDate> entryDates) {
+        LocalDate firstDate = null;
+        LocalDate lastDate = null;
+        for (LocalDate entryDate : entryDates) {
+            if (entryDate != null) {
+                firstDate = firstDate == null || entryDate.isBefore(firstDate) ? entryDate : firstDate;
+                lastDate = lastDate == null || entryDate.isAfter(lastDate) ? entryDate : lastDate;
+            }
+        }
+        if (firstDate == null) {
+            return;
+        }
 
-        return true;
+        for (EntryChangeListener listener : this.changeListeners) {
+            listener.entriesChanged(firstDate, lastDate);
+        }
+    }
+
+    /**
+     * Gives the current month and the given number of months after it their own
+     * partitions of the food_log table, if they do not have them yet
+     * @param monthsAhead   Number of months after the current month to partition
+     * @return              Number of partitions created, or -1 if an error is thrown
+     */
+    public int createFuturePartitions(int monthsAhead) {
+        YearMonth throughMonth = YearMonth.now().plusMonths(Math.max(0, monthsAhead));
+        this.lastPartitionAttemptMillis = System.currentTimeMillis();
+
+        try (Connection connection = this.foodLogConn.getFoodLogConnection()) {
+            int partitionCount = PartitionManager.createPartitions(connection, throughMonth);
+            if (throughMonth.isAfter(this.partitionedThrough)) {
+                this.partitionedThrough = throughMonth;
+            }
+            return partitionCount;
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Creates partitions ahead of time once next month no longer has its own, so
+     * partitions keep up as months roll over. After a failed attempt, inserts wait
+     * PARTITION_RETRY_MILLIS before trying again instead of repeating the DDL on every
+     * insert, and entries land in p_future until then.
+     */
+    private void ensurePartitions() {
+        if (YearMonth.now().plusMonths(1).isAfter(this.partitionedThrough)
+                && System.currentTimeMillis() - this.lastPartitionAttemptMillis >= PARTITION_RETRY_MILLIS) {
+            this.createFuturePartitions(PARTITION_MONTHS_AHEAD);
+        }
+    }
+
+    /**
+     * @param entryDate An entry date, or null for an entry without a date
+     * @return          The date the entry is stored on, since the partitioned entry_date
+     *                  column cannot be null
+     */
+    private static LocalDate storedDate(LocalDate entryDate) {
+        return entryDate == null ? PartitionManager.UNDATED_DATE : entryDate;
     }
 
     /**
@@ -238,25 +1036,75 @@ public class FoodLogComm {
      * @param entryNotes        entry notes
      * @return                  true if update is successful, false otherwise
      */
-    public boolean editEntry(int entryID, String entryDate, String foodName
+    @Override
+    public boolean editEntry(int entryID, LocalDate entryDate, String foodName
             , String mealType, double servingQuantity, String entryNotes) {
         String sqlString = "UPDATE food_log_database.food_log " +
-                "SET entry_date = ?, food_name = ?, meal_type = ?, serving_quantity = ?, " +
-                "entry_notes = ? WHERE entry_id = ?";
+                "SET entry_date = ?, food_id = (SELECT f.food_id FROM food_log_database.foods f " +
+                "WHERE f.food_name = ?), meal_type = ?, serving_quantity = ?, entry_notes = ? " +
+                "WHERE entry_id = ?";
 
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlString);
-            statement.setString(1, entryDate);
+        String lookupString = "SELECT NULLIF(a.entry_date, ?) AS entry_date, a.food_id, f.food_name " +
+                "FROM food_log_database.food_log a JOIN food_log_database.foods f ON a.food_id = f.food_id " +
+                "WHERE a.entry_id = ? FOR UPDATE";
+
+        String usedString = "SELECT 1 FROM food_log_database.food_log a WHERE a.food_id = ? LIMIT 1";
+
+        HashSet<LocalDate> changedDates = new HashSet<>();
+        String unusedName = null;
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement lookup = connection.prepareStatement(lookupString);
+             PreparedStatement statement = connection.prepareStatement(sqlString);
+             PreparedStatement used = connection.prepareStatement(usedString)) {
+            connection.setAutoCommit(false);
+
+            addFoods(connection, Collections.singleton(foodName));
+
+            // Find the entry's current date and food, since that day's summary changes too
+            changedDates.add(entryDate);
+            lookup.setObject(1, PartitionManager.UNDATED_DATE);
+            lookup.setInt(2, entryID);
+            int previousFoodID = -1;
+            String previousName = null;
+            try (ResultSet results = lookup.executeQuery()) {
+                if (results.next()) {
+                    LocalDate previousDate = results.getObject("entry_date", LocalDate.class);
+                    if (previousDate != null) {
+                        changedDates.add(previousDate);
+                    }
+                    previousFoodID = results.getInt("food_id");
+                    previousName = results.getString("food_name");
+                }
+            }
+
+            statement.setObject(1, storedDate(entryDate));
             statement.setString(2, foodName.toLowerCase());
             statement.setString(3, mealType);
             statement.setDouble(4, servingQuantity);
             statement.setString(5, entryNotes);
             statement.setInt(6, entryID);
             statement.executeUpdate();
+
+            // The entry's previous food name may no longer be used by any entry
+            if (previousName != null && !previousName.equalsIgnoreCase(foodName)) {
+                used.setInt(1, previousFoodID);
+                try (ResultSet results = used.executeQuery()) {
+                    if (!results.next()) {
+                        unusedName = previousName;
+                    }
+                }
+            }
+
+            DailySummaryTable.refreshDates(connection, changedDates);
+            connection.commit();
         } catch (SQLException e) {
             return false;
         }
 
+        // Update the food name index in place instead of reloading it
+        this.foodNameIndex.add(foodName);
+        this.foodNameIndex.remove(unusedName);
+        this.notifyEntriesChanged(changedDates);
         return true;
     }
 
@@ -268,22 +1116,30 @@ public class FoodLogComm {
      * @param foodCategory  Category of the food
      * @return              true if insertion successful, false otherwise
      */
+    @Override
     public boolean insertFoodDetails(String foodName, int calories, String foodCategory) {
         String sqlString = "INSERT INTO food_log_database.calorie_table" +
-                "(food_name, calories_per_serving, food_category) " +
-                "VALUES(?, ?, ?)";
+                "(food_id, calories_per_serving, food_category) " +
+                "VALUES((SELECT f.food_id FROM food_log_database.foods f WHERE f.food_name = ?), ?, ?)";
 
         // Insert values into table and handle exceptions
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlString);
-            statement.setString(1, foodName);
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlString)) {
+            connection.setAutoCommit(false);
+            addFoods(connection, Collections.singleton(foodName));
+            statement.setString(1, foodName.toLowerCase());
             statement.setInt(2, calories);
             statement.setString(3, foodCategory);
             statement.executeUpdate();
+
+            // Past days with this food now have calories and a category for it
+            DailySummaryTable.refreshFood(connection, foodName);
+            connection.commit();
         } catch (SQLException e) {
             return false;
         }
 
+        this.calorieCache.put(foodName.toLowerCase(), new CalorieTableEntry(calories, foodCategory));
         return true;
     }
 
@@ -292,14 +1148,27 @@ public class FoodLogComm {
      * @param foodName  name of the food
      * @return          true if deletion successful, false otherwise
      */
+    @Override
     public int deleteFoodDetails(String foodName) {
-        String sqlString = "DELETE FROM food_log_database.calorie_table a " +
-                "WHERE a.food_name = ?";
+        String sqlString = "DELETE c FROM food_log_database.calorie_table c " +
+                "JOIN food_log_database.foods f ON f.food_id = c.food_id WHERE f.food_name = ?";
 
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlString);
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlString)) {
+            connection.setAutoCommit(false);
             statement.setString(1, foodName.toLowerCase());
-            return statement.executeUpdate();
+            int deletedCount = statement.executeUpdate();
+
+            // Past days with this food no longer count its calories or category
+            if (deletedCount > 0) {
+                DailySummaryTable.refreshFood(connection, foodName);
+            }
+            connection.commit();
+
+            if (deletedCount > 0) {
+                this.calorieCache.remove(foodName.toLowerCase());
+            }
+            return deletedCount;
         } catch (SQLException e) {
             return -1;
         }
@@ -310,23 +1179,263 @@ public class FoodLogComm {
      * @return  A ResultSet of all food calorie data
      */
     public ResultSet fetchCalorieData() {
-        String sqlQuery = "SELECT * FROM food_log_database.calorie_table";
+        String sqlQuery = CALORIE_SELECT;
 
-        try {
-            PreparedStatement statement = this.connection.prepareStatement(sqlQuery
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
                     , ResultSet.TYPE_SCROLL_SENSITIVE
-                    , ResultSet.CONCUR_READ_ONLY);
-            return statement.executeQuery();
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            return cacheResults(statement.executeQuery());
         } catch (SQLException e) {
             return null;
         }
     }
 
+    /**
+     * Returns all data in the food log calorie table from the in-memory calorie
+     * cache, reading the calorie table only on first use or after the cache's time
+     * to live has passed
+     * @return  An unmodifiable Map of food name to calorie details, or null if the
+     *          calorie table could not be read
+     */
+    @Override
+    public Map<String, CalorieTableEntry> getCalorieMap() {
+        return this.calorieCache.getCalorieMap();
+    }
+
+    /**
+     * Discards the cached calorie table so that the next report reads it again
+     */
+    public void invalidateCalorieCache() {
+        this.calorieCache.invalidate();
+    }
+
+    /**
+     * Reads the entire calorie table into a HashMap for the calorie cache
+     * @return  A HashMap of food name to calorie details, or null if an error is thrown
+     */
+    protected HashMap<String, CalorieTableEntry> loadCalorieMap() {
+        String sqlQuery = CALORIE_SELECT;
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getCalorieMap(results));
+    }
+
+    /**
+     * @return  Maximum number of database connections this object can use at the same time
+     */
+    public int getMaxConnections() {
+        return this.foodLogConn.getConnectionPool().getMaxSize();
+    }
+
     /**
      * Closes the database connection
      */
     public void closeFoodLogConn() throws SQLException {
-        this.connection.close();
+        this.foodLogConn.closeConn();
+    }
+
+    /**
+     * Stops any running retention purge, which is resumed on the next start, then
+     * closes the database connection
+     * @return  true if closed successfully, false otherwise
+     */
+    @Override
+    public boolean close() {
+        this.retentionPurge.stop(PURGE_STOP_TIMEOUT_MILLIS);
+        try {
+            this.closeFoodLogConn();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the report aggregation query over the entries matching the given condition.
+     * Rows are grouped by meal type and food category WITH ROLLUP so that the subtotal
+     * row for each meal type can count the distinct days that meal was eaten, which
+     * applies the one breakfast, brunch, lunch, and dinner per day rule in the database.
+     * @param whereClause   Condition on the food log table, which is aliased as a
+     * @param parameters    Values for each parameter in the condition, in order
+     * @return              A DataReport for the matching entries, or null if an error is thrown
+     */
+    private DataReport aggregateQuery(String whereClause, Object... parameters) {
+        String sqlQuery = "SELECT a.meal_type, c.food_category, " +
+                "GROUPING(a.meal_type) AS all_meal_types, " +
+                "GROUPING(c.food_category) AS all_categories, " +
+                "COUNT(*) AS entry_count, " +
+                "COUNT(DISTINCT a.entry_date) AS day_count, " +
+                "SUM(a.serving_quantity) AS servings, " +
+                "COALESCE(SUM(c.calories_per_serving * a.serving_quantity), 0) AS calories " +
+                "FROM food_log_database.food_log a " +
+                "LEFT JOIN food_log_database.calorie_table c ON c.food_id = a.food_id " +
+                "WHERE " + whereClause + " " +
+                "GROUP BY a.meal_type, c.food_category WITH ROLLUP";
+
+        return this.streamQuery(sqlQuery, results -> new ReportBuilder(results).getAggregatedDataReport()
+                , parameters);
     }
 
+    /**
+     * Fetches one page of the entries matching the given condition using keyset
+     * pagination. Instead of an OFFSET, which makes the database read and discard
+     * every earlier row, the query seeks directly past the entry date and entry ID of
+     * the page it continues from. The seek is written as a row comparison on the
+     * columns of an index, so the database turns it into a single index range, and
+     * the ordering is served by the same index, so each page costs the same no matter
+     * how deep into the results it is. Pages of foods seek within each food's range of
+     * the food ID index and merge only the first rows of each food.
+     * @param query         Condition selecting the paged entries
+     * @param pageSize      Maximum number of entries per page
+     * @param forward       true to read the entries after the seek position, false to
+     *                      read the entries before it
+     * @param seekDate      Entry date of the entry to continue from, or null for the first page
+     * @param seekEntryID   Entry ID of the entry to continue from
+     * @return              The page of entries, or null if an error is thrown
+     */
+    private FoodLogPage fetchPage(PageQuery query, int pageSize, boolean forward
+            , LocalDate seekDate, int seekEntryID) {
+        pageSize = Math.max(1, pageSize);
+        String comparison = forward ? ">" : "<";
+        String direction = forward ? "ASC" : "DESC";
+        String orderClause = " ORDER BY a.entry_date " + direction + ", a.entry_id " + direction + " LIMIT ?";
+
+        // One row more than a page is read to find out whether another page follows
+        List<Object> queryParameters = new ArrayList<>();
+        String sqlQuery;
+        if (query.foodIDs == null) {
+            String seekClause = seekDate == null ? "" : " AND (a.entry_date, a.entry_id) " + comparison + " (?, ?)";
+            sqlQuery = ENTRY_SELECT + "WHERE " + query.whereClause + seekClause + orderClause;
+
+            queryParameters.addAll(Arrays.asList(query.parameters));
+            if (seekDate != null) {
+                queryParameters.add(seekDate);
+                queryParameters.add(seekEntryID);
+            }
+            queryParameters.add(pageSize + 1);
+        } else {
+            if (query.foodIDs.isEmpty()) {
+                return FoodLogPage.fromRows(new ArrayList<>(), pageSize, forward, seekDate != null, query);
+            }
+
+            // Each food is read in order from its own index range, so at most a page per food is sorted
+            String seekClause = seekDate == null ? ""
+                    : " AND (a.food_id, a.entry_date, a.entry_id) " + comparison + " (?, ?, ?)";
+            List<String> foodQueries = new ArrayList<>();
+            for (int foodID : query.foodIDs) {
+                foodQueries.add(ENTRY_SELECT + "WHERE a.food_id = ? AND " + query.whereClause + seekClause
+                        + orderClause);
+
+                queryParameters.add(foodID);
+                queryParameters.addAll(Arrays.asList(query.parameters));
+                if (seekDate != null) {
+                    queryParameters.add(foodID);
+                    queryParameters.add(seekDate);
+                    queryParameters.add(seekEntryID);
+                }
+                queryParameters.add(pageSize + 1);
+            }
+
+            if (foodQueries.size() == 1) {
+                sqlQuery = foodQueries.get(0);
+            } else {
+                sqlQuery = "SELECT * FROM ((" + String.join(") UNION ALL (", foodQueries) + ")) p " +
+                        "ORDER BY p.entry_date " + direction + ", p.entry_id " + direction + " LIMIT ?";
+                queryParameters.add(pageSize + 1);
+            }
+        }
+
+        LinkedHashMap<Integer, FoodTableEntry> rows = this.streamQuery(sqlQuery
+                , results -> new ReportBuilder(results).getResultsMap(), queryParameters.toArray());
+        if (rows == null) {
+            return null;
+        }
+
+        return FoodLogPage.fromRows(new ArrayList<>(rows.entrySet()), pageSize, forward, seekDate != null, query);
+    }
+
+    /**
+     * Returns the values to bind to a food name IN list. An empty list of names is
+     * bound as a single null, which matches no entries.
+     * @param foodNames Food names to match exactly
+     * @return          One parameter value per placeholder in the IN list
+     */
+    private static String[] foodNameParameters(List<String> foodNames) {
+        if (foodNames.isEmpty()) {
+            return new String[]{null};
+        }
+        return foodNames.toArray(new String[0]);
+    }
+
+    /**
+     * @param count Number of parameters
+     * @return      A comma separated list of the given number of ? placeholders
+     */
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Runs a query as a forward only, read only statement and streams its rows to
+     * the given handler. A fetch size of Integer.MIN_VALUE tells the MySQL driver to
+     * read rows from the server one at a time instead of buffering the entire result,
+     * so memory use stays constant regardless of the number of rows.
+     * @param sqlQuery      Query to run
+     * @param handler       Consumes the rows in a single forward pass
+     * @param parameters    Values for each parameter in the query, in order, such as
+     *                      Strings and LocalDates
+     * @param <T>           Type of the value produced by the handler
+     * @return              The value returned by the handler, or null if an error is thrown
+     */
+    private <T> T streamQuery(String sqlQuery, ResultSetHandler<T> handler, Object... parameters) {
+        try (Connection connection = this.foodLogConn.getFoodLogConnection();
+             PreparedStatement statement = connection.prepareStatement(sqlQuery
+                    , ResultSet.TYPE_FORWARD_ONLY
+                    , ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            try (ResultSet results = statement.executeQuery()) {
+                return handler.handle(results);
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the given ResultSet into a scrollable, disconnected CachedRowSet so that
+     * the pooled connection it was read from can be returned before the results are used
+     * @param results       A ResultSet obtained from a query on a pooled connection
+     * @return              A scrollable copy of the given results
+     * @throws SQLException If the results cannot be read
+     */
+    private static ResultSet cacheResults(ResultSet results) throws SQLException {
+        if (rowSetFactory == null) {
+            rowSetFactory = RowSetProvider.newFactory();
+        }
+
+        try (ResultSet source = results) {
+            CachedRowSet rowSet = rowSetFactory.createCachedRowSet();
+            rowSet.populate(source);
+            return rowSet;
+        }
+    }
+
+    /**
+     * Condition selecting the entries paged through by the page methods
+     */
+    private static class PageQuery {
+        private final String whereClause;  // Condition on the food log table, which is aliased as a
+        private final Object[] parameters;  // Values for each parameter in the condition, in order
+        private final List<Integer> foodIDs;  // Foods whose entries are paged through, or null for any food
+
+        PageQuery(String whereClause, Object[] parameters, List<Integer> foodIDs) {
+            this.whereClause = whereClause;
+            this.parameters = parameters;
+            this.foodIDs = foodIDs;
+        }
+    }
 }
@@ -1,46 +1,76 @@
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
- * Creates a Connection object specifically to the food_log_database
- * and provides a get method that returns the current connection that
- * can be used to connect to and modify the database
+ * Creates a pool of connections specifically to the food_log_database
+ * and provides a get method that borrows a connection from the pool that
+ * can be used to connect to and modify the database. Borrowed connections
+ * are returned to the pool when they are closed.
  *
  * @author iDoc1
  *
  */
 public class FoodLogConnection {
 
-    private final String databaseUrl = "jdbc:mysql://localhost:3306/food_log_database";
+    // Server side prepared statements stay prepared for as long as the pool caches them,
+    // and batched inserts are rewritten into multi-row INSERT statements
+    private final String databaseUrl = "jdbc:mysql://localhost:3306/food_log_database"
+            + "?useServerPrepStmts=true&rewriteBatchedStatements=true";
     private final String username = "foodLog";
     private final String password = "admin";
 
-    private Connection connection;
+    // Connection pool settings
+    private static final int POOL_MIN_SIZE = 1;
+    private static final int POOL_MAX_SIZE = 10;
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final long POOL_ACQUIRE_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    private FoodLogConnectionPool connectionPool;
 
     /**
      * Constructs a FoodLogConnection object
      */
     public FoodLogConnection() {
         try {
-            this.connection = DriverManager.getConnection(databaseUrl, username, password);
+            this.connectionPool = new FoodLogConnectionPool(databaseUrl, username, password
+                    , POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MILLIS, POOL_ACQUIRE_TIMEOUT_MILLIS
+                    , STATEMENT_CACHE_SIZE);
         } catch (SQLException e) {
             throw new IllegalStateException("Database connection failed.");
         }
+
+        // Bring the database schema up to date before it is used
+        try (Connection connection = this.connectionPool.borrowConnection()) {
+            new SchemaMigrator(connection).migrate();
+        } catch (SQLException e) {
+            this.connectionPool.close();
+            throw new IllegalStateException("Database migration failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borrows a connection to the food log database from the connection pool.
+     * The connection must be closed after use to return it to the pool.
+     * @return              A Connection object to food_log_database
+     * @throws SQLException If no connection becomes available before the acquire timeout
+     */
+    public Connection getFoodLogConnection() throws SQLException {
+        return this.connectionPool.borrowConnection();
     }
 
     /**
-     * Returns the current connection to the food log database
-     * @return  A Connection object to food_log_database
+     * Returns the connection pool so that its metrics can be inspected
+     * @return  The pool of connections to food_log_database
      */
-    public Connection getFoodLogConnection() {
-        return this.connection;
+    public FoodLogConnectionPool getConnectionPool() {
+        return this.connectionPool;
     }
 
     /**
-     * Closes the database connection
+     * Closes all database connections
      */
     public void closeConn() throws SQLException {
-        this.connection.close();
+        this.connectionPool.close();
     }
 }
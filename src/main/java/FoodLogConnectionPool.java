@@ -0,0 +1,437 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of connections to the food log database. Connections are
+ * borrowed for a single operation and handed back to the pool by calling
+ * close() on the borrowed Connection. Idle connections are validated before
+ * they are handed out, connections that sit idle for too long are closed
+ * down to the minimum pool size, and borrowers wait at most the acquire
+ * timeout for a connection to become available. Each connection keeps a
+ * PreparedStatementCache so that statements prepared through a borrowed
+ * connection are reused by later borrowers.
+ *
+ * @author iDoc1
+ *
+ */
+public class FoodLogConnectionPool {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String databaseUrl;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Pool metrics
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    /**
+     * Constructs a FoodLogConnectionPool and opens the minimum number of connections
+     * @param databaseUrl           JDBC URL of the food log database
+     * @param username              Database user name
+     * @param password              Database password
+     * @param minSize               Number of connections kept open even when idle
+     * @param maxSize               Maximum number of connections open at once
+     * @param idleTimeoutMillis     Time after which an idle connection above minSize is closed
+     * @param acquireTimeoutMillis  Maximum time a borrower waits for a connection
+     * @param statementCacheSize    Maximum number of PreparedStatements cached per connection
+     * @throws SQLException         If the initial connections cannot be opened
+     */
+    public FoodLogConnectionPool(String databaseUrl, String username, String password, int minSize
+            , int maxSize, long idleTimeoutMillis, long acquireTimeoutMillis
+            , int statementCacheSize) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize >= 1.");
+        }
+
+        this.databaseUrl = databaseUrl;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        // Open the minimum number of connections up front
+        try {
+            for (int i = 0; i < minSize; i++) {
+                this.idleConnections.offerLast(this.openConnection());
+            }
+        } catch (SQLException e) {
+            this.closeIdleConnections();
+            throw e;
+        }
+
+        // Periodically close connections that have been idle for too long
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "food-log-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictor.scheduleAtFixedRate(this::evictIdleConnections
+                , evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the acquire timeout for one
+     * to become available. The returned Connection must be closed to return it to
+     * the pool, ideally using a try-with-resources block.
+     * @return              A validated connection to the food log database
+     * @throws SQLException If the pool is closed, the acquire timeout elapses, or a
+     *                      new connection cannot be opened
+     */
+    public Connection borrowConnection() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        long waitStart = System.nanoTime();
+
+        // Wait for a free slot in the pool
+        try {
+            if (!this.permits.tryAcquire(this.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try {
+
+            // Reuse the most recently returned connection that is still valid
+            PooledConnection pooled = this.idleConnections.pollFirst();
+            while (pooled != null && !this.isValid(pooled)) {
+                this.discard(pooled);
+                pooled = this.idleConnections.pollFirst();
+            }
+
+            // Open a new connection if no idle connection was available
+            if (pooled == null) {
+                pooled = this.openConnection();
+            }
+
+            this.recordWait(System.nanoTime() - waitStart);
+            this.activeCount.incrementAndGet();
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Connections that
+     * are currently borrowed are closed when they are returned.
+     */
+    public void close() {
+        this.closed = true;
+        this.evictor.shutdownNow();
+        this.closeIdleConnections();
+    }
+
+    /**
+     * @return  Number of connections currently borrowed from the pool
+     */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /**
+     * @return  Number of open connections currently waiting in the pool
+     */
+    public int getIdleCount() {
+        return this.idleConnections.size();
+    }
+
+    /**
+     * @return  Number of open connections, both borrowed and idle
+     */
+    public int getTotalCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * @return  Maximum number of connections this pool will open
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return  Number of connections successfully borrowed since the pool was created
+     */
+    public long getBorrowCount() {
+        return this.borrowCount.get();
+    }
+
+    /**
+     * @return  Number of borrow attempts that timed out waiting for a connection
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return  Average time in milliseconds borrowers waited for a connection
+     */
+    public double getAverageWaitMillis() {
+        long borrows = this.borrowCount.get();
+        if (borrows == 0) {
+            return 0;
+        }
+        return this.totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    /**
+     * @return  Longest time in milliseconds a borrower waited for a connection
+     */
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return  Number of PreparedStatements reused from a connection's statement cache
+     */
+    public long getStatementCacheHits() {
+        return this.statementCacheHits.get();
+    }
+
+    /**
+     * @return  Number of PreparedStatements that had to be prepared on the connection
+     */
+    public long getStatementCacheMisses() {
+        return this.statementCacheMisses.get();
+    }
+
+    /**
+     * Returns a one line summary of the pool metrics for logging
+     * @return  A String with active, idle, and wait time metrics
+     */
+    public String getMetricsSummary() {
+        return String.format("active=%d idle=%d total=%d/%d borrows=%d timeouts=%d avgWait=%.3fms maxWait=%.3fms"
+                + " stmtCacheHits=%d stmtCacheMisses=%d"
+                , this.getActiveCount(), this.getIdleCount(), this.getTotalCount(), this.maxSize
+                , this.getBorrowCount(), this.getTimeoutCount(), this.getAverageWaitMillis()
+                , this.getMaxWaitMillis(), this.getStatementCacheHits(), this.getStatementCacheMisses());
+    }
+
+    /**
+     * Opens a new physical connection to the database
+     * @return              A new PooledConnection
+     * @throws SQLException If the connection cannot be opened
+     */
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(this.databaseUrl, this.username, this.password);
+        this.totalCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Checks whether an idle connection is still usable, such as after a dropped socket
+     * @param pooled    The connection to validate
+     * @return          true if the connection is valid, false otherwise
+     */
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hands a borrowed connection back to the pool. The connection is reset to auto
+     * commit mode, and discarded if that fails or the pool has been closed.
+     * @param pooled    The connection being returned
+     */
+    private void release(PooledConnection pooled) {
+        this.activeCount.decrementAndGet();
+
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+
+            if (this.closed) {
+                this.discard(pooled);
+            } else {
+                pooled.lastReturnedMillis = System.currentTimeMillis();
+                this.idleConnections.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            this.discard(pooled);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout while
+     * keeping at least the minimum number of connections open
+     */
+    private void evictIdleConnections() {
+        long cutoff = System.currentTimeMillis() - this.idleTimeoutMillis;
+
+        // Oldest connections are at the back of the deque
+        for (PooledConnection pooled : this.idleConnections.toArray(new PooledConnection[0])) {
+            if (this.totalCount.get() <= this.minSize) {
+                return;
+            }
+            if (pooled.lastReturnedMillis < cutoff && this.idleConnections.remove(pooled)) {
+                this.discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection in the pool
+     */
+    private void closeIdleConnections() {
+        PooledConnection pooled;
+        while ((pooled = this.idleConnections.pollFirst()) != null) {
+            this.discard(pooled);
+        }
+    }
+
+    /**
+     * Closes the physical connection and removes it from the pool's count
+     * @param pooled    The connection to close
+     */
+    private void discard(PooledConnection pooled) {
+        this.totalCount.decrementAndGet();
+        try {
+            pooled.statementCache.closeAll();
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Connection is unusable either way
+        }
+    }
+
+    /**
+     * Adds a successful borrow's wait time to the pool metrics
+     * @param waitNanos Time spent waiting for the connection
+     */
+    private void recordWait(long waitNanos) {
+        this.borrowCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waitNanos);
+        this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * A physical connection owned by the pool. Each borrow receives a new handle to
+     * the connection so that a handle cannot be used after it has been returned.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final PreparedStatementCache statementCache;
+        private volatile long lastReturnedMillis = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new PreparedStatementCache(physical, statementCacheSize
+                    , statementCacheHits, statementCacheMisses);
+        }
+
+        /**
+         * @return  A Connection proxy whose close method returns this connection to the pool
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader()
+                    , new Class<?>[]{Connection.class}, new ConnectionHandle(this));
+        }
+    }
+
+    /**
+     * Forwards calls to the physical connection until the handle is closed, at which
+     * point the connection is returned to the pool instead of being closed. Statements
+     * prepared through the handle are served from the connection's statement cache.
+     */
+    private class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean handleClosed = false;
+
+        ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            // Object methods refer to the handle itself rather than the physical connection
+            if (method.getDeclaringClass() == Object.class) {
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return "FoodLogConnectionPool handle for " + this.pooled.physical;
+            }
+
+            if (name.equals("close")) {
+                if (!this.handleClosed) {
+                    this.handleClosed = true;
+                    release(this.pooled);
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return this.handleClosed || this.pooled.physical.isClosed();
+            } else if (this.handleClosed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+
+            // Serve prepareStatement(sql) and prepareStatement(sql, type, concurrency) from the cache
+            if (name.equals("prepareStatement") && method.getReturnType() == PreparedStatement.class) {
+                Class<?>[] paramTypes = method.getParameterTypes();
+                if (paramTypes.length == 1) {
+                    return this.pooled.statementCache.prepare((String) args[0], -1, -1);
+                } else if (paramTypes.length == 3 && paramTypes[1] == int.class && paramTypes[2] == int.class) {
+                    return this.pooled.statementCache.prepare((String) args[0], (int) args[1], (int) args[2]);
+                }
+            }
+
+            try {
+                return method.invoke(this.pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
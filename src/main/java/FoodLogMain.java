@@ -1,12 +1,23 @@
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a command line interface by which the user can enter information
  * about food that they ate on specific days for specific meals. The user can
  * add, delete and edit entries, display food log data, and enter food-specific
- * details such as calories per serving and food category.
+ * details such as calories per serving and food category. Starting the app
+ * with --write-behind adds new entries in the background through a
+ * WriteBehindQueue, journaled to a local file unless --no-journal is given.
+ * The journal file can be chosen with --journal=<path>. Starting the app with
+ * --embedded keeps the food log in local files through JournalStorage, so no
+ * database server is needed.
  *
  * @author iDoc1
  *
@@ -21,34 +32,263 @@ public class FoodLogMain {
     public static final Set<String> foodCategories
             = new HashSet<>(Arrays.asList("fruit", "vegetable", "grain", "dairy", "protein", "other"));
 
+    // Write-behind queue settings
+    private static final int WRITE_BEHIND_CAPACITY = 1000;
+    private static final long WRITE_BEHIND_CLOSE_TIMEOUT_MILLIS = 30 * 1000;
+    private static final String DEFAULT_JOURNAL_FILE = "food_log_journal.txt";
+
+    // Directory used by --embedded when none is given
+    private static final String DEFAULT_EMBEDDED_DIRECTORY = "food_log_data";
+
+    // Directory holding snapshots of closed-out database months used by date range reports
+    private static final String SNAPSHOT_DIRECTORY = "food_log_snapshots";
+
+    // Directory within the embedded storage directory holding snapshots of its months
+    private static final String EMBEDDED_SNAPSHOT_DIRECTORY = "snapshots";
+
+    // HTTP server settings used by --serve
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int DEFAULT_SERVER_THREADS = 10;
+    private static final int SERVER_STOP_TIMEOUT_SECONDS = 5;
+
+    // Longest a stopped server keeps the app running while the food log is closed
+    private static final long SERVER_SHUTDOWN_TIMEOUT_MILLIS = 60 * 1000;
+
+    // Most months ahead the food log can be partitioned from the modify menu
+    private static final int MAX_PARTITION_MONTHS_AHEAD = 120;
+
+    // Queues new entries to be written in the background, or null if entries are written immediately
+    private static WriteBehindQueue writeBehindQueue = null;
+
+    // Snapshots of closed-out months of the open storage, shared by every report of the session
+    private static SnapshotStore snapshotStore = null;
+
+    // Released once the session has closed the food log, so shutdown hooks can wait for it
+    private static final CountDownLatch sessionClosed = new CountDownLatch(1);
 
     public static void main(String[] args) {
 
         // Introduce app
         introduction();
 
-        // Establish connection to the food log database to be passed as an argument
-        System.out.println("Connecting to database...");
-        FoodLogConnection foodLogConn = new FoodLogConnection();
-        FoodLogComm foodLogComm = new FoodLogComm(foodLogConn);
+        // Open the embedded journal storage if asked to, otherwise connect to the food log database
+        FoodLogStorage foodLogStorage = openStorage(args);
+        if (foodLogStorage == null) {
+            return;
+        }
 
-        // Begin app session
+        // Keep each storage's snapshots apart, since they hold different food logs
+        Path embeddedDirectory = embeddedDirectory(args);
+        snapshotStore = new SnapshotStore(foodLogStorage, embeddedDirectory == null ? Paths.get(SNAPSHOT_DIRECTORY)
+                : embeddedDirectory.resolve(EMBEDDED_SNAPSHOT_DIRECTORY));
+
+        // Optionally add new entries to the database in the background
+        if (Arrays.asList(args).contains("--write-behind")) {
+            if (foodLogStorage instanceof FoodLogComm) {
+                startWriteBehind((FoodLogComm) foodLogStorage, args);
+            } else {
+                System.out.println("Write-behind is only used with the database. Entries will be added immediately.");
+            }
+        }
+
+        // Carry on deleting old entries if an earlier session was stopped partway
+        if (foodLogStorage instanceof FoodLogComm) {
+            startRetentionPurge((FoodLogComm) foodLogStorage, args);
+        }
+
+        // Serve the food log over HTTP instead of the menu if asked to
         boolean continueSession = true;
+        for (String arg : args) {
+            if (arg.equals("--serve") || arg.startsWith("--serve=")) {
+                serve(foodLogStorage, arg);
+                continueSession = false;
+            }
+        }
+
+        // Begin app session
         while (continueSession) {
-            choseOption(foodLogComm);
+            choseOption(foodLogStorage);
 
             // Ask if user would like to continue using app
-            continueSession = returnToMenu(foodLogComm);
+            continueSession = returnToMenu(foodLogStorage);
         }
 
-        // Close food log database connection
-        try {
-            foodLogComm.closeFoodLogConn();
-        } catch (SQLException e) {
-            System.out.println("Error occurred while closing database connection.");
+        // Write any queued entries before the database connection is closed
+        if (writeBehindQueue != null && !writeBehindQueue.close(WRITE_BEHIND_CLOSE_TIMEOUT_MILLIS)) {
+            System.out.println("Error: some queued entries were not written. Journaled entries will be");
+            System.out.println("written the next time the app is started with --write-behind.");
+            if (writeBehindQueue.getLastError() != null) {
+                System.out.println(writeBehindQueue.getLastError());
+            }
+        }
+
+        // Report a failed compaction of the embedded storage, which keeps working from its log
+        if (foodLogStorage instanceof JournalStorage && ((JournalStorage) foodLogStorage).getLastError() != null) {
+            System.out.println("Warning: " + ((JournalStorage) foodLogStorage).getLastError());
+        }
+
+        // Close food log storage
+        if (!foodLogStorage.close()) {
+            System.out.println("Error occurred while closing the food log.");
         }
 
+        // Print how long each database operation and report stage took this session
+        FoodLogMetrics.printSummary(System.out);
+
         System.out.println("\nThanks for using! Good bye.");
+        sessionClosed.countDown();
+    }
+
+    /**
+     * Opens the storage the food log is kept in. Starting the app with --embedded keeps
+     * the food log in local files through JournalStorage instead of the MySQL database.
+     * The directory can be given with --embedded=<directory>.
+     * @param args  Command line arguments, which may choose the embedded storage
+     * @return      The opened storage, or null if it could not be opened
+     */
+    private static FoodLogStorage openStorage(String[] args) {
+        Path directory = embeddedDirectory(args);
+        if (directory != null) {
+            System.out.println("Opening food log in " + directory + "...");
+            try {
+                return new JournalStorage(directory);
+            } catch (IOException e) {
+                System.out.println("Error: food log could not be opened. " + e.getMessage());
+                return null;
+            }
+        }
+
+        // Establish connection to the food log database
+        System.out.println("Connecting to database...");
+        FoodLogConnection foodLogConn = new FoodLogConnection();
+        return new InstrumentedFoodLogComm(foodLogConn);
+    }
+
+    /**
+     * @param args  Command line arguments, which may choose the embedded storage
+     * @return      Directory of the embedded storage, or null if the database is used
+     */
+    private static Path embeddedDirectory(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--embedded")) {
+                return Paths.get(DEFAULT_EMBEDDED_DIRECTORY);
+            } else if (arg.startsWith("--embedded=")) {
+                return Paths.get(arg.substring("--embedded=".length()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts the write-behind queue used to add new entries in the background. Entries
+     * left in the journal by an earlier session are written first. A shutdown hook
+     * writes queued entries if the app is stopped without exiting through the menu.
+     * @param foodLogComm   Object used to modify and query the food log database
+     * @param args          Command line arguments, which may set the journal file
+     */
+    private static void startWriteBehind(FoodLogComm foodLogComm, String[] args) {
+        Path journalFile = Paths.get(DEFAULT_JOURNAL_FILE);
+        for (String arg : args) {
+            if (arg.startsWith("--journal=")) {
+                journalFile = Paths.get(arg.substring("--journal=".length()));
+            } else if (arg.equals("--no-journal")) {
+                journalFile = null;
+            }
+        }
+
+        try {
+            writeBehindQueue = new WriteBehindQueue(foodLogComm, WRITE_BEHIND_CAPACITY
+                    , FoodLogComm.DEFAULT_BATCH_SIZE, journalFile);
+        } catch (IOException e) {
+            System.out.println("Error: write-behind journal could not be opened. Entries will be added immediately.");
+            return;
+        }
+        if (writeBehindQueue.getLastError() != null) {
+            System.out.println("Warning: " + writeBehindQueue.getLastError());
+        }
+
+        WriteBehindQueue queue = writeBehindQueue;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> queue.close(WRITE_BEHIND_CLOSE_TIMEOUT_MILLIS)
+                , "food-log-write-behind-shutdown"));
+    }
+
+    /**
+     * Sets the pace of the retention purge, which can be given in entries deleted per
+     * second with --purge-rate=<rows per second>, then resumes any purge an earlier
+     * session did not finish
+     * @param foodLogComm   Object used to communicate with the food log database
+     * @param args          Command line arguments, which may set the purge rate
+     */
+    private static void startRetentionPurge(FoodLogComm foodLogComm, String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--purge-rate=")) {
+                try {
+                    foodLogComm.getRetentionPurge().setRowsPerSecond(
+                            Double.parseDouble(arg.substring("--purge-rate=".length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Purge rate must be a number. The default rate will be used.");
+                }
+            }
+        }
+
+        if (foodLogComm.resumePurge(FoodLogMain::printPurgeResult)) {
+            System.out.println("Resuming the deletion of old entries in the background.");
+        }
+    }
+
+    /**
+     * Serves the food log over HTTP until the app is stopped, such as with Ctrl+C. The
+     * port can be given with --serve=<port>. Standard input is not read, so the server
+     * keeps running when it is closed, such as when the app runs in the background.
+     * @param foodLogStorage    Storage used to modify and query the food log
+     * @param arg               The --serve command line argument
+     */
+    private static void serve(FoodLogStorage foodLogStorage, String arg) {
+        int port = DEFAULT_SERVER_PORT;
+        if (arg.startsWith("--serve=")) {
+            try {
+                port = Integer.parseInt(arg.substring("--serve=".length()));
+            } catch (NumberFormatException e) {
+                System.out.println("Port must be a number. Port " + port + " will be used.");
+            }
+        }
+
+        // Without virtual threads, run as many requests at once as there are connections
+        int threadCount = foodLogStorage instanceof FoodLogComm
+                ? ((FoodLogComm) foodLogStorage).getMaxConnections() : DEFAULT_SERVER_THREADS;
+
+        FoodLogServer server;
+        try {
+            server = new FoodLogServer(foodLogStorage, port, threadCount);
+        } catch (IOException e) {
+            System.out.println("Error: server could not be started on port " + port + ". " + e.getMessage());
+            return;
+        }
+        // Stopping the app releases the latch, then keeps the app running until the food log is closed
+        CountDownLatch stopRequested = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopRequested.countDown();
+            try {
+                sessionClosed.await(SERVER_SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "food-log-server-shutdown"));
+        server.start();
+
+        System.out.println("Serving the food log on port " + server.getPort()
+                + (server.usesVirtualThreads() ? " with virtual threads." : " with " + threadCount + " threads."));
+        System.out.println("Press Ctrl+C to stop the server.");
+        while (stopRequested.getCount() > 0) {
+            try {
+                stopRequested.await();
+            } catch (InterruptedException e) {
+                // Keep serving until the app is stopped
+            }
+        }
+
+        System.out.println("Stopping the server...");
+        server.stop(SERVER_STOP_TIMEOUT_SECONDS);
     }
 
     /**
@@ -64,9 +304,9 @@ public class FoodLogMain {
 
     /**
      * Presents user with options to modify the food log, add food details, or view data
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void choseOption(FoodLogComm foodLogComm) {
+    public static void choseOption(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.println("Choose an option:");
         System.out.println("1: Add, delete, or modify food log entries");
@@ -86,19 +326,19 @@ public class FoodLogMain {
         // Proceed forward based on user's chosen option
         System.out.println();
         if (userOption.equals("1")) {
-            modifyFoodLog(foodLogComm);
+            modifyFoodLog(foodLogStorage);
         } else if (userOption.equals("2")) {
-            modifyFoodDetails(foodLogComm);
+            modifyFoodDetails(foodLogStorage);
         } else {
-            viewData(foodLogComm);
+            viewData(foodLogStorage);
         }
     }
 
     /**
      * Ask user if they would like to return to the main menu or exit the app
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static boolean returnToMenu(FoodLogComm foodLogComm) {
+    public static boolean returnToMenu(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.println("Would you like to return to the main menu?");
         System.out.print("Type 'y' if yes, or any other key to exit the app: ");
@@ -113,45 +353,49 @@ public class FoodLogMain {
     /**
      * Creates a connection to the food log database and allows user to choose
      * whether to add, delete, or edit a food log entry
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void modifyFoodLog(FoodLogComm foodLogComm) {
+    public static void modifyFoodLog(FoodLogStorage foodLogStorage) {
 
         // Present options to user for how to proceed
         System.out.println("Please choose from the following options to modify the food log:");
         System.out.println("1: Add one or more entries");
         System.out.println("2: Delete old entries");
         System.out.println("3: Edit a specific entry");
+        System.out.println("4: Create food log partitions for the coming months");
 
         // Validate user input
         System.out.print("Enter option: ");
         Scanner input = new Scanner(System.in);
         String userOption = input.next();
 
-        while (!userOption.equals("1") && !userOption.equals("2") && !userOption.equals("3")) {
+        while (!userOption.equals("1") && !userOption.equals("2") && !userOption.equals("3")
+                && !userOption.equals("4")) {
             System.out.print("Invalid choice. Please enter a valid option: ");
             userOption = input.next();
         }
 
         // Proceed forward based on user input and pass the database connection
         if (userOption.equals("1")) {
-            addEntry(foodLogComm);
+            addEntry(foodLogStorage);
         } else if (userOption.equals("2")) {
-            deleteEntry(foodLogComm);
+            deleteEntry(foodLogStorage);
+        } else if (userOption.equals("3")) {
+            editEntry(foodLogStorage);
         } else {
-            editEntry(foodLogComm);
+            createPartitions(foodLogStorage);
         }
     }
 
     /**
      * Calls the addEntryHelper method to add an entry then checks if user would
      * like to add another entry to the food log
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void addEntry(FoodLogComm foodLogComm) {
+    public static void addEntry(FoodLogStorage foodLogStorage) {
 
         // Add an entry to the table
-        addEntryHelper(foodLogComm);
+        addEntryHelper(foodLogStorage);
 
         // Check if user wants to add another entry
         boolean addAnother = true;
@@ -167,7 +411,7 @@ public class FoodLogMain {
 
             // Add another entry if user answers 'y'
             if (answer.equalsIgnoreCase("y")) {
-                addEntryHelper(foodLogComm);
+                addEntryHelper(foodLogStorage);
             } else {
                 addAnother = false;
             }
@@ -177,9 +421,9 @@ public class FoodLogMain {
     /**
      * Accepts a FoodLogConnection object and uses this connection to create
      * Food and FoodLogEntry objects to add an entry to the food log
-     * @param foodLogComm  Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    private static void addEntryHelper(FoodLogComm foodLogComm) {
+    private static void addEntryHelper(FoodLogStorage foodLogStorage) {
 
         // Get entry details from user
         Scanner input = new Scanner(System.in);
@@ -187,8 +431,7 @@ public class FoodLogMain {
         System.out.println();
         System.out.println("Please enter the following details to add an entry.");
         System.out.println("Leave date blank if entry is for today's date.");
-        System.out.print("Entry date (yyyy-MM-dd): ");
-        String entryDate = input.nextLine();
+        LocalDate entryDate = readDate(input, "Entry date (yyyy-MM-dd): ", true);
 
         System.out.print("Food name: ");
         String foodName = input.nextLine().toLowerCase();
@@ -234,12 +477,18 @@ public class FoodLogMain {
         // Create FoodDetails and FoodLogComm objects
         FoodDetails foodEaten = new FoodDetails(foodName, mealType, servingQuantity);
 
-        // Insert record depending on if user entered a date or not
+        // Queue the record if entries are added in the background
         boolean success;
-        if (entryDate.equals("")) {
-            success = foodLogComm.insertRowCurrDate(foodEaten, notes);
+        if (writeBehindQueue != null) {
+            LocalDate queuedDate = entryDate == null ? LocalDate.now() : entryDate;
+            success = writeBehindQueue.enqueue(new FoodTableEntry(queuedDate, foodName, mealType
+                    , servingQuantity, notes));
+
+        // Insert record depending on if user entered a date or not
+        } else if (entryDate == null) {
+            success = foodLogStorage.insertRowCurrDate(foodEaten, notes);
         } else {
-            success = foodLogComm.insertRowGivenDate(foodEaten, entryDate, notes);
+            success = foodLogStorage.insertRowGivenDate(foodEaten, entryDate, notes);
         }
 
         // Check if insertion was successful
@@ -253,9 +502,9 @@ public class FoodLogMain {
     /**
      * Asks user how far back they would like to delete entries by, then deletes all
      * entries in the food log database older than the chosen option
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void deleteEntry(FoodLogComm foodLogComm) {
+    public static void deleteEntry(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.println("Choose an option to delete entries older than:");
         System.out.println("1: One week");
@@ -292,8 +541,20 @@ public class FoodLogMain {
             deleteInterval = "1 year";
         }
 
+        // The database deletes old entries in the background so other work is not held up
+        if (foodLogStorage instanceof FoodLogComm) {
+            FoodLogComm foodLogComm = (FoodLogComm) foodLogStorage;
+            if (foodLogComm.startPurge(deleteDays, FoodLogMain::printPurgeResult)) {
+                System.out.println("\nDeleting entries older than " + deleteInterval + " in the background.");
+            } else {
+                System.out.println("\nOld entries are already being deleted. "
+                        + foodLogComm.getRetentionPurge().getProgress());
+            }
+            return;
+        }
+
         // Delete entries older than deleteDays
-        boolean success = foodLogComm.deleteOldEntries(deleteDays);
+        boolean success = foodLogStorage.deleteOldEntries(deleteDays);
 
         // Check if deletion was successful
         if (success) {
@@ -303,42 +564,85 @@ public class FoodLogMain {
         }
     }
 
+    /**
+     * Prints the result of a background retention purge once it has ended
+     * @param progress  Progress of the purge after a chunk or when it ended
+     */
+    private static void printPurgeResult(RetentionPurge.Progress progress) {
+        if (progress.isFinished() || progress.getError() != null) {
+            System.out.println();
+            System.out.println(progress);
+        }
+    }
+
+    /**
+     * Asks the user how many months ahead to partition the food log then creates
+     * the partitions of those months that do not exist yet. Only the database
+     * food log is partitioned.
+     * @param foodLogStorage    Storage used to modify and query the food log
+     */
+    public static void createPartitions(FoodLogStorage foodLogStorage) {
+        System.out.println();
+        if (!(foodLogStorage instanceof FoodLogComm)) {
+            System.out.println("Only the database food log is partitioned.");
+            return;
+        }
+
+        // Prompt user for a whole number of months until one is given
+        Scanner input = new Scanner(System.in);
+        System.out.print("Number of months after this month to create partitions for: ");
+        int monthsAhead;
+        while (true) {
+            try {
+                monthsAhead = Integer.parseInt(input.nextLine().trim());
+                if (monthsAhead >= 0 && monthsAhead <= MAX_PARTITION_MONTHS_AHEAD) {
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                // Fall through to the prompt below
+            }
+            System.out.print("Months must be a whole number from 0 to " + MAX_PARTITION_MONTHS_AHEAD
+                    + ". Re-enter months: ");
+        }
+
+        // Create the partitions
+        int partitionCount = ((FoodLogComm) foodLogStorage).createFuturePartitions(monthsAhead);
+
+        // Check if the partitions were created
+        if (partitionCount >= 0) {
+            System.out.println("\nCreated " + partitionCount + " new partition(s). The food log is partitioned through "
+                    + YearMonth.now().plusMonths(monthsAhead) + ".");
+        } else {
+            System.out.println("\nError: partitions not created.");
+        }
+    }
+
     /**
      * Allows user to give a range of dates between which an entry they want to edit
      * resides. Then, the user can specify the ID of the entry to edit, and the new
      * values for each field they want to edit.
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void editEntry(FoodLogComm foodLogComm) {
+    public static void editEntry(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.println("Please provide a date range in which the entry you would like to edit resides.");
 
         // Get date range from user
         Scanner input = new Scanner(System.in);
         System.out.println();
-        System.out.print("Start date (yyyy-MM-dd): ");
-        String startDate = input.nextLine();
-        System.out.print("End date (yyyy-MM-dd): ");
-        String endDate = input.nextLine();
-
-        // Ensure given dates are valid
-        ResultSet resultSet = foodLogComm.fetchDataFromDateRange(startDate, endDate);
-        while (resultSet == null) {
-            System.out.println("One or both dates are invalid. Please enter valid dates.");
-            System.out.print("Enter start date (yyyy-MM-dd): ");
-            startDate = input.nextLine();
-            System.out.print("Enter end date (yyyy-MM-dd): ");
-            endDate = input.nextLine();
-
-            resultSet = foodLogComm.fetchDataFromDateRange(startDate, endDate);
+        LocalDate startDate = readDate(input, "Start date (yyyy-MM-dd): ", false);
+        LocalDate endDate = readDate(input, "End date (yyyy-MM-dd): ", false);
+
+        // Ensure entries could be fetched
+        Map<Integer, FoodTableEntry> resultMap = foodLogStorage.fetchEntriesFromDateRange(startDate, endDate);
+        if (resultMap == null) {
+            System.out.println("\nError occurred while fetching data.");
+            return;
         }
 
-        // Print all rows within given date range and store results in Map
+        // Print all entries within given date range
         System.out.println();
-        ReportBuilder report = new ReportBuilder(resultSet);
-        report.printResults();
-
-        HashMap<Integer, FoodTableEntry> resultMap = report.getResultsMap();  // Store results in a Map
+        ReportBuilder.printEntries(resultMap);
 
         // Ask user to input entry ID of record to edit
         System.out.println();
@@ -367,9 +671,8 @@ public class FoodLogMain {
         }
 
         // Display row of entry ID that user wants to modify
-        ReportBuilder entryRow = new ReportBuilder(foodLogComm.fetchDataFromID(entryID));
         System.out.println();
-        entryRow.printResults();
+        ReportBuilder.printEntries(Collections.singletonMap(entryID, resultMap.get(entryID)));
 
         // Get new input for database fields that user would like to edit
         System.out.println();
@@ -377,8 +680,7 @@ public class FoodLogMain {
         System.out.println("Leave the line blank if you do not want to change the field.");
 
         // Get new date, food name, and meal type from user
-        System.out.print("Entry Date: ");
-        String entryDate = input.nextLine();
+        LocalDate entryDate = readDate(input, "Entry Date: ", true);
         System.out.print("Food Name: ");
         String foodName = input.nextLine();
         System.out.print("Meal Type: ");
@@ -417,7 +719,7 @@ public class FoodLogMain {
         String entryNotes = input.nextLine();
 
         // Check which fields user left blank, then populate those with existing data in food log
-        if (entryDate.equals("")) {
+        if (entryDate == null) {
             entryDate = resultMap.get(entryID).getEntryDate();
         }
 
@@ -438,7 +740,7 @@ public class FoodLogMain {
         }
 
         // Update food log database with new values
-        boolean success = foodLogComm.editEntry(entryID, entryDate, foodName, mealType, servingQuantity, entryNotes);
+        boolean success = foodLogStorage.editEntry(entryID, entryDate, foodName, mealType, servingQuantity, entryNotes);
         if (success) {
             System.out.println("\nEntry ID# " + entryID + " successfully updated.");
         } else {
@@ -449,9 +751,9 @@ public class FoodLogMain {
     /**
      * Asks user whether they want to add or delete calorie information for
      * a specific food
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void modifyFoodDetails(FoodLogComm foodLogComm) {
+    public static void modifyFoodDetails(FoodLogStorage foodLogStorage) {
         System.out.println("Choose an option to either add or delete food calorie details.");
         System.out.println("1: Add food calorie information");
         System.out.println("2: Delete food calorie information");
@@ -473,7 +775,7 @@ public class FoodLogMain {
 
             // Allow user to add multiple entries until they choose to stop
             while (addAnother) {
-                addFoodDetails(foodLogComm);
+                addFoodDetails(foodLogStorage);
 
                 System.out.println();
                 System.out.println("Would you like to add another food details entry?");
@@ -488,7 +790,7 @@ public class FoodLogMain {
 
         // Delete the entry from the food details table specified by user
         } else {
-            deleteFoodDetails(foodLogComm);
+            deleteFoodDetails(foodLogStorage);
         }
     }
 
@@ -496,9 +798,9 @@ public class FoodLogMain {
      * Asks user for calories per serving and food category details regarding a
      * specific food. This data is stored in a table in teh food log database and
      * is used while running certain data reports.
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void addFoodDetails(FoodLogComm foodLogComm) {
+    public static void addFoodDetails(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.println("Please enter the below information about a specific food.");
         System.out.println("This information is used when you run a data report so");
@@ -541,7 +843,7 @@ public class FoodLogMain {
         }
 
         // Insert the values into the database
-        boolean success = foodLogComm.insertFoodDetails(foodName, calories, foodCategory);
+        boolean success = foodLogStorage.insertFoodDetails(foodName, calories, foodCategory);
         if (success) {
             System.out.println("\nFood details successfully added.");
         } else {
@@ -552,9 +854,9 @@ public class FoodLogMain {
     /**
      * Asks user which food they want to delete calorie information for then
      * deletes that entry from the food log calorie table
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void deleteFoodDetails(FoodLogComm foodLogComm) {
+    public static void deleteFoodDetails(FoodLogStorage foodLogStorage) {
         System.out.println();
         System.out.print("Enter the name of the food that you want to delete: ");
 
@@ -562,7 +864,7 @@ public class FoodLogMain {
         String foodName = input.nextLine();
 
         // Delete entry that matches given food name
-        int deletedCount = foodLogComm.deleteFoodDetails(foodName);
+        int deletedCount = foodLogStorage.deleteFoodDetails(foodName);
 
         // Inform user whether or not deletion was successful
         if (deletedCount >= 1) {
@@ -578,9 +880,9 @@ public class FoodLogMain {
      * Asks user for details regarding what data they want to view, then fetches
      * the data from the food log database using the FetchData class. A
      * DataReport object is then created and used to print the results.
-     * @param foodLogComm   Object used to modify and query the food log database
+     * @param foodLogStorage    Storage used to modify and query the food log
      */
-    public static void viewData(FoodLogComm foodLogComm) {
+    public static void viewData(FoodLogStorage foodLogStorage) {
         //DataReport report = new DataReport(foodLogComm.fetchDataFromDateRange("2021-06-09", "2021-06-16"));
         //report.printResults();
 
@@ -591,6 +893,9 @@ public class FoodLogMain {
         System.out.println("3: View entries containing a specific food");
         System.out.println("4: Food log report for yesterday");
         System.out.println("5: Food log report for the last week");
+        System.out.println("6: Food log report for a given date range");
+        System.out.println("7: Export entries within a given date range to a file");
+        System.out.println("8: Snapshot past months for faster date range reports");
 
         // Receive user input
         Scanner input = new Scanner(System.in);
@@ -605,7 +910,7 @@ public class FoodLogMain {
         }
 
         // Validate user input
-        while (userOption < 1 || userOption > 5) {
+        while (userOption < 1 || userOption > 8) {
             System.out.print("Option not valid. Please enter a valid option: ");
 
             // Ensure input is an integer
@@ -621,83 +926,189 @@ public class FoodLogMain {
         if (userOption == 1) {
 
             // Get date from user
-            System.out.print("Enter a date (yyyy-MM-dd): ");
-            String userDate = input.nextLine();
-
-            // Ensure given date is valid
-            ResultSet resultSet = foodLogComm.fetchDataFromDate(userDate);
-            while (resultSet == null) {
-                System.out.print("Date is invalid. Please enter a valid date in yyyy-MM-dd format: ");
-                userDate = input.nextLine();
+            LocalDate userDate = readDate(input, "Enter a date (yyyy-MM-dd): ", false);
 
-                resultSet = foodLogComm.fetchDataFromDate(userDate);
+            // Print the entries on the date
+            Map<Integer, FoodTableEntry> entries = foodLogStorage.fetchEntriesFromDate(userDate);
+            if (entries == null) {
+                System.out.println("\nError occurred while fetching data.");
+            } else {
+                System.out.println();
+                ReportBuilder.printEntries(entries);
             }
 
-            // Create DataReport and print results
-            ReportBuilder report = new ReportBuilder(resultSet);
-            System.out.println();
-            report.printResults();
-
         // Print report given a date range
         } else if (userOption == 2) {
 
             // Get date range from user
-            System.out.print("Enter start date (yyyy-MM-dd): ");
-            String startDate = input.nextLine();
-            System.out.print("Enter end date (yyyy-MM-dd): ");
-            String endDate = input.nextLine();
-
-            // Ensure given dates are valid
-            ResultSet resultSet = foodLogComm.fetchDataFromDateRange(startDate, endDate);
-            while (resultSet == null) {
-                System.out.println("One or both dates are invalid. Please enter valid dates.");
-                System.out.print("Enter start date (yyyy-MM-dd): ");
-                startDate = input.nextLine();
-                System.out.print("Enter end date (yyyy-MM-dd): ");
-                endDate = input.nextLine();
-
-                resultSet = foodLogComm.fetchDataFromDateRange(startDate, endDate);
-            }
+            LocalDate startDate = readDate(input, "Enter start date (yyyy-MM-dd): ", false);
+            LocalDate endDate = readDate(input, "Enter end date (yyyy-MM-dd): ", false);
 
-            // Create DataReport and print results
-            ReportBuilder report = new ReportBuilder(resultSet);
-            System.out.println();
-            report.printResults();
+            // Browse results one page at a time
+            browsePages(foodLogStorage, foodLogStorage.fetchPageFromDateRange(startDate, endDate
+                    , FoodLogComm.DEFAULT_PAGE_SIZE), input);
         } else if (userOption == 3) {
 
             // Get food name from user
             System.out.print("Enter food name: ");
             String foodName = input.nextLine();
 
-            // Create a DataReport and print results
-            ReportBuilder report = new ReportBuilder(foodLogComm.fetchDataFromFood(foodName));
-            System.out.println();
-            report.printResults();
+            // Browse results one page at a time
+            browsePages(foodLogStorage, foodLogStorage.fetchPageFromFood(foodName, FoodLogComm.DEFAULT_PAGE_SIZE)
+                    , input);
         } else if (userOption == 4) {
 
-            // Create ReportBuilder using yesterday's meal data
-            ReportBuilder reportBuilder = new ReportBuilder(foodLogComm.fetchYesterdayData());
-
-            // Create a DataReport using report builder and all data in calorie table
-            DataReport dataReport = reportBuilder.getDataReport(foodLogComm.fetchCalorieData());
+            // Create a DataReport of yesterday's entries
+            DataReport dataReport = foodLogStorage.fetchYesterdayReport();
 
             System.out.println();
             System.out.println("*****Yesterday Data Report*****");
             viewDataReport(dataReport);
             System.out.println("\n*******************************");
-        } else {
+        } else if (userOption == 5) {
 
-            // Create ReportBuilder using last month's meal data
-            ReportBuilder reportBuilder = new ReportBuilder(foodLogComm.fetchMonthData());
-
-            // Create a DataReport using report builder and all data in calorie table
-            DataReport dataReport = reportBuilder.getDataReport(foodLogComm.fetchCalorieData());
+            // Create a DataReport of the past month's entries
+            DataReport dataReport = foodLogStorage.fetchMonthReport();
 
             System.out.println();
             System.out.println("*****Past Month Data Report*****");
             viewDataReport(dataReport);
             System.out.println("\n*******************************");
+        } else if (userOption == 6) {
+
+            // Get date range from user
+            LocalDate startDate = readDate(input, "Enter start date (yyyy-MM-dd): ", false);
+            LocalDate endDate = readDate(input, "Enter end date (yyyy-MM-dd): ", false);
+
+            // Read past months from their snapshots if any have been taken, otherwise build the
+            // report over partitions of the date range in parallel when using the database
+            DataReport dataReport;
+            if (snapshotStore.hasSnapshots()) {
+                dataReport = snapshotStore.getDataReport(startDate, endDate);
+            } else if (foodLogStorage instanceof FoodLogComm) {
+                FoodLogComm foodLogComm = (FoodLogComm) foodLogStorage;
+                ParallelReportBuilder reportBuilder = new ParallelReportBuilder(foodLogComm
+                        , foodLogComm.getMaxConnections());
+                dataReport = reportBuilder.getDataReport(startDate, endDate);
+                reportBuilder.close();
+            } else {
+                dataReport = foodLogStorage.fetchDataReport(startDate, endDate);
+            }
+
+            System.out.println();
+            System.out.println("*****Date Range Data Report*****");
+            viewDataReport(dataReport);
+            System.out.println("\n*******************************");
+        } else if (userOption == 8) {
+
+            // Get the first month to snapshot from user
+            YearMonth fromMonth = null;
+            System.out.print("Enter the first month to snapshot (yyyy-MM): ");
+            while (fromMonth == null) {
+                try {
+                    fromMonth = YearMonth.parse(input.nextLine());
+                } catch (DateTimeParseException e) {
+                    System.out.print("Month is invalid. Please enter a valid month in yyyy-MM format: ");
+                }
+            }
+
+            // Snapshot each past month again, so existing snapshots are brought up to date too
+            int snapshotCount = snapshotStore.snapshotClosedMonths(fromMonth, true);
+            if (snapshotCount < 0) {
+                System.out.println("\nError: months not snapshotted.");
+            } else {
+                System.out.println("\n" + snapshotCount + " months snapshotted to " + snapshotStore.getDirectory()
+                        + ".");
+            }
+        } else {
+
+            // Get date range and destination file from user
+            LocalDate startDate = readDate(input, "Enter start date (yyyy-MM-dd): ", false);
+            LocalDate endDate = readDate(input, "Enter end date (yyyy-MM-dd): ", false);
+            System.out.print("Enter file path to export to: ");
+            Path exportFile = Paths.get(input.nextLine());
+
+            // Write the entries straight into the file
+            int rowCount = foodLogStorage.exportEntries(startDate, endDate, exportFile);
+            if (rowCount < 0) {
+                System.out.println("\nError: entries not exported.");
+            } else {
+                System.out.println("\n" + rowCount + " entries exported to " + exportFile + ".");
+            }
+        }
+    }
+
+    /**
+     * Reads a date in yyyy-MM-dd format from the user, asking again until a valid
+     * date is given
+     * @param input         Scanner used to read user input
+     * @param prompt        Prompt printed before the date is read
+     * @param allowBlank    true if the user may leave the date blank
+     * @return              The date given by the user, or null if it was left blank
+     */
+    private static LocalDate readDate(Scanner input, String prompt, boolean allowBlank) {
+        System.out.print(prompt);
+
+        // Prompt user for a valid date until no exception thrown
+        while (true) {
+            String dateInput = input.nextLine();
+            if (allowBlank && dateInput.equals("")) {
+                return null;
+            }
+
+            try {
+                return LocalDate.parse(dateInput);
+            } catch (DateTimeParseException e) {
+                System.out.print("Date is invalid. Please enter a valid date in yyyy-MM-dd format: ");
+            }
+        }
+    }
+
+    /**
+     * Prints a page of food log entries then lets the user move to the next or
+     * previous page until they choose to stop browsing
+     * @param foodLogStorage    Storage used to modify and query the food log
+     * @param page          The first page of entries to print
+     * @param input         Scanner used to read user input
+     */
+    private static void browsePages(FoodLogStorage foodLogStorage, FoodLogPage page, Scanner input) {
+        while (page != null) {
+            System.out.println();
+            ReportBuilder.printEntries(page.getEntries());
+
+            // Stop once there are no other pages to move to
+            if (!page.hasNext() && !page.hasPrevious()) {
+                return;
+            }
+
+            // Only offer the pages that exist
+            String prompt = "";
+            if (page.hasNext()) {
+                prompt += "n: next page, ";
+            }
+            if (page.hasPrevious()) {
+                prompt += "p: previous page, ";
+            }
+            System.out.print("\n" + prompt + "q: quit: ");
+            String choice = input.nextLine().toLowerCase();
+
+            while (!(choice.equals("n") && page.hasNext()) && !(choice.equals("p") && page.hasPrevious())
+                    && !choice.equals("q")) {
+                System.out.print("Invalid choice. " + prompt + "q: quit: ");
+                choice = input.nextLine().toLowerCase();
+            }
+
+            // Fetch the chosen page
+            if (choice.equals("n")) {
+                page = foodLogStorage.fetchNextPage(page);
+            } else if (choice.equals("p")) {
+                page = foodLogStorage.fetchPreviousPage(page);
+            } else {
+                return;
+            }
         }
+
+        System.out.println("\nError occurred while fetching data.");
     }
 
     /**
@@ -722,7 +1133,7 @@ public class FoodLogMain {
         System.out.println("Avg calories per meal: " + dataReport.getCaloriesPerMeal());
 
         // Print counts of meals eaten
-        HashMap<String, Integer> mealCounts = dataReport.getMealTypeCount();  // Meal counts Map
+        Map<String, Integer> mealCounts = dataReport.getMealTypeCount();  // Meal counts Map
 
         System.out.println("\nMeals Eaten:");
         System.out.println("breakfast: " + mealCounts.get("breakfast"));
@@ -732,7 +1143,7 @@ public class FoodLogMain {
         System.out.println("snack: " + mealCounts.get("snack"));
 
         // Print counts of food categories eaten
-        HashMap<String, Double> categoryCounts = dataReport.getMealCategoryCount();
+        Map<String, Double> categoryCounts = dataReport.getMealCategoryCount();
 
         System.out.println("\nServings of Food Categories Eaten:");
         System.out.println("grain: " + categoryCounts.get("grain"));
@@ -0,0 +1,120 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the OperationMetrics of every instrumented FoodLogComm operation and
+ * ReportBuilder stage. Each is registered with the platform MBean server the
+ * first time it is used, as FoodLogApp:type=FoodLogComm,name=<operation> or
+ * FoodLogApp:type=ReportBuilder,name=<stage>, so the timings of a running app
+ * can be watched with JConsole or any other JMX client.
+ *
+ * @author iDoc1
+ *
+ */
+public class FoodLogMetrics {
+
+    private static final String DOMAIN = "FoodLogApp";
+    private static final String OPERATION_TYPE = "FoodLogComm";
+    private static final String STAGE_TYPE = "ReportBuilder";
+
+    // Metrics keyed by type then name, such as FoodLogComm.fetchEntry
+    private static final Map<String, OperationMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private FoodLogMetrics() {
+    }
+
+    /**
+     * @param name  Name of a FoodLogComm method
+     * @return      The metrics of the method, which are created on first use
+     */
+    public static OperationMetrics operation(String name) {
+        return get(OPERATION_TYPE, name);
+    }
+
+    /**
+     * @param name  Name of a ReportBuilder stage
+     * @return      The metrics of the stage, which are created on first use
+     */
+    public static OperationMetrics stage(String name) {
+        return get(STAGE_TYPE, name);
+    }
+
+    /**
+     * Clears the recorded calls of every operation and stage
+     */
+    public static void reset() {
+        for (OperationMetrics metrics : METRICS.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Prints a table of the timings of every operation and stage that has been called,
+     * in milliseconds
+     * @param out   Destination of the table
+     */
+    public static void printSummary(PrintStream out) {
+        Map<String, OperationMetrics> calledMetrics = new TreeMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : METRICS.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                calledMetrics.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (calledMetrics.isEmpty()) {
+            return;
+        }
+
+        String format = "%-40s %8s %7s %10s %10s %10s %10s %10s %10s%n";
+        out.println("\nOperation timings (ms):");
+        out.printf(format, "Operation", "Calls", "Errors", "Rows", "Mean", "Median", "90th", "99th", "Max");
+
+        // Print one row per operation, sorted by type then name
+        for (Map.Entry<String, OperationMetrics> entry : calledMetrics.entrySet()) {
+            OperationMetrics metrics = entry.getValue();
+            out.printf(format, entry.getKey(), metrics.getCount(), metrics.getErrorCount(), metrics.getRowCount()
+                    , formatMillis(metrics.getMeanMillis()), formatMillis(metrics.getMedianMillis())
+                    , formatMillis(metrics.get90thPercentileMillis()), formatMillis(metrics.get99thPercentileMillis())
+                    , formatMillis(metrics.getMaxMillis()));
+        }
+    }
+
+    /**
+     * Returns the metrics with the given type and name, creating and registering them
+     * if they do not exist yet
+     */
+    private static OperationMetrics get(String type, String name) {
+        String key = type + "." + name;
+
+        OperationMetrics metrics = METRICS.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        return METRICS.computeIfAbsent(key, newKey -> register(type, new OperationMetrics(name)));
+    }
+
+    /**
+     * Registers the metrics as an MBean. Metrics that cannot be registered, such as when
+     * another class loader already registered the name, are still recorded and printed.
+     */
+    private static OperationMetrics register(String type, OperationMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics
+                    , new ObjectName(DOMAIN + ":type=" + type + ",name=" + metrics.getName()));
+        } catch (JMException e) {
+            // Keep the unregistered metrics
+        }
+        return metrics;
+    }
+
+    /**
+     * @return  A time in milliseconds rounded to three decimal places
+     */
+    private static String formatMillis(double millis) {
+        return String.format("%.3f", millis);
+    }
+}
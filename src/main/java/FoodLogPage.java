@@ -0,0 +1,179 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents one page of food log entries returned by the paged
+ * fetch methods of a FoodLogStorage. Entries are ordered by entry date then entry
+ * ID, and the page remembers the date and ID of its first and last entries
+ * so that the next or previous page can be fetched by seeking past them
+ * instead of skipping over every earlier row with an offset.
+ *
+ * @author iDoc1
+ *
+ */
+
+public class FoodLogPage {
+    private LinkedHashMap<Integer, FoodTableEntry> entries;  // Entry ID to entry, in page order
+    private int pageSize;
+    private boolean hasNext;
+    private boolean hasPrevious;
+
+    // First and last entries on the page, which the neighbouring pages are fetched past
+    private Map.Entry<Integer, FoodTableEntry> firstEntry;
+    private Map.Entry<Integer, FoodTableEntry> lastEntry;
+
+    // Selects the entries being paged through, as understood by the storage that created the page
+    private Object query;
+
+    /**
+     * Constructs a FoodLogPage
+     * @param entries       Entries on this page keyed by entry ID, in page order
+     * @param pageSize      Maximum number of entries per page
+     * @param hasNext       true if there are entries after this page
+     * @param hasPrevious   true if there are entries before this page
+     * @param query         Selects the paged entries, so that neighbouring pages can be
+     *                      fetched with the same selection
+     */
+    FoodLogPage(LinkedHashMap<Integer, FoodTableEntry> entries, int pageSize, boolean hasNext
+            , boolean hasPrevious, Object query) {
+        this.entries = entries;
+        this.pageSize = pageSize;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+        this.query = query;
+
+        // Find the first and last entries once rather than on every page fetch
+        for (Map.Entry<Integer, FoodTableEntry> entry : entries.entrySet()) {
+            if (this.firstEntry == null) {
+                this.firstEntry = entry;
+            }
+            this.lastEntry = entry;
+        }
+    }
+
+    /**
+     * Constructs a FoodLogPage whose first and last entries are already known
+     */
+    private FoodLogPage(LinkedHashMap<Integer, FoodTableEntry> entries, Map.Entry<Integer, FoodTableEntry> firstEntry
+            , Map.Entry<Integer, FoodTableEntry> lastEntry, int pageSize, boolean hasNext, boolean hasPrevious
+            , Object query) {
+        this.entries = entries;
+        this.firstEntry = firstEntry;
+        this.lastEntry = lastEntry;
+        this.pageSize = pageSize;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+        this.query = query;
+    }
+
+    /**
+     * Creates a page from the rows read past a seek position. Storages read one row more
+     * than a page to find out whether another page follows, and pages before the seek
+     * position are read in descending order.
+     * @param rows          Rows read in seek order, at most one more than the page size
+     * @param pageSize      Maximum number of entries per page
+     * @param forward       true if the rows were read after the seek position, false if
+     *                      they were read before it
+     * @param continued     true if the rows were read past the entry of another page,
+     *                      false for a first page
+     * @param query         Selects the paged entries
+     * @return              The page of entries in ascending order
+     */
+    static FoodLogPage fromRows(List<Map.Entry<Integer, FoodTableEntry>> rows, int pageSize
+            , boolean forward, boolean continued, Object query) {
+
+        // Drop the extra row and put pages read backwards into ascending order
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (!forward) {
+            Collections.reverse(rows);
+        }
+
+        LinkedHashMap<Integer, FoodTableEntry> entries = new LinkedHashMap<>();
+        for (Map.Entry<Integer, FoodTableEntry> row : rows) {
+            entries.put(row.getKey(), row.getValue());
+        }
+
+        // The entry the page continues from lies on the other side of the page
+        boolean hasNext = forward ? hasMore : continued;
+        boolean hasPrevious = forward ? continued : hasMore;
+        Map.Entry<Integer, FoodTableEntry> firstEntry = rows.isEmpty() ? null : rows.get(0);
+        Map.Entry<Integer, FoodTableEntry> lastEntry = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        return new FoodLogPage(entries, firstEntry, lastEntry, pageSize, hasNext, hasPrevious, query);
+    }
+
+    /**
+     * @return  Entries on this page keyed by entry ID, ordered by entry date then entry ID
+     */
+    public Map<Integer, FoodTableEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return  Maximum number of entries per page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return  true if there are entries after this page
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @return  true if there are entries before this page
+     */
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * @return  true if no entries were found
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return  Entry ID of the first entry on this page
+     */
+    int getFirstEntryID() {
+        return firstEntry.getKey();
+    }
+
+    /**
+     * @return  Entry date of the first entry on this page
+     */
+    LocalDate getFirstEntryDate() {
+        return firstEntry.getValue().getEntryDate();
+    }
+
+    /**
+     * @return  Entry ID of the last entry on this page
+     */
+    int getLastEntryID() {
+        return lastEntry.getKey();
+    }
+
+    /**
+     * @return  Entry date of the last entry on this page
+     */
+    LocalDate getLastEntryDate() {
+        return lastEntry.getValue().getEntryDate();
+    }
+
+    /**
+     * @return  Selection of the paged entries, as given by the storage that created the page
+     */
+    Object getQuery() {
+        return query;
+    }
+}
@@ -0,0 +1,572 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the food log over HTTP with JSON request and response bodies, so
+ * many clients can use one instance of the app at the same time. Each
+ * request runs on its own virtual thread when the JDK has them, or on a
+ * bounded pool of platform threads otherwise, and database work is limited
+ * by the connection pool. Entries of a date range are streamed a page at a
+ * time, so a large range is neither held in memory nor holds a database
+ * connection while a slow client reads it. Reports from the database are built
+ * on the JDBC threads of an AsyncFoodLogComm, one per pooled connection, so
+ * report requests queue there rather than for a connection, and a report that
+ * is not ready in time is answered with a 503.
+ *
+ * GET    /entries?start=yyyy-MM-dd&end=yyyy-MM-dd   Entries of a date range
+ * GET    /entries/{id}                             One entry
+ * POST   /entries                                  Adds an entry
+ * PUT    /entries/{id}                             Edits the given fields of an entry
+ * DELETE /entries?olderThanDays=n                  Deletes old entries
+ * POST   /foods                                    Adds calorie details of a food
+ * DELETE /foods/{name}                             Deletes calorie details of a food
+ * GET    /reports?start=yyyy-MM-dd&end=yyyy-MM-dd   Data report of a date range
+ *
+ * @author iDoc1
+ *
+ */
+public class FoodLogServer {
+
+    private static final Logger LOGGER = Logger.getLogger(FoodLogServer.class.getName());
+
+    // Number of entries read from the storage per page while streaming a date range
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    // Largest request body accepted
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    // Characters of a response buffered before they are sent
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+
+    // Time a report request waits for its report before giving up
+    private static final long REPORT_TIMEOUT_SECONDS = 30;
+
+    private final FoodLogStorage foodLogStorage;
+    private final AsyncFoodLogComm asyncFoodLogComm;  // null unless the storage is a FoodLogComm
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs a FoodLogServer listening on the given port. It does not accept
+     * requests until started.
+     * @param foodLogStorage    Storage used to modify and query the food log
+     * @param port              Port to listen on
+     * @param threadCount       Number of request threads used when the JDK has no
+     *                          virtual threads
+     * @throws IOException      If the port cannot be bound
+     */
+    public FoodLogServer(FoodLogStorage foodLogStorage, int port, int threadCount) throws IOException {
+        this.foodLogStorage = foodLogStorage;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.asyncFoodLogComm = foodLogStorage instanceof FoodLogComm
+                ? new AsyncFoodLogComm((FoodLogComm) foodLogStorage) : null;
+
+        // Use a virtual thread per request if the JDK has them, looked up so older JDKs still run
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtualThreads = virtualExecutor != null;
+        this.executor = virtualExecutor != null ? virtualExecutor
+                : Executors.newFixedThreadPool(Math.max(1, threadCount));
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/entries", exchange -> this.handle(exchange, this::handleEntries));
+        this.server.createContext("/foods", exchange -> this.handle(exchange, this::handleFoods));
+        this.server.createContext("/reports", exchange -> this.handle(exchange, this::handleReports));
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits for requests in progress to finish
+     * @param timeoutSeconds    Maximum time to wait for requests in progress
+     */
+    public void stop(int timeoutSeconds) {
+        this.server.stop(timeoutSeconds);
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.asyncFoodLogComm != null) {
+            this.asyncFoodLogComm.close();
+        }
+    }
+
+    /**
+     * @return  The port the server listens on
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return  true if requests run on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    /**
+     * Routes requests under /entries
+     */
+    private void handleEntries(HttpExchange exchange, String id) throws IOException, RequestException {
+        String method = exchange.getRequestMethod();
+        Map<String, String> parameters = queryParameters(exchange);
+
+        if (id == null && method.equals("GET")) {
+            this.streamEntries(exchange, requiredDate(parameters, "start"), requiredDate(parameters, "end"));
+        } else if (id != null && method.equals("GET")) {
+            int entryID = entryID(id);
+            FoodTableEntry entry = this.foodLogStorage.fetchEntry(entryID);
+            if (entry == null) {
+                throw new RequestException(404, "No entry with ID " + id + ".");
+            }
+            sendJson(exchange, 200, json -> json.entry(entryID, entry));
+        } else if (id == null && method.equals("POST")) {
+            this.addEntry(exchange);
+        } else if (id != null && method.equals("PUT")) {
+            this.editEntry(exchange, entryID(id));
+        } else if (id == null && method.equals("DELETE")) {
+            this.deleteEntries(exchange, parameters);
+        } else {
+            throw new RequestException(405, method + " is not supported here.");
+        }
+    }
+
+    /**
+     * Routes requests under /foods
+     */
+    private void handleFoods(HttpExchange exchange, String name) throws IOException, RequestException {
+        String method = exchange.getRequestMethod();
+
+        if (name == null && method.equals("POST")) {
+            Map<String, Object> body = readBody(exchange);
+            String foodName = requiredString(body, "foodName").toLowerCase();
+            double calories = requiredNumber(body, "calories");
+            String foodCategory = requiredString(body, "foodCategory").toLowerCase();
+            if (calories < 0 || calories != Math.rint(calories)) {
+                throw new RequestException(400, "calories must be a whole number of at least zero.");
+            }
+            if (!FoodLogMain.foodCategories.contains(foodCategory)) {
+                throw new RequestException(400, "foodCategory must be one of " + FoodLogMain.foodCategories + ".");
+            }
+
+            if (!this.foodLogStorage.insertFoodDetails(foodName, (int) calories, foodCategory)) {
+                throw new RequestException(409, "Calorie details for " + foodName + " were not added. "
+                        + "They may already exist.");
+            }
+            sendJson(exchange, 201, json -> json.beginObject().name("foodName").value(foodName).endObject());
+        } else if (name != null && method.equals("DELETE")) {
+            int deletedCount = this.foodLogStorage.deleteFoodDetails(name.toLowerCase());
+            if (deletedCount < 0) {
+                throw new RequestException(500, "Calorie details were not deleted.");
+            }
+            sendJson(exchange, 200, json -> json.beginObject().name("deleted").value(deletedCount).endObject());
+        } else {
+            throw new RequestException(405, method + " is not supported here.");
+        }
+    }
+
+    /**
+     * Routes requests under /reports
+     */
+    private void handleReports(HttpExchange exchange, String id) throws IOException, RequestException {
+        if (id != null || !exchange.getRequestMethod().equals("GET")) {
+            throw new RequestException(405, exchange.getRequestMethod() + " is not supported here.");
+        }
+
+        Map<String, String> parameters = queryParameters(exchange);
+        LocalDate startDate = requiredDate(parameters, "start");
+        LocalDate endDate = requiredDate(parameters, "end");
+
+        DataReport dataReport;
+        if (this.asyncFoodLogComm != null) {
+            dataReport = await(this.asyncFoodLogComm.fetchDataReport(startDate, endDate));
+        } else {
+            dataReport = this.foodLogStorage.fetchDataReport(startDate, endDate);
+        }
+        if (dataReport == null) {
+            throw new RequestException(500, "The report could not be built.");
+        }
+        sendJson(exchange, 200, json -> json.dataReport(dataReport));
+    }
+
+    /**
+     * Waits for a report built on the JDBC threads
+     * @return                  The report, or null if it could not be built
+     * @throws RequestException If the report is not ready within the report timeout
+     */
+    private static DataReport await(CompletableFuture<DataReport> report) throws RequestException {
+        try {
+            return report.get(REPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            report.cancel(false);
+            throw new RequestException(503, "The report took too long to build.");
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Streams the entries of a date range as a JSON array, reading them from the storage
+     * one page at a time
+     */
+    private void streamEntries(HttpExchange exchange, LocalDate startDate, LocalDate endDate)
+            throws IOException, RequestException {
+        FoodLogPage page = this.foodLogStorage.fetchPageFromDateRange(startDate, endDate, STREAM_PAGE_SIZE);
+        if (page == null) {
+            throw new RequestException(500, "Entries could not be read.");
+        }
+
+        // The status is sent before the entries, so a later failure can only cut the array short
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                exchange.getResponseBody(), StandardCharsets.UTF_8), RESPONSE_BUFFER_SIZE))) {
+            json.beginArray();
+            while (true) {
+                for (Map.Entry<Integer, FoodTableEntry> entry : page.getEntries().entrySet()) {
+                    json.entry(entry.getKey(), entry.getValue());
+                }
+                if (!page.hasNext()) {
+                    break;
+                }
+
+                page = this.foodLogStorage.fetchNextPage(page);
+                if (page == null) {
+                    throw new IOException("Entries could not be read.");
+                }
+            }
+            json.endArray();
+        }
+    }
+
+    /**
+     * Adds the entry given in the request body. The entry date defaults to today.
+     */
+    private void addEntry(HttpExchange exchange) throws IOException, RequestException {
+        Map<String, Object> body = readBody(exchange);
+        LocalDate entryDate = body.get("entryDate") == null ? LocalDate.now()
+                : parseDate(requiredString(body, "entryDate"), "entryDate");
+        FoodDetails foodEaten = new FoodDetails(requiredString(body, "foodName").toLowerCase()
+                , mealType(requiredString(body, "mealType")), servingQuantity(requiredNumber(body, "servingQuantity")));
+        String entryNotes = optionalString(body, "entryNotes", "");
+
+        if (!this.foodLogStorage.insertRowGivenDate(foodEaten, entryDate, entryNotes)) {
+            throw new RequestException(500, "The entry was not added.");
+        }
+        sendJson(exchange, 201, json -> json.beginObject().name("added").value(true).endObject());
+    }
+
+    /**
+     * Edits an entry, replacing only the fields given in the request body
+     */
+    private void editEntry(HttpExchange exchange, int entryID) throws IOException, RequestException {
+        Map<String, Object> body = readBody(exchange);
+        FoodTableEntry entry = this.foodLogStorage.fetchEntry(entryID);
+        if (entry == null) {
+            throw new RequestException(404, "No entry with ID " + entryID + ".");
+        }
+
+        // Keep the current value of every field not given
+        LocalDate entryDate = body.containsKey("entryDate")
+                ? parseDate(requiredString(body, "entryDate"), "entryDate") : entry.getEntryDate();
+        String foodName = body.containsKey("foodName")
+                ? requiredString(body, "foodName").toLowerCase() : entry.getFoodName();
+        String mealType = body.containsKey("mealType")
+                ? mealType(requiredString(body, "mealType")) : entry.getMealType();
+        double servingQuantity = body.containsKey("servingQuantity")
+                ? servingQuantity(requiredNumber(body, "servingQuantity")) : entry.getServingQuantity();
+        String entryNotes = optionalString(body, "entryNotes", entry.getEntryNotes());
+
+        if (!this.foodLogStorage.editEntry(entryID, entryDate, foodName, mealType, servingQuantity, entryNotes)) {
+            throw new RequestException(500, "The entry was not edited.");
+        }
+        sendJson(exchange, 200, json -> json.entry(entryID
+                , new FoodTableEntry(entryDate, foodName, mealType, servingQuantity, entryNotes)));
+    }
+
+    /**
+     * Deletes entries older than the given number of days. The database deletes them in
+     * the background and answers with 202 Accepted.
+     */
+    private void deleteEntries(HttpExchange exchange, Map<String, String> parameters)
+            throws IOException, RequestException {
+        int deleteDays;
+        try {
+            deleteDays = Integer.parseInt(parameters.getOrDefault("olderThanDays", ""));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "olderThanDays must be a whole number.");
+        }
+        if (deleteDays < 0) {
+            throw new RequestException(400, "olderThanDays must be at least zero.");
+        }
+
+        if (this.foodLogStorage instanceof FoodLogComm) {
+            if (!((FoodLogComm) this.foodLogStorage).startPurge(deleteDays, null)) {
+                throw new RequestException(409, "Old entries are already being deleted.");
+            }
+            sendJson(exchange, 202, json -> json.beginObject().name("started").value(true).endObject());
+            return;
+        }
+
+        if (!this.foodLogStorage.deleteOldEntries(deleteDays)) {
+            throw new RequestException(500, "Entries were not deleted.");
+        }
+        sendJson(exchange, 200, json -> json.beginObject().name("deleted").value(true).endObject());
+    }
+
+    /**
+     * Runs a route, splitting the path segment after the context off as its ID, and
+     * answers with a JSON error if the request is refused or fails. Failures are logged,
+     * and once a response has started they can only cut it short.
+     */
+    private void handle(HttpExchange exchange, Route route) {
+        try {
+            String context = exchange.getHttpContext().getPath();
+            String path = exchange.getRequestURI().getPath();
+            if (path.length() > context.length() && path.charAt(context.length()) != '/') {
+                throw new RequestException(404, "Not found.");
+            }
+            String id = path.length() > context.length() + 1
+                    ? URLDecoder.decode(path.substring(context.length() + 1), StandardCharsets.UTF_8) : null;
+
+            route.handle(exchange, id);
+        } catch (RequestException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed", e);
+            sendError(exchange, 500, "The request failed.");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a JSON error response, unless a response has already been started
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+
+        try {
+            sendJson(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+        } catch (IOException e) {
+            // The client has gone away
+        }
+    }
+
+    /**
+     * Sends a JSON response with a known status
+     */
+    private static void sendJson(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                exchange.getResponseBody(), StandardCharsets.UTF_8), RESPONSE_BUFFER_SIZE))) {
+            body.write(json);
+        }
+    }
+
+    /**
+     * Reads the request body as a flat JSON object
+     */
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, RequestException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new RequestException(413, "The request body is too large.");
+        }
+
+        try {
+            return JsonReader.readObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+    }
+
+    /**
+     * @return  The query parameters of the request, decoded
+     */
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+
+        for (String pair : query.split("&")) {
+            int split = pair.indexOf('=');
+            String name = split < 0 ? pair : pair.substring(0, split);
+            String value = split < 0 ? "" : pair.substring(split + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8)
+                    , URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * @return  The date of a required query parameter
+     */
+    private static LocalDate requiredDate(Map<String, String> parameters, String name) throws RequestException {
+        if (!parameters.containsKey(name)) {
+            throw new RequestException(400, name + " is required.");
+        }
+        return parseDate(parameters.get(name), name);
+    }
+
+    /**
+     * @return  The date in the given value, which is named in the error message
+     */
+    private static LocalDate parseDate(String value, String name) throws RequestException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new RequestException(400, name + " must be a date in the form yyyy-MM-dd.");
+        }
+    }
+
+    /**
+     * @return  The value of a required, non-empty string member of a request body
+     */
+    private static String requiredString(Map<String, Object> body, String name) throws RequestException {
+        Object value = body.get(name);
+        if (!(value instanceof String) || ((String) value).isEmpty()) {
+            throw new RequestException(400, name + " must be a non-empty string.");
+        }
+        return (String) value;
+    }
+
+    /**
+     * @return  The value of a string member of a request body, or the default if not given
+     */
+    private static String optionalString(Map<String, Object> body, String name, String defaultValue)
+            throws RequestException {
+        if (!body.containsKey(name)) {
+            return defaultValue;
+        }
+        Object value = body.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new RequestException(400, name + " must be a string.");
+        }
+        return (String) value;
+    }
+
+    /**
+     * @return  The value of a required number member of a request body
+     */
+    private static double requiredNumber(Map<String, Object> body, String name) throws RequestException {
+        Object value = body.get(name);
+        if (!(value instanceof Double)) {
+            throw new RequestException(400, name + " must be a number.");
+        }
+        return (Double) value;
+    }
+
+    /**
+     * @return  The given meal type in lowercase, if it is one recognized by the app
+     */
+    private static String mealType(String value) throws RequestException {
+        String mealType = value.toLowerCase();
+        if (!FoodLogMain.mealTypes.contains(mealType)) {
+            throw new RequestException(400, "mealType must be one of " + FoodLogMain.mealTypes + ".");
+        }
+        return mealType;
+    }
+
+    /**
+     * @return  The given serving quantity, if it is greater than zero
+     */
+    private static double servingQuantity(double value) throws RequestException {
+        if (!(value > 0)) {
+            throw new RequestException(400, "servingQuantity must be greater than zero.");
+        }
+        return value;
+    }
+
+    /**
+     * @return  The entry ID in a path segment
+     */
+    private static int entryID(String id) throws RequestException {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new RequestException(404, "No entry with ID " + id + ".");
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread
+     * @return  The executor, or null if the JDK has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Handles the requests of one context
+     */
+    @FunctionalInterface
+    private interface Route {
+        void handle(HttpExchange exchange, String id) throws IOException, RequestException;
+    }
+
+    /**
+     * Writes the body of a JSON response
+     */
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * A request that is answered with an error status and message
+     */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Defines the operations FoodLogMain uses to store and read the food log,
+ * so that the app can run on either the MySQL database through FoodLogComm
+ * or on the embedded JournalStorage engine without a database server. Every
+ * method works with typed values rather than JDBC ResultSets, and reports
+ * errors the same way FoodLogComm does: by returning false, null, or -1.
+ *
+ * @author iDoc1
+ *
+ */
+public interface FoodLogStorage {
+
+    /**
+     * Inserts an entry into the food log given a FoodDetails object, an entry date,
+     * and entry notes
+     * @param foodEaten     The FoodDetails object with food name, meal type, and serving size
+     * @param entryDate     The date of the entry to be inserted
+     * @param entryNotes    Notes associated with the entry to be inserted
+     * @return              true if insertion successful, false otherwise
+     */
+    boolean insertRowGivenDate(FoodDetails foodEaten, LocalDate entryDate, String entryNotes);
+
+    /**
+     * Inserts an entry into the food log with today's date as the entry date
+     * @param foodEaten     The FoodDetails object with food name, meal type, and serving size
+     * @param entryNotes    Notes associated with the entry to be inserted
+     * @return              true if insertion successful, false otherwise
+     */
+    default boolean insertRowCurrDate(FoodDetails foodEaten, String entryNotes) {
+        return this.insertRowGivenDate(foodEaten, LocalDate.now(), entryNotes);
+    }
+
+    /**
+     * Inserts many entries into the food log
+     * @param entries   Entries to be inserted
+     * @return          The number of entries inserted and the reason each failed entry
+     *                  was not inserted
+     */
+    BatchInsertResult insertRows(List<FoodTableEntry> entries);
+
+    /**
+     * Returns a single entry given its entry ID
+     * @param entryID   The ID of a specific entry within the food log
+     * @return          The entry, or null if it does not exist or an error is thrown
+     */
+    FoodTableEntry fetchEntry(int entryID);
+
+    /**
+     * Returns all entries in the food log that occur on a given date
+     * @param date  The date to find food log entries for
+     * @return      Entries keyed by entry ID in entry ID order, or null if an error is thrown
+     */
+    default LinkedHashMap<Integer, FoodTableEntry> fetchEntriesFromDate(LocalDate date) {
+        return this.fetchEntriesFromDateRange(date, date);
+    }
+
+    /**
+     * Returns all entries in the food log that occur between a start date (inclusive)
+     * and an end date (inclusive)
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @return          Entries keyed by entry ID, ordered by entry date then entry ID, or
+     *                  null if an error is thrown
+     */
+    LinkedHashMap<Integer, FoodTableEntry> fetchEntriesFromDateRange(LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Returns the first page of entries that occur between a start date (inclusive) and
+     * an end date (inclusive), ordered by entry date then entry ID
+     * @param startDate The start of the date range to search data for (inclusive)
+     * @param endDate   The end of the date range to search data for (inclusive)
+     * @param pageSize  Maximum number of entries per page
+     * @return          The first page of entries, or null if an error is thrown
+     */
+    FoodLogPage fetchPageFromDateRange(LocalDate startDate, LocalDate endDate, int pageSize);
+
+    /**
+     * Returns the first page of entries whose food name contains the given name,
+     * ignoring case, ordered by entry date then entry ID
+     * @param foodName  Partial or full name of the food to get entries for
+     * @param pageSize  Maximum number of entries per page
+     * @return          The first page of entries, or null if an error is thrown
+     */
+    FoodLogPage fetchPageFromFood(String foodName, int pageSize);
+
+    /**
+     * Returns the page of entries that follows the given page
+     * @param page  A page returned by this storage
+     * @return      The next page, the given page if it is the last page, or null if an
+     *              error is thrown
+     */
+    FoodLogPage fetchNextPage(FoodLogPage page);
+
+    /**
+     * Returns the page of entries that comes before the given page
+     * @param page  A page returned by this storage
+     * @return      The previous page, the given page if it is the first page, or null if
+     *              an error is thrown
+     */
+    FoodLogPage fetchPreviousPage(FoodLogPage page);
+
+    /**
+     * Builds a DataReport for all entries between a start date (inclusive) and an end
+     * date (inclusive)
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if an error is thrown
+     */
+    DataReport fetchDataReport(LocalDate startDate, LocalDate endDate);
+
+    /**
+     * @return  A DataReport of yesterday's entries, or null if an error is thrown
+     */
+    default DataReport fetchYesterdayReport() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        return this.fetchDataReport(yesterday, yesterday);
+    }
+
+    /**
+     * @return  A DataReport of the past month's entries, or null if an error is thrown
+     */
+    default DataReport fetchMonthReport() {
+        LocalDate today = LocalDate.now();
+        return this.fetchDataReport(today.minusMonths(1), today);
+    }
+
+    /**
+     * Writes all entries between a start date (inclusive) and an end date (inclusive)
+     * to a file in the table format printed by ReportBuilder
+     * @param startDate The start of the date range to export (inclusive)
+     * @param endDate   The end of the date range to export (inclusive)
+     * @param file      Path of the file to write, which is replaced if it exists
+     * @return          The number of entries written, or -1 if an error is thrown
+     */
+    int exportEntries(LocalDate startDate, LocalDate endDate, Path file);
+
+    /**
+     * Deletes all entries in the food log that are older than the given number of days
+     * @param deleteDays    Number of days older than to delete
+     * @return              true if deletion successful, false otherwise
+     */
+    boolean deleteOldEntries(int deleteDays);
+
+    /**
+     * Updates the entry with the given entry ID with the new values given
+     * @param entryID           entry ID of the entry
+     * @param entryDate         date of food entry
+     * @param foodName          name of food entry
+     * @param mealType          meal type of food entry
+     * @param servingQuantity   double value of serving quantity
+     * @param entryNotes        entry notes
+     * @return                  true if update is successful, false otherwise
+     */
+    boolean editEntry(int entryID, LocalDate entryDate, String foodName
+            , String mealType, double servingQuantity, String entryNotes);
+
+    /**
+     * Adds the calorie details of a food. Each food can only have one set of details.
+     * @param foodName      Name of the food
+     * @param calories      Calories per serving in the food
+     * @param foodCategory  Category of the food
+     * @return              true if insertion successful, false otherwise
+     */
+    boolean insertFoodDetails(String foodName, int calories, String foodCategory);
+
+    /**
+     * Deletes the calorie details of the food that matches the given food name
+     * @param foodName  name of the food
+     * @return          Number of foods deleted, or -1 if an error is thrown
+     */
+    int deleteFoodDetails(String foodName);
+
+    /**
+     * @return  An unmodifiable Map of food name to calorie details for all foods, or
+     *          null if the calorie details could not be read
+     */
+    Map<String, CalorieTableEntry> getCalorieMap();
+
+    /**
+     * Registers a listener that is told the dates of entries inserted, edited, or
+     * deleted through this storage from now on
+     * @param listener  The listener
+     */
+    void addEntryChangeListener(EntryChangeListener listener);
+
+    /**
+     * Releases the resources held by this storage
+     * @return  true if closed successfully, false otherwise
+     */
+    boolean close();
+}
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An in-memory search index over the distinct food names in the food log.
+ * Every name is broken into trigrams (three character substrings), and a
+ * search for a partial food name only checks names that contain all of the
+ * search term's trigrams. Search cost depends on the number of distinct food
+ * names rather than the number of food log entries. Names are stored in
+ * lower case, matching how FoodLogComm stores them.
+ *
+ * @author iDoc1
+ *
+ */
+public class FoodNameIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private TreeSet<String> foodNames;  // All distinct food names in sorted order
+    private HashMap<String, HashSet<String>> namesByTrigram;  // Trigram to names containing it
+
+    /**
+     * Constructs an empty FoodNameIndex
+     */
+    public FoodNameIndex() {
+        this.foodNames = new TreeSet<>();
+        this.namesByTrigram = new HashMap<>();
+    }
+
+    /**
+     * Adds a food name to the index if it is not already present
+     * @param foodName  Name of the food
+     */
+    public synchronized void add(String foodName) {
+        if (foodName == null) {
+            return;
+        }
+
+        String name = foodName.toLowerCase();
+        if (!this.foodNames.add(name)) {
+            return;  // Name already indexed
+        }
+
+        for (String trigram : trigrams(name)) {
+            this.namesByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(name);
+        }
+    }
+
+    /**
+     * Removes a food name from the index if it is present
+     * @param foodName  Name of the food
+     */
+    public synchronized void remove(String foodName) {
+        if (foodName == null) {
+            return;
+        }
+
+        String name = foodName.toLowerCase();
+        if (!this.foodNames.remove(name)) {
+            return;  // Name not indexed
+        }
+
+        for (String trigram : trigrams(name)) {
+            HashSet<String> names = this.namesByTrigram.get(trigram);
+            names.remove(name);
+            if (names.isEmpty()) {
+                this.namesByTrigram.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with the given food names
+     * @param foodNames All distinct food names in the food log
+     */
+    public synchronized void rebuild(Collection<String> foodNames) {
+        this.foodNames = new TreeSet<>();
+        this.namesByTrigram = new HashMap<>();
+
+        for (String foodName : foodNames) {
+            this.add(foodName);
+        }
+    }
+
+    /**
+     * Returns every indexed food name that contains the given text, ignoring case
+     * @param searchText    Partial or full food name to search for
+     * @return              Matching food names in alphabetical order
+     */
+    public synchronized List<String> search(String searchText) {
+        String text = searchText.toLowerCase();
+
+        // Short search terms have no trigrams, so check every name
+        if (text.length() < GRAM_LENGTH) {
+            List<String> matches = new ArrayList<>();
+            for (String name : this.foodNames) {
+                if (name.contains(text)) {
+                    matches.add(name);
+                }
+            }
+            return matches;
+        }
+
+        // Start with the smallest set of candidate names among the search term's trigrams
+        HashSet<String> candidates = null;
+        for (String trigram : trigrams(text)) {
+            HashSet<String> names = this.namesByTrigram.get(trigram);
+            if (names == null) {
+                return new ArrayList<>();  // No name contains this trigram
+            }
+            if (candidates == null || names.size() < candidates.size()) {
+                candidates = names;
+            }
+        }
+
+        // Confirm each candidate contains the whole search term
+        TreeSet<String> matches = new TreeSet<>();
+        for (String name : candidates) {
+            if (name.contains(text)) {
+                matches.add(name);
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * @return  Number of distinct food names in the index
+     */
+    public synchronized int size() {
+        return this.foodNames.size();
+    }
+
+    /**
+     * Breaks a name into its distinct trigrams
+     * @param name  Lower case food name
+     * @return      Every three character substring of the name
+     */
+    private static HashSet<String> trigrams(String name) {
+        HashSet<String> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            trigrams.add(name.substring(i, i + GRAM_LENGTH));
+        }
+        return trigrams;
+    }
+}
@@ -1,3 +1,5 @@
+import java.time.LocalDate;
+
 /**
  * This class represents a row in the food log database, excluding the
  * entry ID. The purpose of this class is to store the data within individual
@@ -9,7 +11,7 @@
 
 public class FoodTableEntry {
 
-    private String entryDate;
+    private LocalDate entryDate;
     private String foodName;
     private String mealType;
     private double servingQuantity;
@@ -23,7 +25,7 @@ public class FoodTableEntry {
      * @param servingQuantity   Serving quantity of food log entry
      * @param entryNotes        Notes in food lgo entry
      */
-    public FoodTableEntry(String entryDate, String foodName, String mealType, double servingQuantity, String entryNotes) {
+    public FoodTableEntry(LocalDate entryDate, String foodName, String mealType, double servingQuantity, String entryNotes) {
         this.entryDate = entryDate;
         this.foodName = foodName;
         this.mealType = mealType;
@@ -33,9 +35,9 @@ public class FoodTableEntry {
 
     /**
      * Returns the entry date of this food log entry
-     * @return  A String of entry date
+     * @return  The entry date
      */
-    public String getEntryDate() {
+    public LocalDate getEntryDate() {
         return entryDate;
     }
 
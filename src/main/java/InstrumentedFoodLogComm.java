@@ -0,0 +1,336 @@
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.sql.rowset.CachedRowSet;
+
+/**
+ * A FoodLogComm that records the latency, throughput, errors, and row counts
+ * of each of its database operations in FoodLogMetrics, where they can be
+ * watched over JMX under FoodLogApp:type=FoodLogComm. A call counts as an
+ * error when it returns the value FoodLogComm uses to report a failure, such
+ * as null, false, or -1. Only the outermost call on a thread is recorded, so
+ * an operation that calls another one, such as exportEntries streaming its
+ * rows, is counted once under its own name. Methods that only delegate to
+ * another operation, such as insertRowCurrDate, are recorded under the
+ * operation they call. Calorie table reads served from the cache are recorded
+ * as getCalorieMapCacheHit rather than as database reads.
+ *
+ * @author iDoc1
+ *
+ */
+public class InstrumentedFoodLogComm extends FoodLogComm {
+
+    // Number of instrumented calls running on each thread, so nested calls are not recorded twice
+    private static final ThreadLocal<int[]> CALL_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    // Set when the calorie table is read from the database during a getCalorieMap call
+    private static final ThreadLocal<boolean[]> CALORIE_MAP_LOADED = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    /**
+     * Constructs an InstrumentedFoodLogComm given an existing connection to the
+     * food log database
+     * @param foodLogConn   An existing connection to the food log database
+     */
+    public InstrumentedFoodLogComm(FoodLogConnection foodLogConn) {
+        super(foodLogConn);
+    }
+
+    @Override
+    public boolean insertRowGivenDate(FoodDetails foodEaten, LocalDate entryDate, String entryNotes) {
+        return time("insertRowGivenDate", () -> super.insertRowGivenDate(foodEaten, entryDate, entryNotes)
+                , inserted -> inserted ? 1 : -1);
+    }
+
+    @Override
+    public BatchInsertResult insertRows(List<FoodTableEntry> entries, int batchSize) {
+        int[] depth = CALL_DEPTH.get();
+        if (depth[0] > 0) {
+            return super.insertRows(entries, batchSize);
+        }
+
+        depth[0]++;
+        try {
+            long startTime = System.nanoTime();
+            BatchInsertResult result = super.insertRows(entries, batchSize);
+
+            // Rows that were inserted are counted even when others failed
+            OperationMetrics metrics = FoodLogMetrics.operation("insertRows");
+            metrics.record(System.nanoTime() - startTime, result.isSuccessful());
+            metrics.addRows(result.getInsertedCount());
+            return result;
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    @Override
+    public void insertRowsAtomically(List<FoodTableEntry> entries) throws SQLException {
+        int[] depth = CALL_DEPTH.get();
+        if (depth[0] > 0) {
+            super.insertRowsAtomically(entries);
+            return;
+        }
+
+        depth[0]++;
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            super.insertRowsAtomically(entries);
+            success = true;
+        } finally {
+            depth[0]--;
+            FoodLogMetrics.operation("insertRowsAtomically").recordRows(System.nanoTime() - startTime
+                    , success ? entries.size() : -1);
+        }
+    }
+
+    @Override
+    public FoodTableEntry fetchEntry(int entryID) {
+
+        // A missing entry cannot be told apart from a failed read, so neither is an error
+        return timeResult(() -> "fetchEntry", () -> super.fetchEntry(entryID), entry -> entry == null ? 0 : 1);
+    }
+
+    @Override
+    public LinkedHashMap<Integer, FoodTableEntry> fetchEntriesFromDateRange(LocalDate startDate, LocalDate endDate) {
+        return time("fetchEntriesFromDateRange", () -> super.fetchEntriesFromDateRange(startDate, endDate)
+                , Map::size);
+    }
+
+    @Override
+    public ResultSet fetchDataFromID(int rowID) {
+        return time("fetchDataFromID", () -> super.fetchDataFromID(rowID), InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public ResultSet fetchDataFromDate(LocalDate date) {
+        return time("fetchDataFromDate", () -> super.fetchDataFromDate(date), InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public ResultSet fetchDataFromDateRange(LocalDate startDate, LocalDate endDate) {
+        return time("fetchDataFromDateRange", () -> super.fetchDataFromDateRange(startDate, endDate)
+                , InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public ResultSet fetchDataFromFood(String foodName) {
+        return time("fetchDataFromFood", () -> super.fetchDataFromFood(foodName)
+                , InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public ResultSet fetchYesterdayData() {
+        return time("fetchYesterdayData", super::fetchYesterdayData, InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public ResultSet fetchMonthData() {
+        return time("fetchMonthData", super::fetchMonthData, InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public <T> T streamDataFromDate(LocalDate date, ResultSetHandler<T> handler) {
+        return time("streamDataFromDate", () -> super.streamDataFromDate(date, handler));
+    }
+
+    @Override
+    public <T> T streamDataFromDateRange(LocalDate startDate, LocalDate endDate, ResultSetHandler<T> handler) {
+        return time("streamDataFromDateRange", () -> super.streamDataFromDateRange(startDate, endDate, handler));
+    }
+
+    @Override
+    public <T> T streamCalorieDataFromDateRange(LocalDate startDate, LocalDate endDate
+            , ResultSetHandler<T> handler) {
+        return time("streamCalorieDataFromDateRange"
+                , () -> super.streamCalorieDataFromDateRange(startDate, endDate, handler));
+    }
+
+    @Override
+    public <T> T streamDataFromFood(String foodName, ResultSetHandler<T> handler) {
+        return time("streamDataFromFood", () -> super.streamDataFromFood(foodName, handler));
+    }
+
+    @Override
+    public <T> T streamYesterdayData(ResultSetHandler<T> handler) {
+        return time("streamYesterdayData", () -> super.streamYesterdayData(handler));
+    }
+
+    @Override
+    public <T> T streamMonthData(ResultSetHandler<T> handler) {
+        return time("streamMonthData", () -> super.streamMonthData(handler));
+    }
+
+    @Override
+    public List<String> searchFoodNames(String searchText) {
+        return time("searchFoodNames", () -> super.searchFoodNames(searchText), List::size);
+    }
+
+    @Override
+    public FoodLogPage fetchPageFromDateRange(LocalDate startDate, LocalDate endDate, int pageSize) {
+        return time("fetchPageFromDateRange", () -> super.fetchPageFromDateRange(startDate, endDate, pageSize)
+                , page -> page.getEntries().size());
+    }
+
+    @Override
+    public FoodLogPage fetchPageFromFood(String foodName, int pageSize) {
+        return time("fetchPageFromFood", () -> super.fetchPageFromFood(foodName, pageSize)
+                , page -> page.getEntries().size());
+    }
+
+    @Override
+    public FoodLogPage fetchNextPage(FoodLogPage page) {
+        return time("fetchNextPage", () -> super.fetchNextPage(page), nextPage -> nextPage.getEntries().size());
+    }
+
+    @Override
+    public FoodLogPage fetchPreviousPage(FoodLogPage page) {
+        return time("fetchPreviousPage", () -> super.fetchPreviousPage(page)
+                , previousPage -> previousPage.getEntries().size());
+    }
+
+    @Override
+    public DataReport aggregateDataReport(LocalDate startDate, LocalDate endDate) {
+        return time("aggregateDataReport", () -> super.aggregateDataReport(startDate, endDate));
+    }
+
+    @Override
+    public DataReport aggregateYesterdayData() {
+        return time("aggregateYesterdayData", super::aggregateYesterdayData);
+    }
+
+    @Override
+    public DataReport aggregateMonthData() {
+        return time("aggregateMonthData", super::aggregateMonthData);
+    }
+
+    @Override
+    public DataReport fetchSummaryDataReport(LocalDate startDate, LocalDate endDate) {
+        return time("fetchSummaryDataReport", () -> super.fetchSummaryDataReport(startDate, endDate));
+    }
+
+    @Override
+    public DataReport fetchYesterdaySummaryReport() {
+        return time("fetchYesterdaySummaryReport", super::fetchYesterdaySummaryReport);
+    }
+
+    @Override
+    public DataReport fetchMonthSummaryReport() {
+        return time("fetchMonthSummaryReport", super::fetchMonthSummaryReport);
+    }
+
+    @Override
+    public int exportEntries(LocalDate startDate, LocalDate endDate, Path file) {
+        return time("exportEntries", () -> super.exportEntries(startDate, endDate, file), rows -> rows);
+    }
+
+    @Override
+    public boolean deleteOldEntries(int deleteDays) {
+        return time("deleteOldEntries", () -> super.deleteOldEntries(deleteDays), deleted -> deleted ? 0 : -1);
+    }
+
+    @Override
+    public int createFuturePartitions(int monthsAhead) {
+        return time("createFuturePartitions", () -> super.createFuturePartitions(monthsAhead), created -> created);
+    }
+
+    @Override
+    public boolean editEntry(int entryID, LocalDate entryDate, String foodName
+            , String mealType, double servingQuantity, String entryNotes) {
+        return time("editEntry", () -> super.editEntry(entryID, entryDate, foodName, mealType, servingQuantity
+                , entryNotes), edited -> edited ? 1 : -1);
+    }
+
+    @Override
+    public boolean insertFoodDetails(String foodName, int calories, String foodCategory) {
+        return time("insertFoodDetails", () -> super.insertFoodDetails(foodName, calories, foodCategory)
+                , inserted -> inserted ? 1 : -1);
+    }
+
+    @Override
+    public int deleteFoodDetails(String foodName) {
+        return time("deleteFoodDetails", () -> super.deleteFoodDetails(foodName), deleted -> deleted);
+    }
+
+    @Override
+    public ResultSet fetchCalorieData() {
+        return time("fetchCalorieData", super::fetchCalorieData, InstrumentedFoodLogComm::rowCount);
+    }
+
+    @Override
+    public Map<String, CalorieTableEntry> getCalorieMap() {
+        boolean[] loaded = CALORIE_MAP_LOADED.get();
+        loaded[0] = false;
+
+        // Only a call that read the calorie table counts as a database operation
+        return timeResult(() -> loaded[0] ? "getCalorieMap" : "getCalorieMapCacheHit", super::getCalorieMap
+                , calorieMap -> calorieMap == null ? -1 : calorieMap.size());
+    }
+
+    @Override
+    protected HashMap<String, CalorieTableEntry> loadCalorieMap() {
+        CALORIE_MAP_LOADED.get()[0] = true;
+        return super.loadCalorieMap();
+    }
+
+    /**
+     * Runs an operation that returns null on failure and records its time
+     */
+    private static <T> T time(String name, Supplier<T> operation) {
+        return time(name, operation, result -> 0);
+    }
+
+    /**
+     * Runs an operation and records its time and the rows it read or wrote
+     * @param name      Name of the operation
+     * @param operation The operation
+     * @param rowCount  Returns the number of rows in a non-null result, or -1 if the
+     *                  result reports a failure
+     * @return          The result of the operation
+     */
+    private static <T> T time(String name, Supplier<T> operation, ToLongFunction<T> rowCount) {
+        return timeResult(() -> name, operation, result -> result == null ? -1 : rowCount.applyAsLong(result));
+    }
+
+    /**
+     * Runs an operation and, unless it was called by another instrumented operation,
+     * records its time and the rows it read or wrote
+     * @param name      Returns the name to record the operation under once it has run
+     * @param operation The operation
+     * @param rowCount  Returns the number of rows in a result, which may be null, or -1
+     *                  if the result reports a failure
+     * @return          The result of the operation
+     */
+    private static <T> T timeResult(Supplier<String> name, Supplier<T> operation, ToLongFunction<T> rowCount) {
+        int[] depth = CALL_DEPTH.get();
+        if (depth[0] > 0) {
+            return operation.get();
+        }
+
+        depth[0]++;
+        try {
+            long startTime = System.nanoTime();
+            T result = operation.get();
+            long elapsedTime = System.nanoTime() - startTime;
+
+            FoodLogMetrics.operation(name.get()).recordRows(elapsedTime, rowCount.applyAsLong(result));
+            return result;
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    /**
+     * @return  The number of rows in a ResultSet returned by a fetch method
+     */
+    private static long rowCount(ResultSet results) {
+        return results instanceof CachedRowSet ? ((CachedRowSet) results).size() : 0;
+    }
+}
@@ -0,0 +1,1370 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded food log storage engine that keeps the food log in local files
+ * instead of a MySQL database, for single user installs and as a stand-in
+ * for the database. Every change is appended to a log file as a checksummed
+ * record, so writes never rewrite earlier data. Entries are found through an
+ * index file of (entry date, entry ID) keys and log offsets sorted by key,
+ * which is memory-mapped and binary searched for range scans, plus an
+ * in-memory sorted map of the entries appended since the index was written.
+ * The index also lists its entry IDs in ID order, so entries are looked up by
+ * ID without holding the index in memory. Compaction rewrites the log with
+ * only the current version of each entry in key order and writes a new index
+ * beside it, then switches to the new files by replacing the small CURRENT
+ * file that names them, so the files in use are never overwritten. It runs
+ * once enough records have been superseded or appended. A record left half
+ * written at the end of the log by a crash is dropped the next time the
+ * storage is opened, while a damaged record with valid records after it
+ * stops the storage from opening.
+ *
+ * @author iDoc1
+ *
+ */
+public class JournalStorage implements FoodLogStorage {
+
+    // Names the log and index in use. Without it the storage uses the first log and index names.
+    private static final String CURRENT_FILE = "CURRENT";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOG_FILE = "food_log.journal";
+    private static final String INDEX_FILE = "food_log.index";
+
+    // Compaction writes files named by the ID of the new log
+    private static final String FILE_PREFIX = "food_log-";
+    private static final String LOG_SUFFIX = ".journal";
+    private static final String INDEX_SUFFIX = ".index";
+
+    // File headers: magic number, format version, and the ID shared by a log and its index
+    private static final int LOG_MAGIC = 0x464C4F47;  // "FLOG"
+    private static final int INDEX_MAGIC = 0x46494458;  // "FIDX"
+    private static final short LOG_FORMAT_VERSION = 1;
+    private static final short INDEX_FORMAT_VERSION = 2;
+    private static final int LOG_HEADER_SIZE = 4 + 2 + 8;
+
+    // Index header also holds the log length it covers, where its entries start, and its key count
+    private static final int INDEX_HEADER_SIZE = 4 + 2 + 8 + 8 + 8 + 4;
+
+    // Key and offset of each entry in key order, then entry ID and key position in ID order
+    private static final int INDEX_RECORD_SIZE = 8 + 8;
+    private static final int INDEX_ID_RECORD_SIZE = 4 + 4;
+
+    // Each log record is its payload length, the payload's CRC32, then the payload
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+
+    // Log record types
+    private static final byte ENTRY_RECORD = 1;
+    private static final byte DELETE_RECORD = 2;
+    private static final byte FOOD_RECORD = 3;
+    private static final byte FOOD_DELETE_RECORD = 4;
+
+    // Compaction runs once this many records are superseded and they outnumber live entries...
+    private static final int MIN_DEAD_RECORDS = 1000;
+
+    // ...or once this many entries have been written or deleted since the index was written
+    private static final int MAX_UNINDEXED_ENTRIES = 50000;
+
+    // Writes to wait after a failed compaction before trying again
+    private static final int COMPACTION_RETRY_WRITES = 1000;
+
+    // Offset recorded for entries deleted since the index was written
+    private static final long DELETED = -1;
+
+    // Epoch day stored for entries that have no date, which sorts before every date
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final Path directory;
+    private Path logFile;
+    private Path indexFile;
+
+    private FileChannel log;
+    private long logID;
+    private long logLength;
+
+    private MappedByteBuffer index;  // Keys and offsets of the entries live at the last compaction
+    private int indexCount;
+
+    // Entries written or deleted since the index was written
+    private final TreeMap<Long, Long> unindexed = new TreeMap<>();  // Key to offset of entries appended since
+    private final HashMap<Integer, Long> changedOffsets = new HashMap<>();  // Entry ID to offset, or DELETED
+    private final HashMap<Integer, Long> changedKeys = new HashMap<>();  // Entry ID to key of current version
+
+    private final HashMap<String, CalorieTableEntry> calorieMap = new HashMap<>();
+    private int nextEntryID = 1;
+    private int liveCount = 0;
+    private int deadRecords = 0;
+    private int compactionRetryWrites = 0;
+    private String lastError = null;
+
+    // Told the dates of changed entries, such as by a SnapshotStore
+    private final List<EntryChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    /**
+     * Opens the journal storage in the given directory, creating it if it does not exist
+     * @param directory     Directory holding the log and index files
+     * @throws IOException  If the files cannot be read or are not food log journal files
+     */
+    public JournalStorage(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.readCurrent();
+
+        this.openLog();
+
+        // Load the index if it belongs to this log, otherwise rebuild it from the whole log
+        long indexedLength = this.loadIndex();
+        if (indexedLength > 0) {
+            this.replay(indexedLength, this.log.size());
+        } else {
+            this.replay(LOG_HEADER_SIZE, this.log.size());
+            try {
+                this.compact();
+            } catch (IOException e) {
+
+                // The storage still works from the log alone until a later compaction succeeds
+                this.compactionFailed(e);
+            }
+        }
+        this.deleteUnusedFiles();
+    }
+
+    @Override
+    public synchronized boolean insertRowGivenDate(FoodDetails foodEaten, LocalDate entryDate, String entryNotes) {
+        FoodTableEntry entry = new FoodTableEntry(entryDate, foodEaten.getFoodName(), foodEaten.getMealType()
+                , foodEaten.getServingQuantity(), entryNotes);
+
+        try {
+            this.appendEntries(Collections.singletonList(entry), Collections.singletonList(this.nextEntryID));
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Inserts many entries with a single write to the log
+     * @param entries   Entries to be inserted
+     * @return          The number of entries inserted and the reason each failed entry
+     *                  was not inserted
+     */
+    @Override
+    public synchronized BatchInsertResult insertRows(List<FoodTableEntry> entries) {
+        BatchInsertResult result = new BatchInsertResult();
+
+        List<Integer> entryIDs = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            entryIDs.add(this.nextEntryID + i);
+        }
+
+        try {
+            this.appendEntries(entries, entryIDs);
+            result.addInserted(entries.size());
+        } catch (IOException e) {
+            for (int i = 0; i < entries.size(); i++) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized FoodTableEntry fetchEntry(int entryID) {
+        Long offset = this.currentOffset(entryID);
+        if (offset == null) {
+            return null;
+        }
+
+        try {
+            return this.readEntry(offset);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized LinkedHashMap<Integer, FoodTableEntry> fetchEntriesFromDateRange(LocalDate startDate
+            , LocalDate endDate) {
+        LinkedHashMap<Integer, FoodTableEntry> entries = new LinkedHashMap<>();
+
+        try {
+            this.scan(firstKey(startDate), lastKey(endDate), true, entry -> true, (entryID, entry) -> {
+                entries.put(entryID, entry);
+                return true;
+            });
+        } catch (IOException e) {
+            return null;
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized FoodLogPage fetchPageFromDateRange(LocalDate startDate, LocalDate endDate, int pageSize) {
+        return this.fetchPage(new PageQuery(firstKey(startDate), lastKey(endDate), null), pageSize, true, null);
+    }
+
+    /**
+     * Returns the first page of entries whose food name contains the given name,
+     * ignoring case. Entries without an entry date are skipped, the same as in
+     * FoodLogComm.
+     * @param foodName  Partial or full name of the food to get entries for
+     * @param pageSize  Maximum number of entries per page
+     * @return          The first page of entries, or null if an error is thrown
+     */
+    @Override
+    public synchronized FoodLogPage fetchPageFromFood(String foodName, int pageSize) {
+        PageQuery query = new PageQuery(key(NO_DATE + 1, 0), Long.MAX_VALUE, foodName.toLowerCase());
+        return this.fetchPage(query, pageSize, true, null);
+    }
+
+    /**
+     * Returns the page of entries that follows the given page
+     * @param page  A page returned by this storage
+     * @return      The next page, the given page if it is the last page, or null if an
+     *              error is thrown or the page was returned by another kind of storage
+     */
+    @Override
+    public synchronized FoodLogPage fetchNextPage(FoodLogPage page) {
+        if (!(page.getQuery() instanceof PageQuery)) {
+            return null;
+        }
+        if (!page.hasNext() || page.isEmpty()) {
+            return page;
+        }
+        return this.fetchPage((PageQuery) page.getQuery(), page.getPageSize(), true
+                , key(page.getLastEntryDate(), page.getLastEntryID()));
+    }
+
+    /**
+     * Returns the page of entries that comes before the given page
+     * @param page  A page returned by this storage
+     * @return      The previous page, the given page if it is the first page, or null if
+     *              an error is thrown or the page was returned by another kind of storage
+     */
+    @Override
+    public synchronized FoodLogPage fetchPreviousPage(FoodLogPage page) {
+        if (!(page.getQuery() instanceof PageQuery)) {
+            return null;
+        }
+        if (!page.hasPrevious() || page.isEmpty()) {
+            return page;
+        }
+        return this.fetchPage((PageQuery) page.getQuery(), page.getPageSize(), false
+                , key(page.getFirstEntryDate(), page.getFirstEntryID()));
+    }
+
+    @Override
+    public synchronized DataReport fetchDataReport(LocalDate startDate, LocalDate endDate) {
+        LinkedHashMap<Integer, FoodTableEntry> entries = this.fetchEntriesFromDateRange(startDate, endDate);
+        if (entries == null) {
+            return null;
+        }
+        return ReportBuilder.getDataReport(entries.values(), this.calorieMap);
+    }
+
+    @Override
+    public synchronized int exportEntries(LocalDate startDate, LocalDate endDate, Path file) {
+        try (TableRenderer renderer = TableRenderer.toFile(file)) {
+            renderer.writeHeader();
+            this.scan(firstKey(startDate), lastKey(endDate), true, entry -> true, (entryID, entry) -> {
+                renderer.writeRow(entryID, String.valueOf(entry.getEntryDate()), entry.getFoodName()
+                        , entry.getMealType(), entry.getServingQuantity(), entry.getEntryNotes());
+                return true;
+            });
+            return renderer.getRowCount();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteOldEntries(int deleteDays) {
+        long cutoffKey = key(LocalDate.now().minusDays(deleteDays), 0);
+        List<Integer> entryIDs = new ArrayList<>();
+
+        try {
+
+            // Find the entries dated before the cutoff, skipping entries without a date
+            this.scan(key(NO_DATE + 1, 0), cutoffKey - 1, true, entry -> true, (entryID, entry) -> {
+                entryIDs.add(entryID);
+                return true;
+            });
+
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (int entryID : entryIDs) {
+                writeRecord(records, encodeDelete(entryID));
+            }
+            long offset = this.append(records.toByteArray());
+            this.applyRecords(offset, this.logLength);
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (!entryIDs.isEmpty()) {
+            this.notifyEntriesChanged(LocalDate.MIN, LocalDate.now().minusDays(deleteDays + 1));
+        }
+        this.compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean editEntry(int entryID, LocalDate entryDate, String foodName
+            , String mealType, double servingQuantity, String entryNotes) {
+        Long offset = this.currentOffset(entryID);
+        if (offset == null) {
+            return false;
+        }
+
+        FoodTableEntry entry = new FoodTableEntry(entryDate, foodName, mealType, servingQuantity, entryNotes);
+        try {
+
+            // The entry leaves its previous date, which changes too
+            LocalDate previousDate = this.readEntry(offset).getEntryDate();
+            this.appendEntries(Collections.singletonList(entry), Collections.singletonList(entryID));
+            this.notifyEntriesChanged(previousDate, previousDate);
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean insertFoodDetails(String foodName, int calories, String foodCategory) {
+
+        // Food names are stored in lower case like entries, so they are unique ignoring case
+        if (this.calorieMap.containsKey(foodName.toLowerCase())) {
+            return false;
+        }
+
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writeRecord(record, encodeFood(foodName, calories, foodCategory));
+            long offset = this.append(record.toByteArray());
+            this.applyRecords(offset, this.logLength);
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int deleteFoodDetails(String foodName) {
+        try {
+            String name = foodName.toLowerCase();
+            if (!this.calorieMap.containsKey(name)) {
+                return 0;
+            }
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writeRecord(record, encodeFoodDelete(name));
+            long offset = this.append(record.toByteArray());
+            this.applyRecords(offset, this.logLength);
+            return 1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized Map<String, CalorieTableEntry> getCalorieMap() {
+        return Collections.unmodifiableMap(new HashMap<>(this.calorieMap));
+    }
+
+    /**
+     * Writes the log out to disk and closes it
+     * @return  true if closed successfully, false otherwise
+     */
+    @Override
+    public synchronized boolean close() {
+        try {
+            this.log.force(true);
+            this.log.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void addEntryChangeListener(EntryChangeListener listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * @return  A description of the most recent failed compaction, or null if there has
+     *          been none since the last successful one
+     */
+    public synchronized String getLastError() {
+        return this.lastError;
+    }
+
+    /**
+     * Rewrites the log with only the current version of each entry and food, ordered by
+     * key, and writes a new index over it. The new files are written and forced to disk
+     * under new names, then the CURRENT file is atomically replaced to name them. The
+     * files in use are only closed once the switch has succeeded, so a failed compaction
+     * leaves them open and unchanged. The old files are then deleted, or on the next
+     * open if they cannot be deleted yet.
+     * @throws IOException  If the new files cannot be written or switched to
+     */
+    public synchronized void compact() throws IOException {
+        long newLogID = new Random().nextLong();
+        String generation = String.format("%016x", newLogID);
+        Path newLogFile = this.directory.resolve(FILE_PREFIX + generation + LOG_SUFFIX);
+        Path newIndexFile = this.directory.resolve(FILE_PREFIX + generation + INDEX_SUFFIX);
+
+        long[] keys = new long[this.liveCount];
+        long[] offsets = new long[this.liveCount];
+        int[] count = {0};
+
+        FileChannel newLog = FileChannel.open(newLogFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ
+                , StandardOpenOption.WRITE);
+        try {
+            writeFully(newLog, logHeader(newLogID), 0);
+
+            // Foods come first so that opening the storage only replays them before the indexed entries
+            ByteArrayOutputStream foods = new ByteArrayOutputStream();
+            for (Map.Entry<String, CalorieTableEntry> food : this.calorieMap.entrySet()) {
+                writeRecord(foods, encodeFood(food.getKey(), food.getValue().getCaloriesPerServing()
+                        , food.getValue().getFoodCategory()));
+            }
+            writeFully(newLog, ByteBuffer.wrap(foods.toByteArray()), LOG_HEADER_SIZE);
+            long entriesStart = LOG_HEADER_SIZE + foods.size();
+
+            // Copy the current record of every live entry in key order
+            long[] position = {entriesStart};
+            this.scanKeys(Long.MIN_VALUE, Long.MAX_VALUE, true, (key, offset) -> {
+                ByteBuffer payload = this.readRecord(offset);
+                if (payload == null) {
+                    throw new IOException("Journal record at " + offset + " of " + this.logFile + " is damaged.");
+                }
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.remaining());
+                record.putInt(payload.remaining()).putInt(crc(payload)).put(payload).flip();
+
+                keys[count[0]] = key;
+                offsets[count[0]] = position[0];
+                count[0]++;
+                position[0] += writeFully(newLog, record, position[0]);
+                return true;
+            });
+            long newLogLength = position[0];
+            newLog.force(true);
+
+            // Write the index of the new log, then switch to the new files
+            MappedByteBuffer newIndex = writeIndex(newIndexFile, newLogID, newLogLength, entriesStart
+                    , keys, offsets, count[0]);
+            this.writeCurrent(newLogFile, newIndexFile);
+
+            FileChannel oldLog = this.log;
+            Path oldLogFile = this.logFile;
+            Path oldIndexFile = this.indexFile;
+            this.log = newLog;
+            this.logFile = newLogFile;
+            this.indexFile = newIndexFile;
+            this.logID = newLogID;
+            this.logLength = newLogLength;
+            this.index = newIndex;
+            this.indexCount = count[0];
+            this.liveCount = count[0];
+            this.unindexed.clear();
+            this.changedOffsets.clear();
+            this.changedKeys.clear();
+            this.deadRecords = 0;
+
+            // CURRENT no longer names the old files, so failing to remove them is harmless
+            closeQuietly(oldLog);
+            deleteQuietly(oldLogFile);
+            deleteQuietly(oldIndexFile);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(newLog);
+            deleteQuietly(newLogFile);
+            deleteQuietly(newIndexFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes an index file and forces it to disk
+     * @param file          Path of the new index file
+     * @param logID         ID of the log the index covers
+     * @param logLength     Length of the log covered by the index
+     * @param entriesStart  Offset of the first entry record in the log
+     * @param keys          Keys of the live entries in key order
+     * @param offsets       Log offset of each key
+     * @param count         Number of keys
+     * @return              The index, mapped into memory
+     * @throws IOException  If the index cannot be written
+     */
+    private static MappedByteBuffer writeIndex(Path file, long logID, long logLength, long entriesStart
+            , long[] keys, long[] offsets, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + count * (INDEX_RECORD_SIZE + INDEX_ID_RECORD_SIZE));
+        buffer.putInt(INDEX_MAGIC).putShort(INDEX_FORMAT_VERSION).putLong(logID).putLong(logLength)
+                .putLong(entriesStart).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(keys[i]).putLong(offsets[i]);
+        }
+
+        // Entry IDs are positive, so packing each ID above its key position sorts by ID
+        long[] idPositions = new long[count];
+        for (int i = 0; i < count; i++) {
+            idPositions[i] = ((long) (int) keys[i] << 32) | i;
+        }
+        Arrays.sort(idPositions);
+        for (long idPosition : idPositions) {
+            buffer.putInt((int) (idPosition >>> 32)).putInt((int) idPosition);
+        }
+        buffer.flip();
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ
+                , StandardOpenOption.WRITE)) {
+            writeFully(out, buffer, 0);
+            out.force(true);
+            return out.map(FileChannel.MapMode.READ_ONLY, 0, out.size());
+        }
+    }
+
+    /**
+     * Reads the names of the log and index in use from the CURRENT file, or uses the first
+     * log and index names if the storage has never been compacted
+     * @throws IOException  If the CURRENT file is damaged or names a missing log
+     */
+    private void readCurrent() throws IOException {
+        Path currentFile = this.directory.resolve(CURRENT_FILE);
+        if (!Files.exists(currentFile)) {
+            this.logFile = this.directory.resolve(LOG_FILE);
+            this.indexFile = this.directory.resolve(INDEX_FILE);
+            return;
+        }
+
+        List<String> names = Files.readAllLines(currentFile, StandardCharsets.UTF_8);
+        if (names.size() < 2) {
+            throw new IOException(currentFile + " is damaged.");
+        }
+        this.logFile = this.directory.resolve(names.get(0));
+        this.indexFile = this.directory.resolve(names.get(1));
+        if (!Files.exists(this.logFile)) {
+            throw new IOException(currentFile + " names the missing journal " + this.logFile + ".");
+        }
+    }
+
+    /**
+     * Atomically replaces the CURRENT file so that it names the given log and index
+     * @param newLogFile    The log to use
+     * @param newIndexFile  The index of the log
+     * @throws IOException  If the CURRENT file cannot be replaced, in which case it still
+     *                      names the files in use
+     */
+    private void writeCurrent(Path newLogFile, Path newIndexFile) throws IOException {
+        Path currentFile = this.directory.resolve(CURRENT_FILE);
+        Path tempFile = this.directory.resolve(CURRENT_FILE + TEMP_SUFFIX);
+        String names = newLogFile.getFileName() + "\n" + newIndexFile.getFileName() + "\n";
+
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE
+                , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(names.getBytes(StandardCharsets.UTF_8)), 0);
+            out.force(true);
+        }
+        Files.move(tempFile, currentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes logs and indexes that CURRENT does not name, which are left behind by
+     * compactions that did not finish or could not remove the files they replaced
+     */
+    private void deleteUnusedFiles() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean journalFile = name.equals(LOG_FILE) || name.equals(INDEX_FILE)
+                        || name.equals(CURRENT_FILE + TEMP_SUFFIX)
+                        || (name.startsWith(FILE_PREFIX) && (name.endsWith(LOG_SUFFIX) || name.endsWith(INDEX_SUFFIX)));
+                if (journalFile && !file.equals(this.logFile) && !file.equals(this.indexFile)) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            // Unused files are tried again on the next open
+        }
+    }
+
+    /**
+     * Opens the log file, writing a new header if the log is empty
+     * @throws IOException  If the log cannot be opened or is not a food log journal
+     */
+    private void openLog() throws IOException {
+        this.log = FileChannel.open(this.logFile, StandardOpenOption.CREATE, StandardOpenOption.READ
+                , StandardOpenOption.WRITE);
+
+        if (this.log.size() < LOG_HEADER_SIZE) {
+            this.logID = new Random().nextLong();
+            this.log.truncate(0);
+            writeFully(this.log, logHeader(this.logID), 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            readFully(this.log, header, 0);
+            header.flip();
+            if (header.getInt() != LOG_MAGIC || header.getShort() != LOG_FORMAT_VERSION) {
+                this.log.close();
+                throw new IOException(this.logFile + " is not a food log journal.");
+            }
+            this.logID = header.getLong();
+        }
+        this.logLength = LOG_HEADER_SIZE;
+    }
+
+    /**
+     * Maps the index file and loads the foods and live entries it covers, if the index
+     * was written for the current log
+     * @return              Length of the log covered by the index, or 0 if there is no
+     *                      usable index
+     * @throws IOException  If the index or log cannot be read
+     */
+    private long loadIndex() throws IOException {
+        this.index = null;
+        this.indexCount = 0;
+        this.liveCount = 0;
+        if (!Files.exists(this.indexFile)) {
+            return 0;
+        }
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(this.indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < INDEX_HEADER_SIZE) {
+                return 0;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        long indexedLength = mapped.getLong(4 + 2 + 8);
+        long entriesStart = mapped.getLong(4 + 2 + 8 + 8);
+        int count = mapped.getInt(4 + 2 + 8 + 8 + 8);
+        if (mapped.getInt(0) != INDEX_MAGIC || mapped.getShort(4) != INDEX_FORMAT_VERSION
+                || mapped.getLong(4 + 2) != this.logID || indexedLength > this.log.size()
+                || mapped.capacity() != INDEX_HEADER_SIZE + (long) count * (INDEX_RECORD_SIZE + INDEX_ID_RECORD_SIZE)) {
+            return 0;
+        }
+
+        // Foods are stored before the indexed entries
+        this.replay(LOG_HEADER_SIZE, entriesStart);
+
+        // Entries stay in the mapped index, and only the highest entry ID is read from it
+        this.index = mapped;
+        this.indexCount = count;
+        this.liveCount = count;
+        if (count > 0) {
+            this.nextEntryID = Math.max(this.nextEntryID, this.indexEntryID(count - 1) + 1);
+        }
+        this.logLength = indexedLength;
+        return indexedLength;
+    }
+
+    /**
+     * Applies the log records between two offsets. A record that is cut short or fails its
+     * checksum with no valid record after it is the torn tail of the last write before a
+     * crash, so the log is truncated there. A damaged record followed by valid records
+     * means the log itself is corrupt, and nothing is truncated.
+     * @param from          Offset of the first record
+     * @param to            Offset the records end at
+     * @throws IOException  If the log cannot be read or has a damaged record before its end
+     */
+    private void replay(long from, long to) throws IOException {
+        long offset = from;
+        while (offset < to) {
+            ByteBuffer payload = this.readRecord(offset);
+            if (payload == null) {
+                if (this.hasRecordAfter(offset)) {
+                    throw new IOException("Journal record at " + offset + " of " + this.logFile
+                            + " is damaged and valid records follow it.");
+                }
+                this.log.truncate(offset);
+                break;
+            }
+            this.apply(payload, offset);
+            offset += RECORD_HEADER_SIZE + payload.limit();
+        }
+        this.logLength = Math.max(this.logLength, offset);
+    }
+
+    /**
+     * Searches the log after a damaged record for any record that passes its checksum
+     * @param offset        Offset of the damaged record
+     * @return              true if a valid record starts anywhere after the offset
+     * @throws IOException  If the log cannot be read
+     */
+    private boolean hasRecordAfter(long offset) throws IOException {
+        long tailLength = this.log.size() - offset;
+        if (tailLength > Integer.MAX_VALUE) {
+            return true;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) tailLength);
+        readFully(this.log, tail, offset);
+
+        // Try every position, since the length of the damaged record cannot be trusted
+        for (int start = 1; start + RECORD_HEADER_SIZE < tail.capacity(); start++) {
+            int length = tail.getInt(start);
+            if (length <= 0 || length > tail.capacity() - start - RECORD_HEADER_SIZE) {
+                continue;
+            }
+            byte type = tail.get(start + RECORD_HEADER_SIZE);
+            if (type < ENTRY_RECORD || type > FOOD_DELETE_RECORD) {
+                continue;
+            }
+
+            ByteBuffer payload = tail.duplicate();
+            payload.limit(start + RECORD_HEADER_SIZE + length).position(start + RECORD_HEADER_SIZE);
+            if (crc(payload) == tail.getInt(start + 4)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies records that were just appended to the log to the in-memory state
+     * @param from          Offset of the first appended record
+     * @param to            Offset the appended records end at
+     * @throws IOException  If the records cannot be read back
+     */
+    private void applyRecords(long from, long to) throws IOException {
+        long offset = from;
+        while (offset < to) {
+            ByteBuffer payload = this.readRecord(offset);
+            if (payload == null) {
+                throw new IOException("Journal record at " + offset + " could not be read back.");
+            }
+            this.apply(payload, offset);
+            offset += RECORD_HEADER_SIZE + payload.limit();
+        }
+    }
+
+    /**
+     * Updates the in-memory state with a single log record
+     * @param payload       Payload of the record
+     * @param offset        Offset of the record in the log
+     * @throws IOException  If the record type is unknown
+     */
+    private void apply(ByteBuffer payload, long offset) throws IOException {
+        byte type = payload.get(0);
+
+        if (type == ENTRY_RECORD) {
+            int entryID = payload.getInt(1);
+            long key = key(payload.getInt(5), entryID);
+            this.removeLive(entryID);
+            this.changedKeys.put(entryID, key);
+            this.changedOffsets.put(entryID, offset);
+            this.unindexed.put(key, offset);
+            this.liveCount++;
+            this.nextEntryID = Math.max(this.nextEntryID, entryID + 1);
+        } else if (type == DELETE_RECORD) {
+            this.removeLive(payload.getInt(1));
+            this.deadRecords++;  // The delete record itself is dropped by compaction too
+        } else if (type == FOOD_RECORD) {
+            ByteBuffer fields = payload.duplicate();
+            fields.position(1);
+            String foodName = getString(fields).toLowerCase();  // Older logs kept the caller's case
+            int calories = fields.getInt();
+            this.calorieMap.put(foodName, new CalorieTableEntry(calories, getString(fields)));
+        } else if (type == FOOD_DELETE_RECORD) {
+            ByteBuffer fields = payload.duplicate();
+            fields.position(1);
+            this.calorieMap.remove(getString(fields).toLowerCase());
+        } else {
+            throw new IOException("Unknown journal record type " + type + " at " + offset + ".");
+        }
+    }
+
+    /**
+     * Marks the current version of an entry as superseded
+     * @param entryID   ID of the entry
+     */
+    private void removeLive(int entryID) {
+        Long oldOffset = this.currentOffset(entryID);
+        if (oldOffset == null) {
+            return;
+        }
+
+        // Entries in the mapped index stay there and are skipped because they are marked as changed
+        Long oldKey = this.changedKeys.remove(entryID);
+        if (oldKey != null && oldOffset.equals(this.unindexed.get(oldKey))) {
+            this.unindexed.remove(oldKey);
+        }
+        this.changedOffsets.put(entryID, DELETED);
+        this.liveCount--;
+        this.deadRecords++;
+    }
+
+    /**
+     * @param entryID   ID of an entry
+     * @return          Log offset of the current version of the entry, or null if there is
+     *                  no such entry
+     */
+    private Long currentOffset(int entryID) {
+        Long changedOffset = this.changedOffsets.get(entryID);
+        if (changedOffset != null) {
+            return changedOffset == DELETED ? null : changedOffset;
+        }
+
+        int position = this.indexPosition(entryID);
+        return position < 0 ? null : this.indexOffset(position);
+    }
+
+    /**
+     * Appends entries with the given IDs to the log in a single write
+     * @param entries       Entries to write
+     * @param entryIDs      ID of each entry
+     * @throws IOException  If the entries cannot be written
+     */
+    private void appendEntries(List<FoodTableEntry> entries, List<Integer> entryIDs) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < entries.size(); i++) {
+            writeRecord(records, encodeEntry(entryIDs.get(i), entries.get(i)));
+        }
+
+        long offset = this.append(records.toByteArray());
+        this.applyRecords(offset, this.logLength);
+
+        // Tell the listeners the range of dates written to
+        LocalDate firstDate = null;
+        LocalDate lastDate = null;
+        for (FoodTableEntry entry : entries) {
+            LocalDate entryDate = entry.getEntryDate();
+            if (entryDate != null) {
+                firstDate = firstDate == null || entryDate.isBefore(firstDate) ? entryDate : firstDate;
+                lastDate = lastDate == null || entryDate.isAfter(lastDate) ? entryDate : lastDate;
+            }
+        }
+        this.notifyEntriesChanged(firstDate, lastDate);
+        this.compactIfNeeded();
+    }
+
+    /**
+     * Tells the entry change listeners that the entries of a date range changed
+     * @param startDate The first changed date, or null if no dated entries changed
+     * @param endDate   The last changed date
+     */
+    private void notifyEntriesChanged(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null) {
+            return;
+        }
+        for (EntryChangeListener listener : this.changeListeners) {
+            listener.entriesChanged(startDate, endDate);
+        }
+    }
+
+    /**
+     * Appends records to the end of the log
+     * @param records       Complete records, each with its length and checksum
+     * @return              Offset the records were written at
+     * @throws IOException  If the records cannot be written
+     */
+    private long append(byte[] records) throws IOException {
+        long offset = this.logLength;
+        this.logLength += writeFully(this.log, ByteBuffer.wrap(records), offset);
+        return offset;
+    }
+
+    /**
+     * Compacts the storage if enough records have been superseded or appended since the
+     * last compaction. A failed compaction leaves the current files in use, is reported by
+     * getLastError, and is only tried again after COMPACTION_RETRY_WRITES more writes.
+     */
+    private void compactIfNeeded() {
+        if (this.compactionRetryWrites > 0) {
+            this.compactionRetryWrites--;
+            return;
+        }
+
+        boolean mostlyDead = this.deadRecords >= MIN_DEAD_RECORDS && this.deadRecords > this.liveCount;
+        if (mostlyDead || this.changedOffsets.size() >= MAX_UNINDEXED_ENTRIES) {
+            try {
+                this.compact();
+                this.lastError = null;
+            } catch (IOException e) {
+                this.compactionFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Records a failed compaction and waits before trying again
+     * @param cause The failure
+     */
+    private void compactionFailed(IOException cause) {
+        this.lastError = "Journal compaction failed: " + cause.getMessage();
+        this.compactionRetryWrites = COMPACTION_RETRY_WRITES;
+    }
+
+    /**
+     * Reads one page of the entries selected by a query, continuing past the entry with
+     * the given key
+     * @param query     Range of keys and food name filter of the paged entries
+     * @param pageSize  Maximum number of entries per page
+     * @param forward   true to read the entries after the seek key, false to read before it
+     * @param seekKey   Key of the entry to continue from, or null for the first page
+     * @return          The page of entries, or null if an error is thrown
+     */
+    private FoodLogPage fetchPage(PageQuery query, int pageSize, boolean forward, Long seekKey) {
+        pageSize = Math.max(1, pageSize);
+        long fromKey = query.fromKey;
+        long toKey = query.toKey;
+        if (seekKey != null && forward) {
+            fromKey = seekKey + 1;
+        } else if (seekKey != null) {
+            toKey = seekKey - 1;
+        }
+
+        // One row more than a page is read to find out whether another page follows
+        List<Map.Entry<Integer, FoodTableEntry>> rows = new ArrayList<>();
+        int rowLimit = pageSize + 1;
+        try {
+            this.scan(fromKey, toKey, forward, query::matches, (entryID, entry) -> {
+                rows.add(new AbstractMap.SimpleImmutableEntry<>(entryID, entry));
+                return rows.size() < rowLimit;
+            });
+        } catch (IOException e) {
+            return null;
+        }
+
+        return FoodLogPage.fromRows(rows, pageSize, forward, seekKey != null, query);
+    }
+
+    /**
+     * Reads the live entries with keys in the given range, in key order
+     * @param fromKey       Lowest key to read (inclusive)
+     * @param toKey         Highest key to read (inclusive)
+     * @param forward       true to read in ascending key order, false for descending
+     * @param filter        Entries that do not match the filter are skipped
+     * @param visitor       Receives each matching entry and returns false to stop reading
+     * @throws IOException  If an entry cannot be read
+     */
+    private void scan(long fromKey, long toKey, boolean forward, Predicate<FoodTableEntry> filter
+            , EntryVisitor visitor) throws IOException {
+        this.scanKeys(fromKey, toKey, forward, (key, offset) -> {
+            FoodTableEntry entry = this.readEntry(offset);
+            return !filter.test(entry) || visitor.visit((int) key, entry);
+        });
+    }
+
+    /**
+     * Visits the keys and offsets of the live entries with keys in the given range, in key
+     * order, by merging the mapped index with the entries appended since it was written
+     * @param fromKey       Lowest key to visit (inclusive)
+     * @param toKey         Highest key to visit (inclusive)
+     * @param forward       true to visit in ascending key order, false for descending
+     * @param visitor       Receives each key and offset and returns false to stop
+     * @throws IOException  If the visitor fails
+     */
+    private void scanKeys(long fromKey, long toKey, boolean forward, KeyVisitor visitor) throws IOException {
+        if (fromKey > toKey) {
+            return;
+        }
+
+        int step = forward ? 1 : -1;
+        int i = forward ? this.lowerBound(fromKey) : this.upperBound(toKey) - 1;
+
+        NavigableMap<Long, Long> range = this.unindexed.subMap(fromKey, true, toKey, true);
+        Iterator<Map.Entry<Long, Long>> appended = (forward ? range : range.descendingMap()).entrySet().iterator();
+        Map.Entry<Long, Long> nextAppended = appended.hasNext() ? appended.next() : null;
+
+        while (true) {
+            boolean indexed = i >= 0 && i < this.indexCount
+                    && this.indexKey(i) >= fromKey && this.indexKey(i) <= toKey;
+            if (!indexed && nextAppended == null) {
+                return;
+            }
+
+            // Take whichever of the two sorted sources comes next. Indexed entries are only
+            // live if they have not changed since, and appended ones if they are the latest.
+            long key;
+            long offset;
+            boolean live;
+            if (indexed && (nextAppended == null
+                    || (forward ? this.indexKey(i) < nextAppended.getKey() : this.indexKey(i) > nextAppended.getKey()))) {
+                key = this.indexKey(i);
+                offset = this.indexOffset(i);
+                live = !this.changedOffsets.containsKey((int) key);
+                i += step;
+            } else {
+                key = nextAppended.getKey();
+                offset = nextAppended.getValue();
+                Long changedOffset = this.changedOffsets.get((int) key);
+                live = changedOffset != null && changedOffset == offset;
+                nextAppended = appended.hasNext() ? appended.next() : null;
+            }
+
+            // Skip versions that were superseded or deleted
+            if (live && !visitor.visit(key, offset)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param key   A key
+     * @return      Index of the first indexed key that is not less than the given key
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = this.indexCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.indexKey(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param key   A key
+     * @return      Index of the first indexed key that is greater than the given key
+     */
+    private int upperBound(long key) {
+        int low = 0;
+        int high = this.indexCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.indexKey(middle) <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param i Position in the index
+     * @return  Key stored at the position
+     */
+    private long indexKey(int i) {
+        return this.index.getLong(INDEX_HEADER_SIZE + i * INDEX_RECORD_SIZE);
+    }
+
+    /**
+     * @param i Position in the index
+     * @return  Log offset stored at the position
+     */
+    private long indexOffset(int i) {
+        return this.index.getLong(INDEX_HEADER_SIZE + i * INDEX_RECORD_SIZE + 8);
+    }
+
+    /**
+     * @param i Position in the ID ordered part of the index
+     * @return  Entry ID stored at the position
+     */
+    private int indexEntryID(int i) {
+        return this.index.getInt(INDEX_HEADER_SIZE + this.indexCount * INDEX_RECORD_SIZE + i * INDEX_ID_RECORD_SIZE);
+    }
+
+    /**
+     * Binary searches the ID ordered part of the index for an entry
+     * @param entryID   ID of the entry
+     * @return          Position of the entry's key in the index, or -1 if the entry is not
+     *                  in the index
+     */
+    private int indexPosition(int entryID) {
+        int low = 0;
+        int high = this.indexCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleID = this.indexEntryID(middle);
+            if (middleID < entryID) {
+                low = middle + 1;
+            } else if (middleID > entryID) {
+                high = middle - 1;
+            } else {
+                return this.index.getInt(INDEX_HEADER_SIZE + this.indexCount * INDEX_RECORD_SIZE
+                        + middle * INDEX_ID_RECORD_SIZE + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads and checks the record at the given offset
+     * @param offset        Offset of the record in the log
+     * @return              Payload of the record, or null if the record is cut short or
+     *                      fails its checksum
+     * @throws IOException  If the log cannot be read
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        if (offset + RECORD_HEADER_SIZE > this.log.size()) {
+            return null;
+        }
+        this.recordHeader.clear();
+        readFully(this.log, this.recordHeader, offset);
+        int length = this.recordHeader.getInt(0);
+        int checksum = this.recordHeader.getInt(4);
+        if (length <= 0 || offset + RECORD_HEADER_SIZE + length > this.log.size()) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(this.log, payload, offset + RECORD_HEADER_SIZE);
+        payload.flip();
+        return crc(payload) == checksum ? payload : null;
+    }
+
+    /**
+     * Reads the entry record at the given offset
+     * @param offset        Offset of the record in the log
+     * @return              The entry
+     * @throws IOException  If the record cannot be read
+     */
+    private FoodTableEntry readEntry(long offset) throws IOException {
+        ByteBuffer payload = this.readRecord(offset);
+        if (payload == null || payload.get() != ENTRY_RECORD) {
+            throw new IOException("Journal entry record at " + offset + " is damaged.");
+        }
+
+        payload.getInt();  // Entry ID, which is also stored in the key
+        int epochDay = payload.getInt();
+        String foodName = getString(payload);
+        String mealType = getString(payload);
+        double servingQuantity = payload.getDouble();
+        String entryNotes = getString(payload);
+        return new FoodTableEntry(epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay), foodName
+                , mealType, servingQuantity, entryNotes);
+    }
+
+    /**
+     * Encodes an entry record. Food names are stored in lower case, the same as in FoodLogComm.
+     */
+    private static byte[] encodeEntry(int entryID, FoodTableEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENTRY_RECORD);
+        out.writeInt(entryID);
+        out.writeInt(epochDay(entry.getEntryDate()));
+        putString(out, entry.getFoodName() == null ? null : entry.getFoodName().toLowerCase());
+        putString(out, entry.getMealType());
+        out.writeDouble(entry.getServingQuantity());
+        putString(out, entry.getEntryNotes());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a record deleting an entry
+     */
+    private static byte[] encodeDelete(int entryID) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE_RECORD);
+        out.writeInt(entryID);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a record adding the calorie details of a food
+     */
+    private static byte[] encodeFood(String foodName, int calories, String foodCategory) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FOOD_RECORD);
+        putString(out, foodName.toLowerCase());
+        out.writeInt(calories);
+        putString(out, foodCategory);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a record deleting the calorie details of a food
+     */
+    private static byte[] encodeFoodDelete(String foodName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FOOD_DELETE_RECORD);
+        putString(out, foodName);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a complete record, with its length and checksum, for the given payload
+     */
+    private static void writeRecord(ByteArrayOutputStream records, byte[] payload) throws IOException {
+        DataOutputStream out = new DataOutputStream(records);
+        out.writeInt(payload.length);
+        out.writeInt(crc(ByteBuffer.wrap(payload)));
+        out.write(payload);
+    }
+
+    /**
+     * Writes a String as its UTF-8 length followed by its bytes, or a length of -1 for null
+     */
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by putString
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length
+                , StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * @param logID Random ID identifying the log
+     * @return      The header written at the start of a log
+     */
+    private static ByteBuffer logHeader(long logID) {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putShort(LOG_FORMAT_VERSION).putLong(logID).flip();
+        return header;
+    }
+
+    /**
+     * @param buffer    Bytes to check, from the buffer's position to its limit
+     * @return          CRC32 checksum of the bytes
+     */
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Keys order entries by entry date then entry ID
+     * @param epochDay  Epoch day of the entry date, or NO_DATE
+     * @param entryID   ID of the entry
+     * @return          The entry's key
+     */
+    private static long key(int epochDay, int entryID) {
+        return ((long) epochDay << 32) | (entryID & 0xFFFFFFFFL);
+    }
+
+    private static long key(LocalDate entryDate, int entryID) {
+        return key(epochDay(entryDate), entryID);
+    }
+
+    /**
+     * @return  The lowest key on the given date
+     */
+    private static long firstKey(LocalDate date) {
+        return key(epochDay(date), 0);
+    }
+
+    /**
+     * @return  The highest key on the given date
+     */
+    private static long lastKey(LocalDate date) {
+        return key(epochDay(date), -1);
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done with the channel
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Deleted on the next open if it is still unused
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal.");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Receives the entries read by scan
+     */
+    @FunctionalInterface
+    private interface EntryVisitor {
+        boolean visit(int entryID, FoodTableEntry entry) throws IOException;
+    }
+
+    /**
+     * Receives the keys and offsets visited by scanKeys
+     */
+    @FunctionalInterface
+    private interface KeyVisitor {
+        boolean visit(long key, long offset) throws IOException;
+    }
+
+    /**
+     * Range of keys and optional food name filter selecting the entries of a paged query
+     */
+    private static class PageQuery {
+        private final long fromKey;
+        private final long toKey;
+        private final String foodNameFilter;  // Lower case text food names must contain, or null
+
+        PageQuery(long fromKey, long toKey, String foodNameFilter) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.foodNameFilter = foodNameFilter;
+        }
+
+        boolean matches(FoodTableEntry entry) {
+            return this.foodNameFilter == null
+                    || (entry.getFoodName() != null && entry.getFoodName().contains(this.foodNameFilter));
+        }
+    }
+}
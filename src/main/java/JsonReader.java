@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the flat JSON objects sent in request bodies to the FoodLogServer.
+ * Member values may be strings, numbers, booleans, or null. Nested objects
+ * and arrays are rejected, since no request needs them.
+ *
+ * @author iDoc1
+ *
+ */
+public class JsonReader {
+
+    private final String json;
+    private int position = 0;
+
+    /**
+     * Constructs a JsonReader
+     * @param json  The JSON text to read
+     */
+    private JsonReader(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Reads a flat JSON object
+     * @param json          The JSON text, holding one object
+     * @return              Member names mapped to a String, Double, Boolean, or null
+     *                      value, in the order they were given
+     * @throws IOException  If the text is not a flat JSON object
+     */
+    public static Map<String, Object> readObject(String json) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        Map<String, Object> members = new LinkedHashMap<>();
+
+        reader.expect('{');
+        if (reader.peek() == '}') {
+            reader.position++;
+        } else {
+            while (true) {
+                reader.skipWhitespace();
+                String name = reader.readString();
+                reader.expect(':');
+                members.put(name, reader.readValue());
+
+                char next = reader.next();
+                if (next == '}') {
+                    break;
+                } else if (next != ',') {
+                    throw reader.error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        reader.skipWhitespace();
+        if (reader.position < json.length()) {
+            throw reader.error("Unexpected text after the object");
+        }
+        return members;
+    }
+
+    /**
+     * Reads a member value
+     */
+    private Object readValue() throws IOException {
+        char c = this.peek();
+        if (c == '"') {
+            return this.readString();
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            return this.readNumber();
+        } else if (this.json.startsWith("true", this.position)) {
+            this.position += 4;
+            return Boolean.TRUE;
+        } else if (this.json.startsWith("false", this.position)) {
+            this.position += 5;
+            return Boolean.FALSE;
+        } else if (this.json.startsWith("null", this.position)) {
+            this.position += 4;
+            return null;
+        }
+        throw this.error("Expected a string, number, boolean, or null");
+    }
+
+    /**
+     * Reads a quoted String, unescaping it
+     */
+    private String readString() throws IOException {
+        if (this.position >= this.json.length() || this.json.charAt(this.position) != '"') {
+            throw this.error("Expected a string");
+        }
+        this.position++;
+
+        StringBuilder value = new StringBuilder();
+        while (this.position < this.json.length()) {
+            char c = this.json.charAt(this.position++);
+            if (c == '"') {
+                return value.toString();
+            } else if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+
+            if (this.position >= this.json.length()) {
+                break;
+            }
+            char escaped = this.json.charAt(this.position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append(escaped);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (this.position + 4 > this.json.length()) {
+                        throw this.error("Incomplete unicode escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(this.json.substring(this.position
+                                , this.position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw this.error("Invalid unicode escape");
+                    }
+                    this.position += 4;
+                    break;
+                default:
+                    throw this.error("Invalid escape");
+            }
+        }
+        throw this.error("Unterminated string");
+    }
+
+    /**
+     * Reads a number
+     */
+    private Double readNumber() throws IOException {
+        int start = this.position;
+        while (this.position < this.json.length() && "+-0123456789.eE".indexOf(this.json.charAt(this.position)) >= 0) {
+            this.position++;
+        }
+
+        try {
+            return Double.valueOf(this.json.substring(start, this.position));
+        } catch (NumberFormatException e) {
+            throw this.error("Invalid number");
+        }
+    }
+
+    /**
+     * Skips whitespace then consumes the given character
+     */
+    private void expect(char expected) throws IOException {
+        if (this.next() != expected) {
+            throw this.error("Expected '" + expected + "'");
+        }
+    }
+
+    /**
+     * Skips whitespace then consumes the next character
+     */
+    private char next() throws IOException {
+        char c = this.peek();
+        this.position++;
+        return c;
+    }
+
+    /**
+     * Skips whitespace then returns the next character without consuming it
+     */
+    private char peek() throws IOException {
+        this.skipWhitespace();
+        if (this.position >= this.json.length()) {
+            throw this.error("Unexpected end of JSON");
+        }
+        return this.json.charAt(this.position);
+    }
+
+    /**
+     * Moves past any whitespace
+     */
+    private void skipWhitespace() {
+        while (this.position < this.json.length() && Character.isWhitespace(this.json.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    /**
+     * @return  An exception describing what is wrong at the current position
+     */
+    private IOException error(String message) {
+        return new IOException("Invalid JSON at position " + this.position + ": " + message + ".");
+    }
+}
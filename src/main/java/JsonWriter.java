@@ -0,0 +1,247 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes JSON to a Writer as it is produced, so large arrays such as the
+ * entries of a long date range are sent without first being built up in
+ * memory. Commas between values and names are added automatically. Numbers
+ * that are not finite are written as null, since JSON cannot hold them.
+ *
+ * @author iDoc1
+ *
+ */
+public class JsonWriter implements Closeable {
+
+    private final Writer writer;
+
+    // One element per open object or array, true until its first value is written
+    private final Deque<Boolean> firstValue = new ArrayDeque<>();
+    private boolean afterName = false;
+
+    /**
+     * Constructs a JsonWriter
+     * @param writer    Destination of the JSON, which should be buffered
+     */
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Opens an object
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter beginObject() throws IOException {
+        this.beforeValue();
+        this.writer.write('{');
+        this.firstValue.push(true);
+        return this;
+    }
+
+    /**
+     * Closes the innermost open object
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter endObject() throws IOException {
+        this.firstValue.pop();
+        this.writer.write('}');
+        return this;
+    }
+
+    /**
+     * Opens an array
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter beginArray() throws IOException {
+        this.beforeValue();
+        this.writer.write('[');
+        this.firstValue.push(true);
+        return this;
+    }
+
+    /**
+     * Closes the innermost open array
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter endArray() throws IOException {
+        this.firstValue.pop();
+        this.writer.write(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the innermost open object
+     * @param name          Member name
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter name(String name) throws IOException {
+        this.beforeValue();
+        this.writeString(name);
+        this.writer.write(':');
+        this.afterName = true;
+        return this;
+    }
+
+    /**
+     * @param value         A String, or null
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter value(String value) throws IOException {
+        this.beforeValue();
+        if (value == null) {
+            this.writer.write("null");
+        } else {
+            this.writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * @param value         A number
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter value(double value) throws IOException {
+        this.beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            this.writer.write("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            this.writer.write(Long.toString((long) value));
+        } else {
+            this.writer.write(Double.toString(value));
+        }
+        return this;
+    }
+
+    /**
+     * @param value         A whole number
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter value(long value) throws IOException {
+        this.beforeValue();
+        this.writer.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * @param value         A boolean
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        this.beforeValue();
+        this.writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes a food log entry as an object
+     * @param entryID       ID of the entry
+     * @param entry         The entry
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter entry(int entryID, FoodTableEntry entry) throws IOException {
+        return this.beginObject()
+                .name("entryID").value(entryID)
+                .name("entryDate").value(entry.getEntryDate() == null ? null : entry.getEntryDate().toString())
+                .name("foodName").value(entry.getFoodName())
+                .name("mealType").value(entry.getMealType())
+                .name("servingQuantity").value(entry.getServingQuantity())
+                .name("entryNotes").value(entry.getEntryNotes())
+                .endObject();
+    }
+
+    /**
+     * Writes a data report as an object
+     * @param dataReport    The report
+     * @return              This writer
+     * @throws IOException  If the JSON cannot be written
+     */
+    public JsonWriter dataReport(DataReport dataReport) throws IOException {
+        this.beginObject()
+                .name("totalCalories").value(dataReport.getTotalCalories())
+                .name("mealCount").value(dataReport.getMealCount())
+                .name("caloriesPerMeal").value(dataReport.getCaloriesPerMeal());
+
+        this.name("mealTypeCount").beginObject();
+        for (MealType mealType : MealType.values()) {
+            this.name(mealType.getMealName()).value(dataReport.getMealTypeCount(mealType));
+        }
+        this.endObject();
+
+        this.name("mealCategoryCount").beginObject();
+        for (FoodCategory category : FoodCategory.values()) {
+            this.name(category.getCategoryName()).value(dataReport.getMealCategoryCount(category));
+        }
+        return this.endObject().endObject();
+    }
+
+    /**
+     * Writes out any buffered JSON
+     * @throws IOException  If the JSON cannot be written
+     */
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Closes the underlying Writer
+     * @throws IOException  If the Writer cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    /**
+     * Writes the comma that separates a value from the one before it, unless the value
+     * follows a member name or is the first in its object or array
+     */
+    private void beforeValue() throws IOException {
+        if (this.afterName) {
+            this.afterName = false;
+            return;
+        }
+        if (!this.firstValue.isEmpty()) {
+            if (!this.firstValue.pop()) {
+                this.writer.write(',');
+            }
+            this.firstValue.push(false);
+        }
+    }
+
+    /**
+     * Writes a quoted String, escaping quotes, backslashes, and control characters
+     */
+    private void writeString(String value) throws IOException {
+        this.writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                this.writer.write('\\');
+                this.writer.write(c);
+            } else if (c == '\n') {
+                this.writer.write("\\n");
+            } else if (c == '\r') {
+                this.writer.write("\\r");
+            } else if (c == '\t') {
+                this.writer.write("\\t");
+            } else if (c < 0x20) {
+                this.writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                this.writer.write(c);
+            }
+        }
+        this.writer.write('"');
+    }
+}
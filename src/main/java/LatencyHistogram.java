@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in nanoseconds into log-linear buckets in the style of an
+ * HDR histogram, so percentiles can be read at any time without keeping every
+ * value. Values below 128 each have their own bucket, and every power of two
+ * above that is split into 64 buckets, so a percentile is never more than
+ * about 1.6% above the true value. Values longer than about 18 minutes are
+ * recorded as the longest trackable value. Recording is lock free and may be
+ * done from many threads at once.
+ *
+ * @author iDoc1
+ *
+ */
+public class LatencyHistogram {
+
+    // Buckets per power of two, which sets the precision of the histogram
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Values below this each have their own bucket
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+    // Longest trackable value, about 18 minutes in nanoseconds
+    public static final long MAX_TRACKABLE_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = index(MAX_TRACKABLE_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a single value
+     * @param value A latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long clampedValue = Math.max(0, Math.min(value, MAX_TRACKABLE_VALUE));
+
+        this.counts.incrementAndGet(index(clampedValue));
+        this.totalCount.incrementAndGet();
+        this.totalValue.addAndGet(clampedValue);
+        this.maxValue.accumulateAndGet(clampedValue, Math::max);
+    }
+
+    /**
+     * @return  The number of values recorded
+     */
+    public long getCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * @return  The mean of the recorded values, or 0 if there are none
+     */
+    public double getMean() {
+        long count = this.totalCount.get();
+        return count == 0 ? 0 : (double) this.totalValue.get() / count;
+    }
+
+    /**
+     * @return  The largest recorded value, or 0 if there are none
+     */
+    public long getMax() {
+        return this.maxValue.get();
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are at or below
+     * @param percentile    A percentage from 0 to 100
+     * @return              The highest value in the bucket holding the percentile, or 0
+     *                      if no values are recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        // Sum the buckets, which may be recorded to while they are read
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        // Find the bucket that holds the rank of the percentile
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), this.maxValue.get());
+            }
+        }
+        return this.maxValue.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded while the histogram is reset may be
+     * partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.totalCount.set(0);
+        this.totalValue.set(0);
+        this.maxValue.set(0);
+    }
+
+    /**
+     * @return  The bucket a value from 0 to MAX_TRACKABLE_VALUE is counted in
+     */
+    private static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        // Shift the value down until it falls within the top half of a linear range
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return  The highest value counted in the given bucket
+     */
+    private static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * The types of meals recognized by the food log. Each meal type has an
+ * index that DataReport uses to count meals in a plain array.
+ *
+ * @author iDoc1
+ *
+ */
+public enum MealType {
+    BREAKFAST("breakfast"),
+    BRUNCH("brunch"),
+    LUNCH("lunch"),
+    DINNER("dinner"),
+    SNACK("snack");
+
+    private final String mealName;
+
+    MealType(String mealName) {
+        this.mealName = mealName;
+    }
+
+    /**
+     * @return  The meal type as it is stored in the food log
+     */
+    public String getMealName() {
+        return this.mealName;
+    }
+
+    /**
+     * Returns the MealType matching the name stored in the food log
+     * @param mealName  Meal type (breakfast, brunch, lunch, dinner, or snack)
+     * @return          The matching MealType, or null if the name is not a meal type
+     */
+    public static MealType fromName(String mealName) {
+        if (mealName == null) {
+            return null;
+        }
+
+        switch (mealName) {
+            case "breakfast":
+                return BREAKFAST;
+            case "brunch":
+                return BRUNCH;
+            case "lunch":
+                return LUNCH;
+            case "dinner":
+                return DINNER;
+            case "snack":
+                return SNACK;
+            default:
+                return null;
+        }
+    }
+}
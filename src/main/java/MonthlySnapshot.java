@@ -0,0 +1,317 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A read-only, column oriented copy of one closed-out month of the food log,
+ * used for reports over past months. Food names and meal types are stored
+ * once in dictionaries and each entry refers to them by position, entry dates
+ * are stored as epoch days, and serving quantities as floats. Each column is
+ * stored contiguously and rows are sorted by entry date, so a report reads the
+ * memory-mapped columns from start to end after a binary search for its date
+ * range. Entry IDs and entry notes are not kept since reports do not use them.
+ *
+ * @author iDoc1
+ *
+ */
+public class MonthlySnapshot {
+
+    private static final int MAGIC = 0x46534E50;  // "FSNP"
+    private static final short FORMAT_VERSION = 1;
+
+    private final YearMonth month;
+    private final int rowCount;
+    private final String[] foodNames;
+    private final String[] mealTypes;
+
+    // Columns, one value per row
+    private final IntBuffer epochDays;
+    private final IntBuffer foodIDs;
+    private final FloatBuffer servingQuantities;
+    private final ByteBuffer mealTypeIDs;
+
+    /**
+     * Constructs a MonthlySnapshot over a mapped snapshot file
+     * @param buffer        The whole snapshot file
+     * @param file          Path of the snapshot file, used in error messages
+     * @throws IOException  If the file is not a snapshot file
+     */
+    private MonthlySnapshot(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+            throw new IOException(file + " is not a food log snapshot.");
+        }
+
+        // Read the header and dictionaries
+        this.month = YearMonth.from(LocalDate.ofEpochDay(buffer.getInt()));
+        this.rowCount = buffer.getInt();
+        this.foodNames = new String[buffer.getInt()];
+        this.mealTypes = new String[buffer.getInt()];
+        for (int i = 0; i < this.foodNames.length; i++) {
+            this.foodNames[i] = getString(buffer);
+        }
+        for (int i = 0; i < this.mealTypes.length; i++) {
+            this.mealTypes[i] = getString(buffer);
+        }
+
+        // Columns follow the dictionaries in the order they are written
+        this.epochDays = slice(buffer, this.rowCount * Integer.BYTES).asIntBuffer();
+        this.foodIDs = slice(buffer, this.rowCount * Integer.BYTES).asIntBuffer();
+        this.servingQuantities = slice(buffer, this.rowCount * Float.BYTES).asFloatBuffer();
+        this.mealTypeIDs = slice(buffer, this.rowCount);
+    }
+
+    /**
+     * Opens a snapshot file by mapping it into memory
+     * @param file          Path of the snapshot file
+     * @return              The snapshot
+     * @throws IOException  If the file cannot be read or is not a snapshot file
+     */
+    public static MonthlySnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new MonthlySnapshot(mapped, file);
+            } catch (RuntimeException e) {
+                throw new IOException(file + " is damaged.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of a month to a snapshot file. The file is written beside
+     * the destination and then moved over it, so a reader never sees half a snapshot.
+     * @param file          Path of the snapshot file, which is replaced if it exists
+     * @param month         The month the entries belong to
+     * @param entries       Entries of the month. Entries dated outside of the month
+     *                      are skipped.
+     * @return              Number of entries written
+     * @throws IOException  If the file cannot be written
+     */
+    public static int write(Path file, YearMonth month, Iterable<FoodTableEntry> entries) throws IOException {
+        int firstDay = (int) month.atDay(1).toEpochDay();
+        int lastDay = (int) month.atEndOfMonth().toEpochDay();
+
+        // Assign dictionary IDs and keep the rows of the month
+        HashMap<String, Integer> foodDictionary = new HashMap<>();
+        HashMap<String, Integer> mealDictionary = new HashMap<>();
+        List<String> foodNames = new ArrayList<>();
+        List<String> mealTypes = new ArrayList<>();
+        List<FoodTableEntry> rows = new ArrayList<>();
+
+        for (FoodTableEntry entry : entries) {
+            if (entry.getEntryDate() == null || entry.getEntryDate().toEpochDay() < firstDay
+                    || entry.getEntryDate().toEpochDay() > lastDay) {
+                continue;
+            }
+            if (!foodDictionary.containsKey(entry.getFoodName())) {
+                foodDictionary.put(entry.getFoodName(), foodNames.size());
+                foodNames.add(entry.getFoodName());
+            }
+            if (!mealDictionary.containsKey(entry.getMealType())) {
+                if (mealTypes.size() > 255) {
+                    throw new IOException("Too many meal types in " + month + " for a snapshot.");
+                }
+                mealDictionary.put(entry.getMealType(), mealTypes.size());
+                mealTypes.add(entry.getMealType());
+            }
+            rows.add(entry);
+        }
+        rows.sort((a, b) -> a.getEntryDate().compareTo(b.getEntryDate()));
+
+        // Header and dictionaries
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeInt(firstDay);
+        out.writeInt(rows.size());
+        out.writeInt(foodNames.size());
+        out.writeInt(mealTypes.size());
+        for (String foodName : foodNames) {
+            putString(out, foodName);
+        }
+        for (String mealType : mealTypes) {
+            putString(out, mealType);
+        }
+
+        // Columns
+        int rowCount = rows.size();
+        ByteBuffer columns = ByteBuffer.allocate(rowCount * (Integer.BYTES + Integer.BYTES + Float.BYTES + 1));
+        for (FoodTableEntry row : rows) {
+            columns.putInt((int) row.getEntryDate().toEpochDay());
+        }
+        for (FoodTableEntry row : rows) {
+            columns.putInt(foodDictionary.get(row.getFoodName()));
+        }
+        for (FoodTableEntry row : rows) {
+            columns.putFloat((float) row.getServingQuantity());
+        }
+        for (FoodTableEntry row : rows) {
+            columns.put(mealDictionary.get(row.getMealType()).byteValue());
+        }
+        columns.flip();
+
+        // Write beside the destination then move it into place
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE
+                , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header.toByteArray());
+            while (headerBuffer.hasRemaining()) {
+                channel.write(headerBuffer);
+            }
+            while (columns.hasRemaining()) {
+                channel.write(columns);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return rowCount;
+    }
+
+    /**
+     * @return  The month this snapshot holds
+     */
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    /**
+     * @return  Number of entries in this snapshot
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return  Number of distinct food names in this snapshot
+     */
+    public int getFoodCount() {
+        return foodNames.length;
+    }
+
+    /**
+     * @param foodID    Dictionary ID of a food name
+     * @return          The food name
+     */
+    public String getFoodName(int foodID) {
+        return foodNames[foodID];
+    }
+
+    /**
+     * @return  Number of distinct meal types in this snapshot
+     */
+    public int getMealTypeCount() {
+        return mealTypes.length;
+    }
+
+    /**
+     * @param mealTypeID    Dictionary ID of a meal type
+     * @return              The meal type
+     */
+    public String getMealType(int mealTypeID) {
+        return mealTypes[mealTypeID];
+    }
+
+    /**
+     * @param row   Row number
+     * @return      Entry date of the row as an epoch day
+     */
+    public int getEpochDay(int row) {
+        return epochDays.get(row);
+    }
+
+    /**
+     * @param row   Row number
+     * @return      Dictionary ID of the row's food name
+     */
+    public int getFoodID(int row) {
+        return foodIDs.get(row);
+    }
+
+    /**
+     * @param row   Row number
+     * @return      Dictionary ID of the row's meal type
+     */
+    public int getMealTypeID(int row) {
+        return mealTypeIDs.get(row) & 0xFF;
+    }
+
+    /**
+     * @param row   Row number
+     * @return      Serving quantity of the row
+     */
+    public float getServingQuantity(int row) {
+        return servingQuantities.get(row);
+    }
+
+    /**
+     * @param date  A date
+     * @return      The first row dated on or after the given date
+     */
+    public int firstRowFrom(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays.get(middle) < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Cuts the next length bytes off the front of a buffer
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Writes a String as its UTF-8 length followed by its bytes, or a length of -1 for null
+     */
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by putString
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histogram, throughput, error count, and row count of a single
+ * FoodLogComm operation or ReportBuilder stage. Instances are created and
+ * registered as MBeans by FoodLogMetrics, and may be recorded to from many
+ * threads at once.
+ *
+ * @author iDoc1
+ *
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong rowCount = new AtomicLong();
+    private volatile long startTime = System.nanoTime();
+
+    /**
+     * Constructs an OperationMetrics
+     * @param name  Name of the operation or stage
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a single call
+     * @param elapsedNanos  Time the call took in nanoseconds
+     * @param success       false if the call failed
+     */
+    public void record(long elapsedNanos, boolean success) {
+        this.latencies.record(elapsedNanos);
+        if (!success) {
+            this.errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a single call that reads or writes rows
+     * @param elapsedNanos  Time the call took in nanoseconds
+     * @param rows          Number of rows the call read or wrote, or -1 if the call failed
+     */
+    public void recordRows(long elapsedNanos, long rows) {
+        this.record(elapsedNanos, rows >= 0);
+        this.addRows(rows);
+    }
+
+    /**
+     * Adds to the number of rows read or written without recording a call, such as
+     * for the rows a partly failed call did write
+     * @param rows  Number of rows read or written
+     */
+    public void addRows(long rows) {
+        if (rows > 0) {
+            this.rowCount.addAndGet(rows);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return this.errorCount.get();
+    }
+
+    @Override
+    public long getRowCount() {
+        return this.rowCount.get();
+    }
+
+    @Override
+    public double getThroughputPerSecond() {
+        double elapsedSeconds = (System.nanoTime() - this.startTime) / NANOS_PER_SECOND;
+        return elapsedSeconds <= 0 ? 0 : this.getCount() / elapsedSeconds;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return this.latencies.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return this.latencies.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get90thPercentileMillis() {
+        return this.latencies.getValueAtPercentile(90) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return this.latencies.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return this.latencies.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        this.latencies.reset();
+        this.errorCount.set(0);
+        this.rowCount.set(0);
+        this.startTime = System.nanoTime();
+    }
+}
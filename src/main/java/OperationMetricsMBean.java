@@ -0,0 +1,65 @@
+/**
+ * Management interface of the timings and counts recorded for a single
+ * FoodLogComm operation or ReportBuilder stage, as shown by JMX clients
+ * such as JConsole. Times are in milliseconds.
+ *
+ * @author iDoc1
+ *
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * @return  Name of the operation or stage
+     */
+    String getName();
+
+    /**
+     * @return  Number of calls, including failed calls
+     */
+    long getCount();
+
+    /**
+     * @return  Number of calls that failed
+     */
+    long getErrorCount();
+
+    /**
+     * @return  Number of rows read or written by all calls, for operations that count rows
+     */
+    long getRowCount();
+
+    /**
+     * @return  Calls per second since the metrics were created or last reset
+     */
+    double getThroughputPerSecond();
+
+    /**
+     * @return  Mean time of a call
+     */
+    double getMeanMillis();
+
+    /**
+     * @return  Median time of a call
+     */
+    double getMedianMillis();
+
+    /**
+     * @return  Time that 90% of calls finished within
+     */
+    double get90thPercentileMillis();
+
+    /**
+     * @return  Time that 99% of calls finished within
+     */
+    double get99thPercentileMillis();
+
+    /**
+     * @return  Longest time of a call
+     */
+    double getMaxMillis();
+
+    /**
+     * Clears all recorded calls
+     */
+    void reset();
+}
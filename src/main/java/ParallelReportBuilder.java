@@ -0,0 +1,116 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds a DataReport over a large date range in parallel. The date range is
+ * split into partitions of whole days, each partition is streamed from the
+ * database on its own pooled connection and aggregated into its own
+ * DataReport on a ForkJoinPool, and the partial reports are merged. Since no
+ * day is split across partitions, the one breakfast, brunch, lunch, and
+ * dinner per day rule gives exactly the same counts as ReportBuilder's
+ * sequential getDataReport. Each entry's calorie details are joined on by
+ * food ID in the database, so partitions do not look foods up by name.
+ *
+ * @author iDoc1
+ *
+ */
+public class ParallelReportBuilder {
+
+    // Partitions per worker thread, so that uneven partitions still keep every worker busy
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    // Pooled connections left for other callers, such as the menu and write-behind queue
+    private static final int RESERVED_CONNECTIONS = 1;
+
+    private FoodLogComm foodLogComm;
+    private ForkJoinPool forkJoinPool;
+    private int parallelism;
+
+    /**
+     * Constructs a ParallelReportBuilder. Since each worker holds a connection while
+     * it reads its partition, the parallelism is capped below the connection pool size
+     * so that other callers can still borrow a connection while a report is built.
+     * @param foodLogComm   Object used to query the food log database
+     * @param parallelism   Number of partitions fetched and aggregated at the same time
+     */
+    public ParallelReportBuilder(FoodLogComm foodLogComm, int parallelism) {
+        this.foodLogComm = foodLogComm;
+        this.parallelism = Math.max(1, Math.min(parallelism
+                , foodLogComm.getMaxConnections() - RESERVED_CONNECTIONS));
+        this.forkJoinPool = new ForkJoinPool(this.parallelism);
+    }
+
+    /**
+     * Creates a DataReport for all entries between a start date (inclusive) and an
+     * end date (inclusive)
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if a date is invalid
+     *                  or any partition could not be read
+     */
+    public DataReport getDataReport(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            return new DataReport();
+        }
+
+        // Split the range into roughly equal partitions of whole days
+        long totalDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        long partitionDays = Math.max(1, (totalDays + this.parallelism * PARTITIONS_PER_THREAD - 1)
+                / (this.parallelism * PARTITIONS_PER_THREAD));
+
+        return this.forkJoinPool.invoke(new PartitionTask(startDate.toEpochDay(), endDate.toEpochDay()
+                , partitionDays));
+    }
+
+    /**
+     * Stops the worker threads of this builder
+     */
+    public void close() {
+        this.forkJoinPool.shutdown();
+    }
+
+    /**
+     * Builds the DataReport of a range of days, splitting the range in half until
+     * it is no longer than the partition size
+     */
+    private class PartitionTask extends RecursiveTask<DataReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final long firstDay;
+        private final long lastDay;
+        private final long partitionDays;
+
+        PartitionTask(long firstDay, long lastDay, long partitionDays) {
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.partitionDays = partitionDays;
+        }
+
+        @Override
+        protected DataReport compute() {
+
+            // Read a single partition on its own pooled connection
+            if (this.lastDay - this.firstDay + 1 <= this.partitionDays) {
+                return foodLogComm.streamCalorieDataFromDateRange(LocalDate.ofEpochDay(this.firstDay)
+                        , LocalDate.ofEpochDay(this.lastDay)
+                        , results -> new ReportBuilder(results).getJoinedDataReport());
+            }
+
+            // Split on a day boundary and build both halves in parallel
+            long middleDay = this.firstDay + (this.lastDay - this.firstDay) / 2;
+            PartitionTask left = new PartitionTask(this.firstDay, middleDay, this.partitionDays);
+            PartitionTask right = new PartitionTask(middleDay + 1, this.lastDay, this.partitionDays);
+            left.fork();
+            DataReport rightReport = right.compute();
+            DataReport leftReport = left.join();
+
+            if (leftReport == null || rightReport == null) {
+                return null;
+            }
+            leftReport.merge(rightReport);
+            return leftReport;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the monthly partitions of the food_log table, which is range
+ * partitioned on entry date. Entries without a date are kept in the
+ * p_undated partition, each month has a partition named p_yyyyMM, and every
+ * date after the last month goes into the p_future partition. New months
+ * are split off the front of p_future ahead of time, and old entries are
+ * removed by dropping the partitions of whole months, which takes a moment
+ * no matter how many entries they hold. The first monthly partition also
+ * holds any dated entries older than its month.
+ *
+ * @author iDoc1
+ *
+ */
+public class PartitionManager {
+
+    // Partition holding entries without a date, which is never dropped
+    public static final String UNDATED_PARTITION = "p_undated";
+
+    // Partition holding every date after the last monthly partition
+    public static final String FUTURE_PARTITION = "p_future";
+
+    // Entries without a date are stored on the first day MySQL supports, below every real date
+    public static final LocalDate UNDATED_DATE = LocalDate.of(1000, 1, 1);
+    public static final LocalDate FIRST_DATED_DAY = UNDATED_DATE.plusDays(1);
+
+    // Oldest month given its own partition, counted back from the last month partitioned
+    private static final int MAX_MONTHLY_PARTITIONS = 1200;
+
+    // Named lock that keeps two app instances from changing partitions at the same time
+    private static final String PARTITION_LOCK = "food_log_database.partition_maintenance";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p_'yyyyMM");
+
+    /**
+     * Gives every month up to and including the given month its own partition by
+     * splitting them off p_future. When there are no monthly partitions yet, months
+     * start from the oldest entry in p_future.
+     * @param connection    A connection to the food log database. Changing partitions
+     *                      commits any open transaction.
+     * @param throughMonth  The last month to give a partition
+     * @return              Number of partitions created
+     * @throws SQLException If the partitions cannot be read or created
+     */
+    public static int createPartitions(Connection connection, YearMonth throughMonth) throws SQLException {
+        acquireLock(connection);
+
+        try {
+            List<YearMonth> months = getMonthlyPartitions(connection);
+
+            // Continue after the last monthly partition, or start from the oldest entry
+            YearMonth firstMonth;
+            if (!months.isEmpty()) {
+                firstMonth = months.get(months.size() - 1).plusMonths(1);
+            } else {
+                LocalDate oldestDate = getOldestFutureDate(connection);
+                firstMonth = YearMonth.now();
+                if (oldestDate != null && YearMonth.from(oldestDate).isBefore(firstMonth)) {
+                    firstMonth = YearMonth.from(oldestDate);
+                }
+                if (firstMonth.isBefore(throughMonth.minusMonths(MAX_MONTHLY_PARTITIONS))) {
+                    firstMonth = throughMonth.minusMonths(MAX_MONTHLY_PARTITIONS);
+                }
+            }
+            if (firstMonth.isAfter(throughMonth)) {
+                return 0;
+            }
+
+            // Split the new months off the front of p_future in one statement
+            StringBuilder sqlString = new StringBuilder("ALTER TABLE food_log_database.food_log " +
+                    "REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (");
+            int partitionCount = 0;
+            for (YearMonth month = firstMonth; !month.isAfter(throughMonth); month = month.plusMonths(1)) {
+                sqlString.append("PARTITION ").append(partitionName(month))
+                        .append(" VALUES LESS THAN ('").append(month.plusMonths(1).atDay(1)).append("'), ");
+                partitionCount++;
+            }
+            sqlString.append("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(sqlString.toString());
+            }
+            return partitionCount;
+        } finally {
+            releaseLock(connection);
+        }
+    }
+
+    /**
+     * Drops the partitions of months that end before the given date, deleting every
+     * dated entry in them. Entries of the cutoff's own month are left in place.
+     * @param connection    A connection to the food log database. Changing partitions
+     *                      commits any open transaction.
+     * @param cutoffDate    Entries dated before this may be dropped
+     * @return              Number of partitions dropped
+     * @throws SQLException If the partitions cannot be read or dropped
+     */
+    public static int dropPartitionsBefore(Connection connection, LocalDate cutoffDate) throws SQLException {
+        acquireLock(connection);
+
+        try {
+            List<String> droppedNames = new ArrayList<>();
+            for (YearMonth month : getMonthlyPartitions(connection)) {
+                if (!month.plusMonths(1).atDay(1).isAfter(cutoffDate)) {
+                    droppedNames.add(partitionName(month));
+                }
+            }
+            if (droppedNames.isEmpty()) {
+                return 0;
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("ALTER TABLE food_log_database.food_log " +
+                        "DROP PARTITION " + String.join(", ", droppedNames));
+            }
+            return droppedNames.size();
+        } finally {
+            releaseLock(connection);
+        }
+    }
+
+    /**
+     * Returns the months that have their own partition
+     * @param connection    A connection to the food log database
+     * @return              The months in ascending order
+     * @throws SQLException If the partitions cannot be read
+     */
+    public static List<YearMonth> getMonthlyPartitions(Connection connection) throws SQLException {
+        String sqlQuery = "SELECT p.partition_name FROM information_schema.partitions p " +
+                "WHERE p.table_schema = 'food_log_database' AND p.table_name = 'food_log' " +
+                "ORDER BY p.partition_ordinal_position";
+
+        List<YearMonth> months = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(sqlQuery)) {
+            while (results.next()) {
+                String partitionName = results.getString(1);
+                if (partitionName == null || partitionName.equals(UNDATED_PARTITION)
+                        || partitionName.equals(FUTURE_PARTITION)) {
+                    continue;
+                }
+                try {
+                    months.add(YearMonth.parse(partitionName, PARTITION_NAME));
+                } catch (DateTimeParseException e) {
+                    throw new SQLException("Unexpected food_log partition " + partitionName + ".");
+                }
+            }
+        }
+        return months;
+    }
+
+    /**
+     * @param month A month
+     * @return      Name of the month's partition
+     */
+    public static String partitionName(YearMonth month) {
+        return PARTITION_NAME.format(month);
+    }
+
+    /**
+     * @return  The oldest entry date in p_future, or null if it is empty
+     */
+    private static LocalDate getOldestFutureDate(Connection connection) throws SQLException {
+        String sqlQuery = "SELECT MIN(a.entry_date) FROM food_log_database.food_log " +
+                "PARTITION (" + FUTURE_PARTITION + ") a";
+
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(sqlQuery)) {
+            return results.next() ? results.getObject(1, LocalDate.class) : null;
+        }
+    }
+
+    /**
+     * Takes the named partition lock, waiting up to the lock timeout
+     */
+    private static void acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, PARTITION_LOCK);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+
+            try (ResultSet results = statement.executeQuery()) {
+                if (!results.next() || results.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for the partition maintenance lock.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the named partition lock
+     */
+    private static void releaseLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, PARTITION_LOCK);
+            statement.executeQuery().close();
+        }
+    }
+}
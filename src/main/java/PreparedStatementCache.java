@@ -0,0 +1,205 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of PreparedStatements belonging to a single
+ * pooled connection. Statements are keyed by their SQL text and result set
+ * options, and closing a statement handed out by this cache returns it to
+ * the cache instead of closing it, so repeated calls skip re-preparation.
+ * Statements evicted from the cache are closed.
+ *
+ * @author iDoc1
+ *
+ */
+class PreparedStatementCache {
+
+    private final Connection physical;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    /**
+     * Constructs a PreparedStatementCache for the given physical connection
+     * @param physical      The connection that statements are prepared on
+     * @param maxSize       Maximum number of statements kept open
+     * @param hitCount      Counter incremented when a cached statement is reused
+     * @param missCount     Counter incremented when a statement has to be prepared
+     */
+    PreparedStatementCache(Connection physical, int maxSize, AtomicLong hitCount, AtomicLong missCount) {
+        this.physical = physical;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+
+        // Access ordered map so the eldest entry is the least recently used statement
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached statement for the given SQL, preparing and caching it if this
+     * is the first use. If the cached statement is already in use, an uncached
+     * statement is prepared instead.
+     * @param sql                   SQL text of the statement
+     * @param resultSetType         ResultSet type, or -1 for the driver default
+     * @param resultSetConcurrency  ResultSet concurrency, or -1 for the driver default
+     * @return                      A PreparedStatement whose close method returns it to this cache
+     * @throws SQLException         If the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        String key = resultSetType + ":" + resultSetConcurrency + ":" + sql;
+
+        CachedStatement cached = this.statements.get(key);
+        if (cached != null && !cached.inUse) {
+            this.hitCount.incrementAndGet();
+        } else if (cached != null) {
+            this.missCount.incrementAndGet();
+            return this.prepareUncached(sql, resultSetType, resultSetConcurrency);
+        } else {
+            this.missCount.incrementAndGet();
+            cached = new CachedStatement(this.prepareUncached(sql, resultSetType, resultSetConcurrency));
+            this.statements.put(key, cached);
+        }
+
+        cached.inUse = true;
+        return cached.newHandle();
+    }
+
+    /**
+     * Closes every statement in the cache
+     */
+    void closeAll() {
+        for (CachedStatement cached : this.statements.values()) {
+            cached.evict();
+        }
+        this.statements.clear();
+    }
+
+    /**
+     * Prepares a statement directly on the physical connection
+     */
+    private PreparedStatement prepareUncached(String sql, int resultSetType
+            , int resultSetConcurrency) throws SQLException {
+        if (resultSetType == -1) {
+            return this.physical.prepareStatement(sql);
+        }
+        return this.physical.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    /**
+     * A statement held open by the cache
+     */
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * @return  A PreparedStatement proxy whose close method returns this statement to the cache
+         */
+        PreparedStatement newHandle() {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader()
+                    , new Class<?>[]{PreparedStatement.class}, new StatementHandle(this));
+        }
+
+        /**
+         * Marks this statement as available again, or closes it if it was evicted while in use
+         */
+        void release() {
+            this.inUse = false;
+            try {
+                if (this.evicted) {
+                    this.statement.close();
+                } else {
+                    this.statement.clearParameters();
+                    this.statement.clearBatch();
+                }
+            } catch (SQLException e) {
+                this.evicted = true;
+            }
+        }
+
+        /**
+         * Removes this statement from use, closing it now unless a caller still holds it
+         */
+        void evict() {
+            this.evicted = true;
+            if (!this.inUse) {
+                try {
+                    this.statement.close();
+                } catch (SQLException e) {
+                    // Statement is discarded either way
+                }
+            }
+        }
+    }
+
+    /**
+     * Forwards calls to the cached statement until the handle is closed
+     */
+    private static class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean handleClosed = false;
+
+        StatementHandle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            // Object methods refer to the handle itself rather than the statement
+            if (method.getDeclaringClass() == Object.class) {
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return "PreparedStatementCache handle for " + this.cached.statement;
+            }
+
+            if (name.equals("close")) {
+                if (!this.handleClosed) {
+                    this.handleClosed = true;
+
+                    // Close any open results so they do not outlive this use of the statement
+                    if (this.cached.statement.getResultSet() != null) {
+                        this.cached.statement.getResultSet().close();
+                    }
+                    this.cached.release();
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return this.handleClosed || this.cached.statement.isClosed();
+            } else if (this.handleClosed) {
+                throw new SQLException("Statement has already been returned to the cache.");
+            }
+
+            try {
+                return method.invoke(this.cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,14 +1,26 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.rowset.CachedRowSet;
 
 /**
  * This class represents a Report Builder that uses a ResultSet passed to the
  * constructor. The methods in this class can be used to print the given
  * ResultSet to the console, pass the results as a Map, or compile and
  * return the results in a DataReport object. The main function of this class
- * is to take a ResultSet and build a usable report out of it.
+ * is to take a ResultSet and build a usable report out of it. Each method
+ * reads the ResultSet in a single forward pass, so forward only ResultSets
+ * streamed from the database can be used as well as scrollable ones. Tables
+ * of results are written through a buffered TableRenderer. The time taken
+ * and rows read by each stage are recorded in FoodLogMetrics under
+ * FoodLogApp:type=ReportBuilder. For streamed ResultSets the time includes
+ * fetching the rows from the database.
  *
  * @author iDoc1
  *
@@ -16,6 +28,18 @@ import java.util.HashMap;
 
 public class ReportBuilder {
 
+    // Metrics of each stage of building a report
+    private static final OperationMetrics RESULTS_MAP_STAGE = FoodLogMetrics.stage("getResultsMap");
+    private static final OperationMetrics PRINT_STAGE = FoodLogMetrics.stage("printResults");
+    private static final OperationMetrics EXPORT_STAGE = FoodLogMetrics.stage("exportResults");
+    private static final OperationMetrics DATA_REPORT_STAGE = FoodLogMetrics.stage("getDataReport");
+    private static final OperationMetrics JOINED_REPORT_STAGE = FoodLogMetrics.stage("getJoinedDataReport");
+    private static final OperationMetrics ENTRIES_REPORT_STAGE = FoodLogMetrics.stage("getEntriesDataReport");
+    private static final OperationMetrics SNAPSHOT_REPORT_STAGE = FoodLogMetrics.stage("getSnapshotDataReport");
+    private static final OperationMetrics AGGREGATED_REPORT_STAGE = FoodLogMetrics.stage("getAggregatedDataReport");
+    private static final OperationMetrics SUMMARY_REPORT_STAGE = FoodLogMetrics.stage("getSummaryDataReport");
+    private static final OperationMetrics CALORIE_MAP_STAGE = FoodLogMetrics.stage("getCalorieMap");
+
     private ResultSet results;
 
     /**
@@ -27,24 +51,26 @@ public class ReportBuilder {
     }
 
     /**
-     * Returns a HashMap where the keys are the entry IDs of each entry in this
+     * Returns a LinkedHashMap where the keys are the entry IDs of each entry in this
      * object's ResultSet field, and the values are FoodTableEntry objects containing
-     * the data stored in each column corresponding to the entry ID.
-     * @return  A HashMap<K,V> where K is the entry ID, and V is a FoodTableEntry object
+     * the data stored in each column corresponding to the entry ID. Entries are kept
+     * in the order of the ResultSet.
+     * @return  A LinkedHashMap<K,V> where K is the entry ID, and V is a FoodTableEntry object
      */
-    public HashMap<Integer, FoodTableEntry> getResultsMap() {
-        HashMap<Integer, FoodTableEntry> resultMap = new HashMap<>();
+    public LinkedHashMap<Integer, FoodTableEntry> getResultsMap() {
+        long startTime = System.nanoTime();
+        LinkedHashMap<Integer, FoodTableEntry> resultMap = new LinkedHashMap<>();
 
         // Populate HashMap with Integer-FoodTableEntry pairs
         try {
 
             // Ensure cursor is at front of ResultSet
-            this.results.beforeFirst();
+            this.rewind();
 
             // Iterate over results and add each row to the Map
             while (results.next()) {
                 int entryID = results.getInt("entry_id");
-                String entryDate = results.getString("entry_date");
+                LocalDate entryDate = this.getEntryDate();
                 String foodName = results.getString("food_name");
                 String mealType = results.getString("meal_type");
                 double servingQty = results.getDouble("serving_quantity");
@@ -57,9 +83,11 @@ public class ReportBuilder {
                 resultMap.put(entryID, foodEntry);
             }
         } catch(SQLException e) {
+            RESULTS_MAP_STAGE.recordRows(System.nanoTime() - startTime, -1);
             return null;
         }
 
+        RESULTS_MAP_STAGE.recordRows(System.nanoTime() - startTime, resultMap.size());
         return resultMap;
     }
 
@@ -70,76 +98,119 @@ public class ReportBuilder {
      */
     public void printResults() {
 
-        // Check if results are empty
-        try {
-            if (!results.isBeforeFirst()) {  // isBeforeFirst returns false if ResultSet is empty
-                System.out.println("No results found.");
-                return;
-            }
-        } catch (SQLException e) {
-            System.out.println("Error occurred while checking if data exists.");
-            return;
+        // Print results and handle exception. The renderer is flushed before any error is printed.
+        long startTime = System.nanoTime();
+        int rowCount = -1;
+        try (TableRenderer renderer = TableRenderer.toConsole()) {
+            this.renderResults(renderer);
+            rowCount = renderer.getRowCount();
+        } catch (SQLException | IOException e) {
+            System.out.println("Error occurred while fetching data.");
         }
+        PRINT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+    }
 
-        // Print column headers with spaces for column alignment
-        System.out.print("Entry ID" + "        ");
-        System.out.print("Entry Date" + "      ");
-        System.out.print("Food Name" + "                       ");
-        System.out.print("Meal Type" + "       ");
-        System.out.print("Serving Qty" + "     ");
-        System.out.println("Entry Notes");
-
-        // Print results and handle exception
-        try {
+    /**
+     * Writes all of the results to the given file or named pipe in the same table
+     * format as printResults, for bulk exports
+     * @param file  Path of the file to write, which is replaced if it exists
+     * @return      The number of rows written, or -1 if the results could not be
+     *              read or the file could not be written
+     */
+    public int exportResults(Path file) {
+        long startTime = System.nanoTime();
+        int rowCount = -1;
+        try (TableRenderer renderer = TableRenderer.toFile(file)) {
+            this.renderResults(renderer);
+            rowCount = renderer.getRowCount();
+        } catch (SQLException | IOException e) {
+
+            // Rows may have been counted before closing the file failed
+            rowCount = -1;
+        }
 
-            // Ensure cursor is a front of ResultSet
-            this.results.beforeFirst();
+        EXPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+        return rowCount;
+    }
 
-            // Loop through results set and add the proper number of spaces
-            while (results.next()) {
-                Integer entryID = results.getInt("entry_id");
-                System.out.print(entryID);
-                insertSpaces(entryID.toString(), 16);
+    /**
+     * Prints the given entries in the same table format as printResults, such as a
+     * page of entries returned by FoodLogComm.fetchPageFromDateRange
+     * @param entries   Entries to print keyed by entry ID, in the order to print them
+     */
+    public static void printEntries(Map<Integer, FoodTableEntry> entries) {
+        try (TableRenderer renderer = TableRenderer.toConsole()) {
+            if (entries.isEmpty()) {
+                renderer.writeMessage("No results found.");
+                return;
+            }
 
-                String entryDate = results.getString("entry_date");
-                System.out.print(entryDate);
-                insertSpaces(entryDate, 16);
+            renderer.writeHeader();
+            for (Map.Entry<Integer, FoodTableEntry> entry : entries.entrySet()) {
+                FoodTableEntry foodEntry = entry.getValue();
+                renderer.writeRow(entry.getKey(), String.valueOf(foodEntry.getEntryDate()), foodEntry.getFoodName()
+                        , foodEntry.getMealType(), foodEntry.getServingQuantity(), foodEntry.getEntryNotes());
+            }
+        } catch (IOException e) {
+            System.out.println("Error occurred while printing data.");
+        }
+    }
 
-                String foodName = results.getString("food_name");
-                System.out.print(foodName);
-                insertSpaces(foodName, 32);
+    /**
+     * Renders all of the results as a table in a single pass
+     * @param renderer      Destination of the table
+     * @throws SQLException If the results cannot be read
+     * @throws IOException  If the table cannot be written
+     */
+    private void renderResults(TableRenderer renderer) throws SQLException, IOException {
 
-                String mealType = results.getString("meal_type");
-                System.out.print(mealType);
-                insertSpaces(mealType, 16);
+        // Ensure cursor is a front of ResultSet
+        this.rewind();
 
-                Double servingQty = results.getDouble("serving_quantity");
-                System.out.print(servingQty);
-                insertSpaces(servingQty.toString(), 16);
+        boolean headerPrinted = false;
+        while (results.next()) {
 
-                String entryNotes = results.getString("entry_notes");
-                System.out.println(entryNotes);
+            // Print column headers before the first row
+            if (!headerPrinted) {
+                renderer.writeHeader();
+                headerPrinted = true;
             }
-        } catch (SQLException e) {
-            System.out.println("Error occurred while fetching data.");
+
+            renderer.writeRow(results.getInt("entry_id"), results.getString("entry_date")
+                    , results.getString("food_name"), results.getString("meal_type")
+                    , results.getDouble("serving_quantity"), results.getString("entry_notes"));
+        }
+
+        // Header is only printed once a row is found
+        if (!headerPrinted) {
+            renderer.writeMessage("No results found.");
         }
     }
 
     /**
-     * Inserts the proper number of spaces necessary to keep columns aligned. Number
-     * of spaces is determined using the length of the given String and the given
-     * column width parameter. The maximum width of any column in the food log mySQL
-     * database is 30 characters (except for the last column), so the maximum column
-     * width given as a parameter should be limited to 32 characters.
-     * @param strEntry String to insert spaces after
-     * @param colWidth Desired width of column in number of characters
+     * Reads the entry date of the current row as a LocalDate. The MySQL driver
+     * converts the column directly, while the disconnected CachedRowSets returned
+     * by the FoodLogComm fetch methods do not support java.time types and are read
+     * through java.sql.Date instead.
+     * @return              The entry date of the current row, or null if it has none
+     * @throws SQLException If the entry date cannot be read
      */
-    private void insertSpaces(String strEntry, int colWidth) {
-        int numOfSpaces = colWidth - strEntry.length();
+    private LocalDate getEntryDate() throws SQLException {
+        if (this.results instanceof CachedRowSet) {
+            Date entryDate = this.results.getDate("entry_date");
+            return entryDate == null ? null : entryDate.toLocalDate();
+        }
+        return this.results.getObject("entry_date", LocalDate.class);
+    }
 
-        // Print spaces
-        for (int i = 1; i <= numOfSpaces; i++) {
-            System.out.print(" ");
+    /**
+     * Moves the cursor of a scrollable ResultSet back to the front so that it can be
+     * read again. Forward only ResultSets cannot be rewound and are read as they are.
+     * @throws SQLException If the ResultSet cannot be repositioned
+     */
+    private void rewind() throws SQLException {
+        if (this.results.getType() != ResultSet.TYPE_FORWARD_ONLY) {
+            this.results.beforeFirst();
         }
     }
 
@@ -152,58 +223,311 @@ public class ReportBuilder {
      */
     public DataReport getDataReport(ResultSet foodDetailsData) {
 
-        // Initialize DataReport object
-        DataReport dataReport = new DataReport();
-
         // Pull all given food calories details from ResultSet into a Map
         HashMap<String, CalorieTableEntry> calorieMap = this.getCalorieMap(foodDetailsData);
+        if (calorieMap == null) {
+            return null;
+        }
+
+        return this.getDataReport(calorieMap);
+    }
+
+    /**
+     * Creates a DataReport object to store total calories, meal count, and meal
+     * type count for all food eaten in this object's ResultSet using calorie data
+     * that has already been loaded, such as from FoodLogComm.getCalorieMap
+     * @param calorieMap    A Map of food name to calorie details for all foods
+     * @return              An object containing total calories, meal count, and meal
+     *                      type count for all food eaten in this object's ResultSet
+     */
+    public DataReport getDataReport(Map<String, CalorieTableEntry> calorieMap) {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+
+        // Initialize DataReport object
+        DataReport dataReport = new DataReport();
 
         try {
-            results.beforeFirst();
+            this.rewind();
 
-            // Create Map to store previous meals by date to get accurate meal counts
-            HashMap<String, ArrayList<String>> mealsByDate = new HashMap<>();
+            // Track previous meals by date to get accurate meal counts
+            DailyMealTracker mealsByDate = new DailyMealTracker();
 
             // Iterate through data in ResultSet
             while (results.next()) {
-                String entryDate = results.getString("entry_date");
-                String foodName = results.getString("food_name");
+                rowCount++;
+                addEntry(dataReport, mealsByDate, calorieMap, this.getEntryDate(), results.getString("food_name")
+                        , MealType.fromName(results.getString("meal_type")), results.getDouble("serving_quantity"));
+            }
+        } catch (SQLException e) {
+            DATA_REPORT_STAGE.recordRows(System.nanoTime() - startTime, -1);
+            return null;
+        }
+
+        DATA_REPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+        return dataReport;
+    }
+
+    /**
+     * Creates a DataReport from a ResultSet of food log entries that already holds the
+     * calorie details of each entry's food, as streamed by
+     * FoodLogComm.streamCalorieDataFromDateRange. Foods were matched to their calorie
+     * details by food ID in the database, so no calorie map is needed.
+     * @return  An object containing total calories, meal count, and meal type count
+     *          for all food eaten in this object's ResultSet, or null if an error is thrown
+     */
+    public DataReport getJoinedDataReport() {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+        DataReport dataReport = new DataReport();
+
+        try {
+            this.rewind();
+
+            // Track previous meals by date to get accurate meal counts
+            DailyMealTracker mealsByDate = new DailyMealTracker();
+
+            while (results.next()) {
+                rowCount++;
+
+                // Foods without calorie details have no joined calorie row
+                CalorieTableEntry calorieEntry = null;
+                results.getInt("calorie_food_id");
+                if (!results.wasNull()) {
+                    calorieEntry = new CalorieTableEntry(results.getInt("calories_per_serving")
+                            , results.getString("food_category"));
+                }
+
+                LocalDate entryDate = this.getEntryDate();
+                long epochDay = entryDate == null ? DailyMealTracker.NO_DATE : entryDate.toEpochDay();
+                addEntry(dataReport, mealsByDate, calorieEntry, epochDay
+                        , MealType.fromName(results.getString("meal_type")), results.getDouble("serving_quantity"));
+            }
+        } catch (SQLException e) {
+            JOINED_REPORT_STAGE.recordRows(System.nanoTime() - startTime, -1);
+            return null;
+        }
+
+        JOINED_REPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+        return dataReport;
+    }
+
+    /**
+     * Creates a DataReport for the given entries, applying the same rules as
+     * getDataReport, for storages that read entries without a ResultSet
+     * @param entries       Food log entries to report on
+     * @param calorieMap    A Map of food name to calorie details for all foods
+     * @return              An object containing total calories, meal count, and meal
+     *                      type count for all of the given entries
+     */
+    public static DataReport getDataReport(Iterable<FoodTableEntry> entries
+            , Map<String, CalorieTableEntry> calorieMap) {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+        DataReport dataReport = new DataReport();
+        DailyMealTracker mealsByDate = new DailyMealTracker();
+
+        for (FoodTableEntry entry : entries) {
+            rowCount++;
+            addEntry(dataReport, mealsByDate, calorieMap, entry.getEntryDate(), entry.getFoodName()
+                    , MealType.fromName(entry.getMealType()), entry.getServingQuantity());
+        }
+
+        ENTRIES_REPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+        return dataReport;
+    }
+
+    /**
+     * Creates a DataReport from the entries of a monthly snapshot that fall between a
+     * start date (inclusive) and an end date (inclusive). Each food name and meal type
+     * in the snapshot's dictionaries is looked up once, then the columns are scanned
+     * row by row.
+     * @param snapshot      A snapshot of a closed-out month
+     * @param startDate     The start of the date range to report on (inclusive)
+     * @param endDate       The end of the date range to report on (inclusive)
+     * @param calorieMap    A Map of food name to calorie details for all foods
+     * @return              An object containing total calories, meal count, and meal type
+     *                      count for the snapshot's entries in the date range
+     */
+    public static DataReport getDataReport(MonthlySnapshot snapshot, LocalDate startDate, LocalDate endDate
+            , Map<String, CalorieTableEntry> calorieMap) {
+        long startTime = System.nanoTime();
+        DataReport dataReport = new DataReport();
+        DailyMealTracker mealsByDate = new DailyMealTracker();
+
+        // Resolve the dictionaries
+        CalorieTableEntry[] calorieEntries = new CalorieTableEntry[snapshot.getFoodCount()];
+        for (int foodID = 0; foodID < calorieEntries.length; foodID++) {
+            calorieEntries[foodID] = calorieMap.get(snapshot.getFoodName(foodID));
+        }
+        MealType[] mealTypes = new MealType[snapshot.getMealTypeCount()];
+        for (int mealTypeID = 0; mealTypeID < mealTypes.length; mealTypeID++) {
+            mealTypes[mealTypeID] = MealType.fromName(snapshot.getMealType(mealTypeID));
+        }
+
+        // Rows are sorted by date, so the range ends at the first row past the end date
+        long lastDay = endDate.toEpochDay();
+        int endRow = snapshot.getRowCount();
+        int firstRow = snapshot.firstRowFrom(startDate);
+        int row = firstRow;
+        for (; row < endRow && snapshot.getEpochDay(row) <= lastDay; row++) {
+            addEntry(dataReport, mealsByDate, calorieEntries[snapshot.getFoodID(row)], snapshot.getEpochDay(row)
+                    , mealTypes[snapshot.getMealTypeID(row)], snapshot.getServingQuantity(row));
+        }
+
+        SNAPSHOT_REPORT_STAGE.recordRows(System.nanoTime() - startTime, row - firstRow);
+        return dataReport;
+    }
+
+    /**
+     * Adds a single food log entry to a DataReport
+     * @param dataReport        The report to add the entry to
+     * @param mealsByDate       Meals already counted on each date of the report
+     * @param calorieMap        A Map of food name to calorie details for all foods
+     * @param entryDate         Entry date of the entry, which may be null
+     * @param foodName          Food name of the entry
+     * @param mealType          Meal type of the entry, or null if it is not a known meal type
+     * @param servingQuantity   Serving quantity of the entry
+     */
+    private static void addEntry(DataReport dataReport, DailyMealTracker mealsByDate
+            , Map<String, CalorieTableEntry> calorieMap, LocalDate entryDate, String foodName
+            , MealType mealType, double servingQuantity) {
+        long epochDay = entryDate == null ? DailyMealTracker.NO_DATE : entryDate.toEpochDay();
+        addEntry(dataReport, mealsByDate, calorieMap.get(foodName), epochDay, mealType, servingQuantity);
+    }
+
+    /**
+     * Adds a single food log entry to a DataReport given the calorie details of its food
+     * @param dataReport        The report to add the entry to
+     * @param mealsByDate       Meals already counted on each date of the report
+     * @param calorieEntry      Calorie details of the entry's food, or null if the food is
+     *                          not in the calorie table
+     * @param epochDay          Entry date of the entry as an epoch day, or DailyMealTracker.NO_DATE
+     * @param mealType          Meal type of the entry, or null if it is not a known meal type
+     * @param servingQuantity   Serving quantity of the entry
+     */
+    private static void addEntry(DataReport dataReport, DailyMealTracker mealsByDate
+            , CalorieTableEntry calorieEntry, long epochDay, MealType mealType, double servingQuantity) {
+
+        // Check if calorie map contains the food name before storing calories
+        int foodCalories = 0;
+        if (calorieEntry != null) {
+            foodCalories = calorieEntry.getCaloriesPerServing();
+
+            // Only increment food category count if food is found in calorie map
+            dataReport.incrementMealCategory(calorieEntry.getFoodCategory(), servingQuantity);
+        }
+
+        // Update total calorie count
+        dataReport.addTotalCalories(foodCalories, servingQuantity);
+
+        /*  Only increment meal type count if this row's meal has not already occurred
+            on this row's date. Snacks are the only exception to this rule, and they
+            are counted as many times as they occur. All other meals are only incremented
+            once per day. This only allows user to have one breakfast, brunch, lunch, or
+            dinner. If user has two dinners, those will only be counted as one meal for
+            that day.
+         */
+        if (mealType == MealType.SNACK) {
+            dataReport.incrementMealType(mealType);
+        } else if (mealType != null) {
+            if (mealsByDate.markFirstMeal(epochDay, mealType)) {
+                dataReport.incrementMealType(mealType);  // Increment meal type count
+            }
+        }
+    }
+
+    /**
+     * Creates a DataReport from a ResultSet of food log data that was already
+     * aggregated by the database, as returned by FoodLogComm.aggregateDataReport.
+     * Each row holds totals for a meal type and food category, and the rollup row
+     * for each meal type holds the number of days that meal was eaten and the number
+     * of entries for that meal.
+     * @return  An object containing total calories, meal count, and meal type count
+     *          for all food eaten in this object's ResultSet
+     */
+    public DataReport getAggregatedDataReport() {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+        DataReport dataReport = new DataReport();
+
+        try {
+            this.rewind();
+
+            while (results.next()) {
+                rowCount++;
                 String mealType = results.getString("meal_type");
-                double servingQuantity = results.getDouble("serving_quantity");
 
-                // Check if calorie map contains the food name before storing calories
-                int foodCalories = 0;
-                if (calorieMap.containsKey(foodName)) {
-                    foodCalories = calorieMap.get(foodName).getCaloriesPerServing();
+                // Skip the grand total row that spans all meal types
+                if (results.getInt("all_meal_types") == 1) {
+                    continue;
+                }
 
-                    // Only increment food category count if food is found in calorie map
-                    dataReport.incrementMealCategory(calorieMap.get(foodName).getFoodCategory(), servingQuantity);
+                if (results.getInt("all_categories") == 1) {
+
+                    /*  Meal type subtotal row. Snacks are counted as many times as they
+                        occur, while breakfast, brunch, lunch, and dinner are only counted
+                        once per day, the same as in getDataReport.
+                     */
+                    if (mealType.equals("snack")) {
+                        dataReport.addMealType(mealType, results.getInt("entry_count"));
+                    } else {
+                        dataReport.addMealType(mealType, results.getInt("day_count"));
+                    }
+                } else {
+
+                    // Only count calories and categories for foods found in the calorie table
+                    dataReport.addTotalCalories(results.getDouble("calories"));
+                    String foodCategory = results.getString("food_category");
+                    if (foodCategory != null) {
+                        dataReport.incrementMealCategory(foodCategory, results.getDouble("servings"));
+                    }
                 }
+            }
+        } catch (SQLException e) {
+            AGGREGATED_REPORT_STAGE.recordRows(System.nanoTime() - startTime, -1);
+            return null;
+        }
 
-                // Update total calorie count
-                dataReport.addTotalCalories(foodCalories, servingQuantity);
+        AGGREGATED_REPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
+        return dataReport;
+    }
+
+    /**
+     * Creates a DataReport by merging the rows of a ResultSet of daily summaries from
+     * the daily_summary table, as returned by FoodLogComm.fetchSummaryDataReport. Each
+     * row already applies the one breakfast, brunch, lunch, and dinner per day rule.
+     * @return  An object containing total calories, meal count, and meal type count
+     *          for all days in this object's ResultSet
+     */
+    public DataReport getSummaryDataReport() {
+        long startTime = System.nanoTime();
+        int rowCount = 0;
+        DataReport dataReport = new DataReport();
+
+        try {
+            this.rewind();
+
+            // Add each day's totals to the report
+            while (results.next()) {
+                rowCount++;
+                dataReport.addTotalCalories(results.getDouble("total_calories"));
 
-                // Check if date is already in Map
-                if (!mealsByDate.containsKey(entryDate)) {
-                    mealsByDate.put(entryDate, new ArrayList<>());
+                for (MealType mealType : MealType.values()) {
+                    dataReport.addMealType(mealType, results.getInt(mealType.getMealName() + "_count"));
                 }
 
-                /*  Only increment meal type count if this row's meal has not already occurred
-                    on this row's date. Snacks are the only exception to this rule, and they
-                    are counted as many times as they occur. All other meals are only incremented
-                    once per day. This only allows user to have one breakfast, brunch, lunch, or
-                    dinner. If user has two dinners, those will only be counted as one meal for
-                    that day.
-                 */
-                if (!mealsByDate.get(entryDate).contains(mealType)  || mealType.equals("snack")) {
-                    dataReport.incrementMealType(mealType);  // Increment meal type count
-                    mealsByDate.get(entryDate).add(mealType);  // Add meal type to array where entryDate is the key
+                for (FoodCategory category : FoodCategory.values()) {
+                    dataReport.incrementMealCategory(category
+                            , results.getDouble(category.getCategoryName() + "_servings"));
                 }
             }
         } catch (SQLException e) {
+            SUMMARY_REPORT_STAGE.recordRows(System.nanoTime() - startTime, -1);
             return null;
         }
 
+        SUMMARY_REPORT_STAGE.recordRows(System.nanoTime() - startTime, rowCount);
         return dataReport;
     }
 
@@ -214,6 +538,7 @@ public class ReportBuilder {
      * @return                  A HashMap with all calorie data in given ResultSet
      */
     public HashMap<String, CalorieTableEntry> getCalorieMap(ResultSet foodDetailsData) {
+        long startTime = System.nanoTime();
         HashMap<String, CalorieTableEntry> calorieMap = new HashMap<>();
 
         try {
@@ -230,9 +555,11 @@ public class ReportBuilder {
             }
 
         } catch (SQLException e) {
+            CALORIE_MAP_STAGE.recordRows(System.nanoTime() - startTime, -1);
             return null;
         }
 
+        CALORIE_MAP_STAGE.recordRows(System.nanoTime() - startTime, calorieMap.size());
         return calorieMap;
     }
 }
@@ -0,0 +1,24 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Consumes the rows of a streamed ResultSet while the database connection
+ * the results are read from is still held open. Implementations should read
+ * the results in a single forward pass.
+ *
+ * @param <T>   Type of the value produced from the results
+ *
+ * @author iDoc1
+ *
+ */
+@FunctionalInterface
+public interface ResultSetHandler<T> {
+
+    /**
+     * Reads the given results and produces a value from them
+     * @param results       A forward only ResultSet positioned before its first row
+     * @return              The value produced from the results
+     * @throws SQLException If the results cannot be read
+     */
+    T handle(ResultSet results) throws SQLException;
+}
@@ -0,0 +1,581 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Deletes food log entries older than a cutoff date without holding up other
+ * users of the database. The partitions of whole months before the cutoff are
+ * dropped first, then the remaining old entries are deleted in chunks walked
+ * in entry date and entry ID order, each chunk in its own short transaction.
+ * Chunks are paced to a configurable number of rows per second. The cutoff and
+ * the last entry deleted are checkpointed in the retention_purge table in the
+ * same transaction as each chunk, so a purge that is stopped or interrupted
+ * carries on from where it left off the next time it is run or resumed, and
+ * two app instances never delete the same chunk. The daily summaries of the
+ * dropped months are removed as soon as they are dropped, and each chunk
+ * refreshes the summaries of its days in its own transaction, so reports never
+ * count deleted entries. Entries without a date are never deleted.
+ *
+ * @author iDoc1
+ *
+ */
+public class RetentionPurge {
+
+    // Row of the retention_purge table holding the checkpoint, which only ever has one
+    private static final int CHECKPOINT_ID = 1;
+
+    private final FoodLogConnection foodLogConn;
+    private final int chunkSize;
+    private volatile double rowsPerSecond;
+
+    private Thread purgeThread;  // null unless a purge is running
+    private boolean ownsPurgeThread;  // true if purgeThread was started by this purge rather than a caller
+    private volatile boolean stopRequested = false;
+    private volatile Progress progress = null;
+
+    /**
+     * Constructs a RetentionPurge
+     * @param foodLogConn   Connection pool of the food log database
+     * @param chunkSize     Maximum number of entries deleted per transaction
+     * @param rowsPerSecond Maximum average number of entries deleted per second, or 0
+     *                      to delete as fast as the database allows
+     */
+    public RetentionPurge(FoodLogConnection foodLogConn, int chunkSize, double rowsPerSecond) {
+        this.foodLogConn = foodLogConn;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.rowsPerSecond = Math.max(0, rowsPerSecond);
+    }
+
+    /**
+     * Runs a purge of entries older than the given number of days in the calling
+     * thread. An unfinished purge is carried on from its checkpoint, and its cutoff is
+     * moved later if the new cutoff is later.
+     * @param deleteDays    Number of days older than to delete
+     * @param listener      Called with the progress after each chunk and when the purge
+     *                      ends, or null
+     * @return              The progress when the purge ended
+     * @throws SQLException If the purge fails or another purge is running in this app
+     */
+    public Progress purge(int deleteDays, Consumer<Progress> listener) throws SQLException {
+        synchronized (this) {
+            if (this.purgeThread != null) {
+                throw new SQLException("A retention purge is already running.");
+            }
+            this.purgeThread = Thread.currentThread();
+            this.ownsPurgeThread = false;
+            this.stopRequested = false;
+        }
+
+        try {
+            return this.run(deleteDays, listener);
+        } finally {
+            synchronized (this) {
+                this.purgeThread = null;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts a purge of entries older than the given number of days in a background
+     * thread. An unfinished purge is carried on from its checkpoint.
+     * @param deleteDays    Number of days older than to delete
+     * @param listener      Called from the purge thread with the progress after each
+     *                      chunk and when the purge ends, or null
+     * @return              true if the purge was started, false if one is already running
+     */
+    public synchronized boolean start(int deleteDays, Consumer<Progress> listener) {
+        if (this.purgeThread != null) {
+            return false;
+        }
+        this.stopRequested = false;
+
+        this.purgeThread = new Thread(() -> {
+            try {
+                this.run(deleteDays, listener);
+            } catch (SQLException e) {
+                this.report(this.progress == null ? new Progress(null, 0, 0, 0, 0, false, e.getMessage())
+                        : this.progress.failed(e.getMessage()), listener);
+            } finally {
+                synchronized (this) {
+                    this.purgeThread = null;
+                    this.notifyAll();
+                }
+            }
+        }, "food-log-retention-purge");
+        this.ownsPurgeThread = true;
+        this.purgeThread.setDaemon(true);
+        this.purgeThread.start();
+        return true;
+    }
+
+    /**
+     * Starts the unfinished purge left by an earlier run in a background thread, if
+     * there is one
+     * @param listener  Called from the purge thread with the progress after each chunk
+     *                  and when the purge ends, or null
+     * @return          true if an unfinished purge was resumed, false if there is none,
+     *                  a purge is already running, or the checkpoint cannot be read
+     */
+    public boolean resume(Consumer<Progress> listener) {
+        try (Connection connection = this.foodLogConn.getFoodLogConnection()) {
+            if (readCheckpoint(connection, false) == null) {
+                return false;
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+
+        // A negative number of days keeps the checkpoint's cutoff
+        return this.start(-1, listener);
+    }
+
+    /**
+     * Asks a running purge to stop after its current chunk and waits for it. The
+     * checkpoint is kept, so the purge can be resumed later. A purge running in a
+     * caller's thread is woken from its pacing wait but its thread is not interrupted.
+     * @param timeoutMillis Maximum time to wait for the purge to stop
+     * @return              true if no purge is running anymore
+     */
+    public synchronized boolean stop(long timeoutMillis) {
+        if (this.purgeThread == null) {
+            return true;
+        }
+        this.stopRequested = true;
+        this.notifyAll();
+        if (this.ownsPurgeThread) {
+            this.purgeThread.interrupt();
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.purgeThread != null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                this.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  true if a purge is running in this app
+     */
+    public synchronized boolean isRunning() {
+        return this.purgeThread != null;
+    }
+
+    /**
+     * @return  Progress of the running or last purge, or null if none has run
+     */
+    public Progress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Changes the pace of the running and later purges
+     * @param rowsPerSecond Maximum average number of entries deleted per second, or 0
+     *                      to delete as fast as the database allows
+     */
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = Math.max(0, rowsPerSecond);
+    }
+
+    /**
+     * Sets the cutoff, drops whole months, then deletes chunks until none are left or
+     * a stop is requested
+     * @param deleteDays    Number of days older than to delete, or a negative number to
+     *                      keep the cutoff of the checkpoint
+     */
+    private Progress run(int deleteDays, Consumer<Progress> listener) throws SQLException {
+        LocalDate cutoffDate;
+        long deletedCount;
+        int partitionCount;
+        long remainingCount;
+
+        try (Connection connection = this.foodLogConn.getFoodLogConnection()) {
+
+            // Record the cutoff, keeping the later one if a purge is unfinished
+            if (deleteDays >= 0) {
+                saveCutoff(connection, deleteDays);
+            }
+            Checkpoint checkpoint = readCheckpoint(connection, false);
+            if (checkpoint == null) {
+                return this.report(new Progress(null, 0, 0, 0, 0, true, null), listener);
+            }
+            cutoffDate = checkpoint.cutoffDate;
+            deletedCount = checkpoint.deletedCount;
+
+            // Drop whole months, which commits by itself and leaves the keyset position valid
+            List<YearMonth> months = PartitionManager.getMonthlyPartitions(connection);
+            partitionCount = PartitionManager.dropPartitionsBefore(connection, cutoffDate);
+
+            // The oldest months are dropped, so remove the summaries before the first month kept
+            if (partitionCount > 0) {
+                DailySummaryTable.deleteBefore(connection, months.get(partitionCount - 1).plusMonths(1).atDay(1));
+            }
+            remainingCount = countRemaining(connection, checkpoint);
+        }
+        this.report(new Progress(cutoffDate, deletedCount, remainingCount, partitionCount, 0, false, null)
+                , listener);
+
+        // Delete chunks, pacing them to the row rate of this run
+        long startNanos = System.nanoTime();
+        long runDeletedCount = 0;
+        int chunkCount = 0;
+        while (!this.stopRequested) {
+            int chunkDeleted;
+            try (Connection connection = this.foodLogConn.getFoodLogConnection()) {
+                chunkDeleted = this.deleteChunk(connection);
+            }
+            if (chunkDeleted < 0) {
+                return this.report(new Progress(cutoffDate, deletedCount + runDeletedCount, 0, partitionCount
+                        , chunkCount, true, null), listener);
+            }
+
+            runDeletedCount += chunkDeleted;
+            chunkCount++;
+            this.report(new Progress(cutoffDate, deletedCount + runDeletedCount
+                    , Math.max(0, remainingCount - runDeletedCount), partitionCount, chunkCount, false, null)
+                    , listener);
+
+            double rate = this.rowsPerSecond;
+            if (rate > 0) {
+                long aheadMillis = (long) (runDeletedCount * 1000 / rate)
+                        - (System.nanoTime() - startNanos) / 1_000_000;
+                if (aheadMillis > 0 && !this.pause(aheadMillis)) {
+                    break;
+                }
+            }
+        }
+
+        // Stopped early, the checkpoint is kept for the next run
+        return this.report(new Progress(cutoffDate, deletedCount + runDeletedCount
+                , Math.max(0, remainingCount - runDeletedCount), partitionCount, chunkCount, false, null)
+                , listener);
+    }
+
+    /**
+     * Deletes the next chunk of entries after the checkpoint in one transaction and
+     * moves the checkpoint past them. The checkpoint is removed once no entries before
+     * the cutoff remain.
+     * @param connection    A connection to the food log database
+     * @return              Number of entries deleted, which is 0 when the checkpoint is
+     *                      moved back to the start, or -1 if the purge is finished
+     */
+    private int deleteChunk(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+
+            // Lock the checkpoint so another app instance waits for this chunk
+            Checkpoint checkpoint = readCheckpoint(connection, true);
+            if (checkpoint == null) {
+                connection.commit();
+                return -1;
+            }
+
+            // Find the keys of the next chunk after the last entry deleted
+            String seekClause = checkpoint.lastEntryDate == null ? ""
+                    : " AND (a.entry_date, a.entry_id) > (?, ?)";
+            String keyQuery = "SELECT a.entry_id, a.entry_date FROM food_log_database.food_log a " +
+                    "WHERE a.entry_date >= ? AND a.entry_date < ?" + seekClause +
+                    " ORDER BY a.entry_date, a.entry_id LIMIT ? FOR UPDATE";
+
+            List<Integer> entryIDs = new ArrayList<>();
+            TreeSet<LocalDate> entryDates = new TreeSet<>();
+            LocalDate firstDate = null;
+            LocalDate lastDate = null;
+            try (PreparedStatement statement = connection.prepareStatement(keyQuery)) {
+                int parameterIndex = 1;
+                statement.setObject(parameterIndex++, checkpoint.lastEntryDate == null
+                        ? PartitionManager.FIRST_DATED_DAY : checkpoint.lastEntryDate);
+                statement.setObject(parameterIndex++, checkpoint.cutoffDate);
+                if (checkpoint.lastEntryDate != null) {
+                    statement.setObject(parameterIndex++, checkpoint.lastEntryDate);
+                    statement.setInt(parameterIndex++, checkpoint.lastEntryID);
+                }
+                statement.setInt(parameterIndex, this.chunkSize);
+
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        entryIDs.add(results.getInt("entry_id"));
+                        lastDate = results.getObject("entry_date", LocalDate.class);
+                        entryDates.add(lastDate);
+                        if (firstDate == null) {
+                            firstDate = lastDate;
+                        }
+                    }
+                }
+            }
+
+            // Nothing left after the checkpoint, so look again from the start for entries
+            // that were added behind it while the purge was running
+            if (entryIDs.isEmpty() && checkpoint.lastEntryDate != null) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "UPDATE food_log_database.retention_purge SET last_entry_date = NULL, " +
+                        "last_entry_id = NULL WHERE purge_id = ?")) {
+                    statement.setInt(1, CHECKPOINT_ID);
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return 0;
+            }
+
+            // Nothing left before the cutoff, so remove the purged days' summaries and the checkpoint
+            if (entryIDs.isEmpty()) {
+                DailySummaryTable.deleteBefore(connection, checkpoint.cutoffDate);
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM food_log_database.retention_purge WHERE purge_id = ?")) {
+                    statement.setInt(1, CHECKPOINT_ID);
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return -1;
+            }
+
+            // Delete the chunk, bounding its dates so only the partitions holding it are read
+            String deleteString = "DELETE FROM food_log_database.food_log " +
+                    "WHERE entry_date >= ? AND entry_date <= ? AND entry_id IN (" +
+                    String.join(", ", Collections.nCopies(entryIDs.size(), "?")) + ")";
+            try (PreparedStatement statement = connection.prepareStatement(deleteString)) {
+                statement.setObject(1, firstDate);
+                statement.setObject(2, lastDate);
+                for (int i = 0; i < entryIDs.size(); i++) {
+                    statement.setInt(i + 3, entryIDs.get(i));
+                }
+                statement.executeUpdate();
+            }
+
+            // Refresh the summaries of the chunk's days and move the checkpoint past the chunk
+            DailySummaryTable.refreshDates(connection, entryDates);
+            String checkpointString = "UPDATE food_log_database.retention_purge " +
+                    "SET last_entry_date = ?, last_entry_id = ?, deleted_count = deleted_count + ? " +
+                    "WHERE purge_id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(checkpointString)) {
+                statement.setObject(1, lastDate);
+                statement.setInt(2, entryIDs.get(entryIDs.size() - 1));
+                statement.setInt(3, entryIDs.size());
+                statement.setInt(4, CHECKPOINT_ID);
+                statement.executeUpdate();
+            }
+
+            connection.commit();
+            return entryIDs.size();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the cutoff of a new purge, or moves the cutoff of an unfinished purge
+     * later if the new cutoff is later
+     */
+    private static void saveCutoff(Connection connection, int deleteDays) throws SQLException {
+        String sqlString = "INSERT INTO food_log_database.retention_purge (purge_id, cutoff_date) " +
+                "VALUES (?, CURDATE() - INTERVAL ? DAY) AS requested " +
+                "ON DUPLICATE KEY UPDATE cutoff_date = GREATEST(cutoff_date, requested.cutoff_date)";
+
+        try (PreparedStatement statement = connection.prepareStatement(sqlString)) {
+            statement.setInt(1, CHECKPOINT_ID);
+            statement.setInt(2, deleteDays);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads the checkpoint of the unfinished purge
+     * @param forUpdate Whether to lock the checkpoint until the transaction ends
+     * @return          The checkpoint, or null if there is no unfinished purge
+     */
+    private static Checkpoint readCheckpoint(Connection connection, boolean forUpdate) throws SQLException {
+        String sqlQuery = "SELECT cutoff_date, last_entry_date, last_entry_id, deleted_count " +
+                "FROM food_log_database.retention_purge WHERE purge_id = ?" + (forUpdate ? " FOR UPDATE" : "");
+
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            statement.setInt(1, CHECKPOINT_ID);
+            try (ResultSet results = statement.executeQuery()) {
+                if (!results.next()) {
+                    return null;
+                }
+                return new Checkpoint(results.getObject("cutoff_date", LocalDate.class)
+                        , results.getObject("last_entry_date", LocalDate.class)
+                        , results.getInt("last_entry_id"), results.getLong("deleted_count"));
+            }
+        }
+    }
+
+    /**
+     * @return  Number of dated entries before the cutoff, used to estimate what is left
+     */
+    private static long countRemaining(Connection connection, Checkpoint checkpoint) throws SQLException {
+        String sqlQuery = "SELECT COUNT(*) FROM food_log_database.food_log a " +
+                "WHERE a.entry_date >= ? AND a.entry_date < ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            statement.setObject(1, PartitionManager.FIRST_DATED_DAY);
+            statement.setObject(2, checkpoint.cutoffDate);
+            try (ResultSet results = statement.executeQuery()) {
+                results.next();
+                return results.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Stores the progress and passes it to the listener
+     */
+    private Progress report(Progress progress, Consumer<Progress> listener) {
+        this.progress = progress;
+        if (listener != null) {
+            listener.accept(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Waits for the given time unless a stop is requested first
+     * @return  true if the full time passed, false if a stop was requested or the
+     *          thread was interrupted
+     */
+    private synchronized boolean pause(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        while (!this.stopRequested) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return true;
+            }
+            try {
+                this.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The progress of a purge at one point in time
+     */
+    public static class Progress {
+        private final LocalDate cutoffDate;
+        private final long deletedCount;
+        private final long remainingCount;
+        private final int partitionCount;
+        private final int chunkCount;
+        private final boolean finished;
+        private final String error;
+
+        Progress(LocalDate cutoffDate, long deletedCount, long remainingCount, int partitionCount
+                , int chunkCount, boolean finished, String error) {
+            this.cutoffDate = cutoffDate;
+            this.deletedCount = deletedCount;
+            this.remainingCount = remainingCount;
+            this.partitionCount = partitionCount;
+            this.chunkCount = chunkCount;
+            this.finished = finished;
+            this.error = error;
+        }
+
+        /**
+         * @return  A copy of this progress that records the purge failed
+         */
+        Progress failed(String error) {
+            return new Progress(cutoffDate, deletedCount, remainingCount, partitionCount, chunkCount
+                    , false, error);
+        }
+
+        /**
+         * @return  Entries dated before this are deleted, or null if there was nothing to purge
+         */
+        public LocalDate getCutoffDate() {
+            return cutoffDate;
+        }
+
+        /**
+         * @return  Number of entries deleted in chunks, including by earlier runs of the purge
+         */
+        public long getDeletedCount() {
+            return deletedCount;
+        }
+
+        /**
+         * @return  Estimated number of entries left to delete in chunks
+         */
+        public long getRemainingCount() {
+            return remainingCount;
+        }
+
+        /**
+         * @return  Number of month partitions dropped by this run
+         */
+        public int getPartitionCount() {
+            return partitionCount;
+        }
+
+        /**
+         * @return  Number of chunks deleted by this run
+         */
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        /**
+         * @return  true if no entries before the cutoff remain
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return  The reason the purge failed, or null if it has not failed
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return "Retention purge failed after deleting " + deletedCount + " entries: " + error;
+            }
+            if (cutoffDate == null) {
+                return "Retention purge: nothing to delete.";
+            }
+            return "Retention purge of entries before " + cutoffDate + ": " + partitionCount
+                    + " month(s) dropped, " + deletedCount + " entries deleted"
+                    + (finished ? ", finished." : ", about " + remainingCount + " left.");
+        }
+    }
+
+    /**
+     * The cutoff and keyset position of an unfinished purge
+     */
+    private static class Checkpoint {
+        private final LocalDate cutoffDate;
+        private final LocalDate lastEntryDate;  // null if no chunk has been deleted
+        private final int lastEntryID;
+        private final long deletedCount;
+
+        Checkpoint(LocalDate cutoffDate, LocalDate lastEntryDate, int lastEntryID, long deletedCount) {
+            this.cutoffDate = cutoffDate;
+            this.lastEntryDate = lastEntryDate;
+            this.lastEntryID = lastEntryID;
+            this.deletedCount = deletedCount;
+        }
+    }
+}
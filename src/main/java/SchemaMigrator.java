@@ -0,0 +1,340 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the food log database schema up to date by applying versioned
+ * migrations in order. The version of every applied migration is recorded
+ * in the schema_version table, so each migration runs exactly once. New
+ * schema changes are added to the end of the migration list with the next
+ * version number and must never be edited once released.
+ *
+ * @author iDoc1
+ *
+ */
+public class SchemaMigrator {
+
+    // Named lock that keeps two app instances from migrating at the same time
+    private static final String MIGRATION_LOCK = "food_log_database.schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        MIGRATIONS.add(new Migration(1, "Index food log date and food name lookups"
+                , "CREATE INDEX idx_food_log_entry_date " +
+                        "ON food_log_database.food_log (entry_date)"
+                , "CREATE INDEX idx_food_log_entry_date_meal_type " +
+                        "ON food_log_database.food_log (entry_date, meal_type)"
+                , "CREATE INDEX idx_food_log_food_name " +
+                        "ON food_log_database.food_log (food_name)"));
+        MIGRATIONS.add(new Migration(2, "Add daily summary table for data reports"
+                , "CREATE TABLE food_log_database.daily_summary (" +
+                        "entry_date DATE NOT NULL, " +
+                        "total_calories DOUBLE NOT NULL, " +
+                        "breakfast_count TINYINT NOT NULL, " +
+                        "brunch_count TINYINT NOT NULL, " +
+                        "lunch_count TINYINT NOT NULL, " +
+                        "dinner_count TINYINT NOT NULL, " +
+                        "snack_count INT NOT NULL, " +
+                        "grain_servings DOUBLE NOT NULL, " +
+                        "fruit_servings DOUBLE NOT NULL, " +
+                        "vegetable_servings DOUBLE NOT NULL, " +
+                        "dairy_servings DOUBLE NOT NULL, " +
+                        "protein_servings DOUBLE NOT NULL, " +
+                        "other_servings DOUBLE NOT NULL, " +
+                        "PRIMARY KEY (entry_date))"
+                , "INSERT INTO food_log_database.daily_summary " +
+                        "(entry_date, total_calories, breakfast_count, brunch_count, lunch_count, " +
+                        "dinner_count, snack_count, grain_servings, fruit_servings, vegetable_servings, " +
+                        "dairy_servings, protein_servings, other_servings) " +
+                        "SELECT a.entry_date, " +
+                        "COALESCE(SUM(c.calories_per_serving * a.serving_quantity), 0), " +
+                        "MAX(a.meal_type = 'breakfast'), " +
+                        "MAX(a.meal_type = 'brunch'), " +
+                        "MAX(a.meal_type = 'lunch'), " +
+                        "MAX(a.meal_type = 'dinner'), " +
+                        "SUM(a.meal_type = 'snack'), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'grain' THEN a.serving_quantity END), 0), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'fruit' THEN a.serving_quantity END), 0), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'vegetable' THEN a.serving_quantity END), 0), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'dairy' THEN a.serving_quantity END), 0), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'protein' THEN a.serving_quantity END), 0), " +
+                        "COALESCE(SUM(CASE WHEN c.food_category = 'other' THEN a.serving_quantity END), 0) " +
+                        "FROM food_log_database.food_log a " +
+                        "LEFT JOIN food_log_database.calorie_table c ON c.food_name = a.food_name " +
+                        "WHERE a.entry_date IS NOT NULL GROUP BY a.entry_date"));
+        /*  Each schema change of this migration is skipped once information_schema shows it was
+            made, and each copy of food names only runs while the food_name columns it reads remain,
+            so a run that failed partway is finished by running the migration again. The calorie
+            table is keyed by food ID and loses its food_name column, so food names are only kept
+            in the foods table.
+         */
+        MIGRATIONS.add(new Migration(3, "Store food names in a foods table and meal types as an ENUM"
+                , new Step(null, "CREATE TABLE IF NOT EXISTS food_log_database.foods (" +
+                        "food_id INT NOT NULL AUTO_INCREMENT, " +
+                        "food_name VARCHAR(30) NOT NULL, " +
+                        "PRIMARY KEY (food_id), " +
+                        "UNIQUE KEY uq_foods_food_name (food_name))")
+                , new Step(columnExists("food_log", "food_name")
+                        , "INSERT IGNORE INTO food_log_database.foods (food_name) " +
+                        "SELECT DISTINCT LOWER(a.food_name) FROM food_log_database.food_log a " +
+                        "WHERE a.food_name IS NOT NULL")
+                , new Step(columnExists("calorie_table", "food_name")
+                        , "INSERT IGNORE INTO food_log_database.foods (food_name) " +
+                        "SELECT LOWER(c.food_name) FROM food_log_database.calorie_table c")
+                , new Step(columnMissing("food_log", "food_id")
+                        , "ALTER TABLE food_log_database.food_log ADD COLUMN food_id INT AFTER entry_date")
+                , new Step(columnExists("food_log", "food_name")
+                        , "UPDATE food_log_database.food_log a " +
+                        "JOIN food_log_database.foods f ON f.food_name = a.food_name " +
+                        "SET a.food_id = f.food_id")
+                , new Step(columnMissing("calorie_table", "food_id")
+                        , "ALTER TABLE food_log_database.calorie_table ADD COLUMN food_id INT FIRST")
+                , new Step(columnExists("calorie_table", "food_name")
+                        , "UPDATE food_log_database.calorie_table c " +
+                        "JOIN food_log_database.foods f ON f.food_name = c.food_name " +
+                        "SET c.food_id = f.food_id")
+                , new Step(columnExists("calorie_table", "food_name")
+                        , "ALTER TABLE food_log_database.calorie_table " +
+                        "MODIFY food_id INT NOT NULL, " +
+                        "DROP PRIMARY KEY, " +
+                        "DROP COLUMN food_name, " +
+                        "ADD PRIMARY KEY (food_id), " +
+                        "ADD CONSTRAINT fk_calorie_table_food FOREIGN KEY (food_id) " +
+                        "REFERENCES food_log_database.foods (food_id)")
+                , new Step(columnExists("food_log", "food_name")
+                        , "ALTER TABLE food_log_database.food_log " +
+                        "DROP INDEX idx_food_log_food_name, " +
+                        "DROP COLUMN food_name, " +
+                        "MODIFY meal_type ENUM('breakfast', 'brunch', 'lunch', 'dinner', 'snack'), " +
+                        "ADD INDEX idx_food_log_food_id_entry_date (food_id, entry_date)")));
+        /*  Partitioned tables cannot have foreign keys, so food_log is never given one to its food
+            IDs, and every unique key must contain the partitioning column, so entry_date joins the
+            primary key. Primary key columns cannot be NULL, so entries without a date are moved
+            to the undated date, which sits in its own partition below every real date. Monthly
+            partitions are split off p_future by PartitionManager once the table is partitioned.
+         */
+        MIGRATIONS.add(new Migration(4, "Partition the food log by entry date"
+                , "UPDATE food_log_database.food_log SET entry_date = '1000-01-01' WHERE entry_date IS NULL"
+                , "ALTER TABLE food_log_database.food_log " +
+                        "MODIFY entry_date DATE NOT NULL, " +
+                        "DROP PRIMARY KEY, " +
+                        "ADD PRIMARY KEY (entry_id, entry_date)"
+                , "ALTER TABLE food_log_database.food_log " +
+                        "PARTITION BY RANGE COLUMNS (entry_date) (" +
+                        "PARTITION p_undated VALUES LESS THAN ('1000-01-02'), " +
+                        "PARTITION p_future VALUES LESS THAN (MAXVALUE))"));
+        MIGRATIONS.add(new Migration(5, "Add checkpoint table for the retention purge"
+                , "CREATE TABLE food_log_database.retention_purge (" +
+                        "purge_id TINYINT NOT NULL, " +
+                        "cutoff_date DATE NOT NULL, " +
+                        "last_entry_date DATE, " +
+                        "last_entry_id INT, " +
+                        "deleted_count BIGINT NOT NULL DEFAULT 0, " +
+                        "PRIMARY KEY (purge_id))"));
+        MIGRATIONS.add(new Migration(6, "Index food log pages by entry date and entry ID"
+                , "ALTER TABLE food_log_database.food_log " +
+                        "DROP INDEX idx_food_log_entry_date, " +
+                        "ADD INDEX idx_food_log_entry_date_entry_id (entry_date, entry_id), " +
+                        "DROP INDEX idx_food_log_food_id_entry_date, " +
+                        "ADD INDEX idx_food_log_food_id_entry_date_entry_id (food_id, entry_date, entry_id)"));
+    }
+
+    private Connection connection;
+
+    /**
+     * Constructs a SchemaMigrator that applies migrations using the given connection
+     * @param connection    A connection to the food log database
+     */
+    public SchemaMigrator(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Applies every migration that has not yet been applied to the database
+     * @return              The number of migrations applied
+     * @throws SQLException If a migration fails or the migration lock cannot be taken
+     */
+    public int migrate() throws SQLException {
+        this.acquireLock();
+
+        try {
+            this.createVersionTable();
+            int currentVersion = this.getCurrentVersion();
+
+            // Apply pending migrations in version order
+            int appliedCount = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > currentVersion) {
+                    this.apply(migration);
+                    appliedCount++;
+                }
+            }
+
+            return appliedCount;
+        } finally {
+            this.releaseLock();
+        }
+    }
+
+    /**
+     * @return  The version the database schema is brought up to by migrate()
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Returns the version of the most recently applied migration
+     * @return              The current schema version, or 0 if no migrations are applied
+     * @throws SQLException If the schema_version table cannot be read
+     */
+    public int getCurrentVersion() throws SQLException {
+        String sqlQuery = "SELECT COALESCE(MAX(version), 0) FROM food_log_database.schema_version";
+
+        try (Statement statement = this.connection.createStatement();
+             ResultSet results = statement.executeQuery(sqlQuery)) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+
+    /**
+     * Creates the table that records applied migrations if it does not already exist
+     */
+    private void createVersionTable() throws SQLException {
+        String sqlString = "CREATE TABLE IF NOT EXISTS food_log_database.schema_version (" +
+                "version INT NOT NULL, " +
+                "description VARCHAR(255), " +
+                "applied_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "PRIMARY KEY (version))";
+
+        try (Statement statement = this.connection.createStatement()) {
+            statement.executeUpdate(sqlString);
+        }
+    }
+
+    /**
+     * Runs the statements of a migration then records its version. MySQL commits
+     * schema changes immediately, so a migration that fails partway must be
+     * finished by hand before the app can start, unless its steps are guarded by
+     * conditions that skip the changes already made.
+     * @param migration     The migration to apply
+     * @throws SQLException If any statement in the migration fails
+     */
+    private void apply(Migration migration) throws SQLException {
+        try (Statement statement = this.connection.createStatement()) {
+            for (Step step : migration.steps) {
+                if (step.condition == null || this.isTrue(step.condition)) {
+                    statement.executeUpdate(step.statement);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Schema migration " + migration.version + " ("
+                    + migration.description + ") failed: " + e.getMessage(), e);
+        }
+
+        String sqlString = "INSERT INTO food_log_database.schema_version (version, description) VALUES (?, ?)";
+        try (PreparedStatement statement = this.connection.prepareStatement(sqlString)) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @param condition     A query returning a single boolean value
+     * @return              The value returned by the query
+     * @throws SQLException If the query fails
+     */
+    private boolean isTrue(String condition) throws SQLException {
+        try (Statement statement = this.connection.createStatement();
+             ResultSet results = statement.executeQuery(condition)) {
+            return results.next() && results.getBoolean(1);
+        }
+    }
+
+    /**
+     * @return  A condition that is true if the food log database table has the given column
+     */
+    private static String columnExists(String table, String column) {
+        return "SELECT COUNT(*) > 0 FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = 'food_log_database' AND TABLE_NAME = '" + table + "' " +
+                "AND COLUMN_NAME = '" + column + "'";
+    }
+
+    /**
+     * @return  A condition that is true if the food log database table lacks the given column
+     */
+    private static String columnMissing(String table, String column) {
+        return "SELECT NOT (" + columnExists(table, column) + ")";
+    }
+
+    /**
+     * Takes the named migration lock, waiting up to the lock timeout
+     */
+    private void acquireLock() throws SQLException {
+        try (PreparedStatement statement = this.connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, MIGRATION_LOCK);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+
+            try (ResultSet results = statement.executeQuery()) {
+                if (!results.next() || results.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for the schema migration lock.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the named migration lock
+     */
+    private void releaseLock() throws SQLException {
+        try (PreparedStatement statement = this.connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, MIGRATION_LOCK);
+            statement.executeQuery().close();
+        }
+    }
+
+    /**
+     * A numbered schema change made up of one or more SQL statements
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step[] steps;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.steps = new Step[statements.length];
+            for (int i = 0; i < statements.length; i++) {
+                this.steps[i] = new Step(null, statements[i]);
+            }
+        }
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * A statement of a migration, run only if its condition holds
+     */
+    private static class Step {
+        private final String condition;  // Query returning whether to run the statement, or null to always run it
+        private final String statement;
+
+        Step(String condition, String statement) {
+            this.condition = condition;
+            this.statement = statement;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a directory of MonthlySnapshot files, one per closed-out month, and
+ * builds reports from them. Months are only snapshotted once they are over,
+ * so reports over long date ranges read past months from the snapshots and
+ * only query the FoodLogStorage for the current month and for any month that
+ * has no snapshot. The store listens to its storage and deletes the snapshot
+ * of any month whose entries are inserted, edited, or deleted afterwards, so
+ * that month is read from the storage until it is snapshotted again. Each
+ * storage should keep its snapshots in a directory of its own.
+ *
+ * @author iDoc1
+ *
+ */
+public class SnapshotStore {
+
+    private static final String FILE_PREFIX = "food_log_";
+    private static final String FILE_SUFFIX = ".snapshot";
+
+    private FoodLogStorage foodLogStorage;
+    private Path directory;
+
+    // Invalidation runs on the threads that change the storage, so it does not take this store's lock
+    private Map<YearMonth, MonthlySnapshot> openSnapshots = new ConcurrentHashMap<>();
+    private final AtomicLong changeCount = new AtomicLong();
+
+    /**
+     * Constructs a SnapshotStore and registers it to be told of changes to the storage
+     * @param foodLogStorage    Storage the food log is read from
+     * @param directory         Directory holding the snapshot files of this storage
+     */
+    public SnapshotStore(FoodLogStorage foodLogStorage, Path directory) {
+        this.foodLogStorage = foodLogStorage;
+        this.directory = directory;
+        foodLogStorage.addEntryChangeListener(this::invalidate);
+    }
+
+    /**
+     * @return  The directory holding the snapshot files
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes a snapshot of a closed-out month, replacing any earlier snapshot of it
+     * @param month The month to snapshot, which must be before the current month
+     * @return      Number of entries written, or -1 if the month is not over or an
+     *              error is thrown
+     */
+    public synchronized int snapshotMonth(YearMonth month) {
+        if (!month.isBefore(YearMonth.now())) {
+            return -1;
+        }
+
+        long changesBefore = changeCount.get();
+        LinkedHashMap<Integer, FoodTableEntry> entries = foodLogStorage.fetchEntriesFromDateRange(month.atDay(1)
+                , month.atEndOfMonth());
+        if (entries == null) {
+            return -1;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            int rowCount = MonthlySnapshot.write(this.getFile(month), month, entries.values());
+            openSnapshots.remove(month);
+
+            // A change made while the month was being read may be missing from the snapshot
+            if (changeCount.get() != changesBefore) {
+                Files.deleteIfExists(this.getFile(month));
+                return -1;
+            }
+            return rowCount;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes a snapshot of every closed-out month from the given month through last
+     * month that does not have one yet
+     * @param fromMonth The first month to snapshot
+     * @return          Number of snapshots written, or -1 if an error is thrown
+     */
+    public int snapshotClosedMonths(YearMonth fromMonth) {
+        return this.snapshotClosedMonths(fromMonth, false);
+    }
+
+    /**
+     * Writes a snapshot of every closed-out month from the given month through last
+     * month
+     * @param fromMonth The first month to snapshot
+     * @param refresh   true to snapshot months that already have a snapshot again, false
+     *                  to skip them
+     * @return          Number of snapshots written, or -1 if an error is thrown
+     */
+    public synchronized int snapshotClosedMonths(YearMonth fromMonth, boolean refresh) {
+        int snapshotCount = 0;
+
+        for (YearMonth month = fromMonth; month.isBefore(YearMonth.now()); month = month.plusMonths(1)) {
+            if (!refresh && Files.exists(this.getFile(month))) {
+                continue;
+            }
+            if (this.snapshotMonth(month) < 0) {
+                return -1;
+            }
+            snapshotCount++;
+        }
+
+        return snapshotCount;
+    }
+
+    /**
+     * Deletes the snapshots of the months that overlap a date range, so that reports read
+     * those months from the storage until they are snapshotted again
+     * @param startDate The first changed date (inclusive), or LocalDate.MIN for every date
+     *                  up to the end date
+     * @param endDate   The last changed date (inclusive)
+     */
+    public void invalidate(LocalDate startDate, LocalDate endDate) {
+        changeCount.incrementAndGet();
+
+        // Only closed-out months have snapshots
+        YearMonth lastMonth = YearMonth.from(endDate);
+        if (!YearMonth.from(startDate).isBefore(YearMonth.now()) || !Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                YearMonth month = this.getMonth(file);
+                if (month != null && !month.isAfter(lastMonth) && !month.atEndOfMonth().isBefore(startDate)) {
+                    openSnapshots.remove(month);
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+
+            // Stop using the open snapshots, which are opened again only if their files can be read
+            openSnapshots.clear();
+        }
+    }
+
+    /**
+     * @return  true if the directory holds at least one snapshot
+     */
+    public boolean hasSnapshots() {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            return files.iterator().hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds a DataReport for all entries between a start date (inclusive) and an end
+     * date (inclusive). Months with a snapshot are read from the snapshot, and each run
+     * of months without one is reported on by the FoodLogStorage. Since no day is split
+     * between the two, the partial reports merge into exactly the report for the range.
+     * @param startDate The start of the date range to report on (inclusive)
+     * @param endDate   The end of the date range to report on (inclusive)
+     * @return          A DataReport for the date range, or null if an error is thrown
+     */
+    public synchronized DataReport getDataReport(LocalDate startDate, LocalDate endDate) {
+        DataReport dataReport = new DataReport();
+        if (endDate.isBefore(startDate)) {
+            return dataReport;
+        }
+
+        Map<String, CalorieTableEntry> calorieMap = foodLogStorage.getCalorieMap();
+        if (calorieMap == null) {
+            return null;
+        }
+
+        // Start of the run of months not covered by snapshots, or null if there is none
+        LocalDate storageStart = null;
+
+        for (YearMonth month = YearMonth.from(startDate); !month.isAfter(YearMonth.from(endDate))
+                ; month = month.plusMonths(1)) {
+            LocalDate monthStart = month.atDay(1).isBefore(startDate) ? startDate : month.atDay(1);
+            LocalDate monthEnd = month.atEndOfMonth().isAfter(endDate) ? endDate : month.atEndOfMonth();
+
+            MonthlySnapshot snapshot = this.getSnapshot(month);
+            if (snapshot == null) {
+                if (storageStart == null) {
+                    storageStart = monthStart;
+                }
+                continue;
+            }
+
+            // Report on the months before this one that had no snapshot
+            if (storageStart != null) {
+                if (!this.mergeStorageReport(dataReport, storageStart, monthStart.minusDays(1))) {
+                    return null;
+                }
+                storageStart = null;
+            }
+            dataReport.merge(ReportBuilder.getDataReport(snapshot, monthStart, monthEnd, calorieMap));
+        }
+
+        if (storageStart != null && !this.mergeStorageReport(dataReport, storageStart, endDate)) {
+            return null;
+        }
+        return dataReport;
+    }
+
+    /**
+     * Merges the FoodLogStorage's report for a date range into a report
+     * @return  true if the report was merged, false if an error is thrown
+     */
+    private boolean mergeStorageReport(DataReport dataReport, LocalDate startDate, LocalDate endDate) {
+        DataReport storageReport = foodLogStorage.fetchDataReport(startDate, endDate);
+        if (storageReport == null) {
+            return false;
+        }
+        dataReport.merge(storageReport);
+        return true;
+    }
+
+    /**
+     * Returns the snapshot of a month, opening it the first time it is used
+     * @param month The month
+     * @return      The snapshot, or null if the month is not over, has no snapshot, or
+     *              its snapshot cannot be read
+     */
+    private MonthlySnapshot getSnapshot(YearMonth month) {
+        if (!month.isBefore(YearMonth.now())) {
+            return null;
+        }
+
+        MonthlySnapshot snapshot = openSnapshots.get(month);
+        if (snapshot == null && Files.exists(this.getFile(month))) {
+            try {
+                snapshot = MonthlySnapshot.open(this.getFile(month));
+                openSnapshots.put(month, snapshot);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param file  Path of a snapshot file
+     * @return      The month of the snapshot, or null if the file name has no month
+     */
+    private YearMonth getMonth(Path file) {
+        String fileName = file.getFileName().toString();
+        try {
+            return YearMonth.parse(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param month A month
+     * @return      Path of the month's snapshot file
+     */
+    private Path getFile(YearMonth month) {
+        return directory.resolve(FILE_PREFIX + month + FILE_SUFFIX);
+    }
+}
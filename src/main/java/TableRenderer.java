@@ -0,0 +1,181 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Renders food log entries as a table with columns aligned by spaces. Each
+ * column and its padding are written straight to a single large
+ * BufferedWriter, so the output is flushed in big chunks instead of one
+ * print call per column and one per padding space, and is not copied
+ * through another buffer first. The table can be written to the console or
+ * to a file or named pipe for bulk exports.
+ *
+ * @author iDoc1
+ *
+ */
+public class TableRenderer implements Closeable {
+
+    // Characters buffered before the output is written out
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Width of each column before the entry notes column, which is not padded
+    private static final int ID_WIDTH = 16;
+    private static final int DATE_WIDTH = 16;
+    private static final int FOOD_NAME_WIDTH = 32;
+    private static final int MEAL_TYPE_WIDTH = 16;
+    private static final int SERVING_WIDTH = 16;
+
+    // Spaces written as column padding, long enough to pad any column in one write
+    private static final char[] SPACES = " ".repeat(FOOD_NAME_WIDTH).toCharArray();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final boolean closeWriter;  // false for the console, which must stay open
+    private int lineLength = 0;  // Characters written on the current line
+    private int rowCount = 0;
+
+    /**
+     * Constructs a TableRenderer that writes to the given Writer
+     * @param writer        Unbuffered destination of the rendered table
+     * @param closeWriter   true if closing this renderer should close the writer
+     */
+    private TableRenderer(Writer writer, boolean closeWriter) {
+        this.writer = new BufferedWriter(writer, BUFFER_SIZE);
+        this.closeWriter = closeWriter;
+    }
+
+    /**
+     * @return  A TableRenderer that writes to the console. Closing it flushes the
+     *          table but leaves the console open.
+     */
+    public static TableRenderer toConsole() {
+        return new TableRenderer(new OutputStreamWriter(System.out, Charset.defaultCharset()), false);
+    }
+
+    /**
+     * Creates a TableRenderer that writes to the given file or named pipe, replacing
+     * any existing file
+     * @param file          Path of the file to write
+     * @return              A TableRenderer writing UTF-8 text to the file
+     * @throws IOException  If the file cannot be opened for writing
+     */
+    public static TableRenderer toFile(Path file) throws IOException {
+        return new TableRenderer(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), true);
+    }
+
+    /**
+     * Writes the column headers of the table
+     * @throws IOException  If the table cannot be written
+     */
+    public void writeHeader() throws IOException {
+        this.writeColumn("Entry ID", ID_WIDTH);
+        this.writeColumn("Entry Date", DATE_WIDTH);
+        this.writeColumn("Food Name", FOOD_NAME_WIDTH);
+        this.writeColumn("Meal Type", MEAL_TYPE_WIDTH);
+        this.writeColumn("Serving Qty", SERVING_WIDTH);
+        this.write("Entry Notes");
+        this.endLine();
+    }
+
+    /**
+     * Writes a single row of the table
+     * @param entryID           Entry ID of the row
+     * @param entryDate         Entry date of the row
+     * @param foodName          Food name of the row
+     * @param mealType          Meal type of the row
+     * @param servingQuantity   Serving quantity of the row
+     * @param entryNotes        Entry notes of the row
+     * @throws IOException      If the table cannot be written
+     */
+    public void writeRow(int entryID, String entryDate, String foodName, String mealType
+            , double servingQuantity, String entryNotes) throws IOException {
+        this.writeColumn(Integer.toString(entryID), ID_WIDTH);
+        this.writeColumn(entryDate, DATE_WIDTH);
+        this.writeColumn(foodName, FOOD_NAME_WIDTH);
+        this.writeColumn(mealType, MEAL_TYPE_WIDTH);
+        this.writeColumn(Double.toString(servingQuantity), SERVING_WIDTH);
+        this.write(entryNotes);
+        this.endLine();
+        this.rowCount++;
+    }
+
+    /**
+     * Writes a line of plain text, such as a message that no results were found
+     * @param text          Text to write
+     * @throws IOException  If the text cannot be written
+     */
+    public void writeMessage(String text) throws IOException {
+        this.write(text);
+        this.endLine();
+    }
+
+    /**
+     * @return  Number of rows written so far, not counting the header
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Writes out any buffered text
+     * @throws IOException  If the text cannot be written
+     */
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Writes out any buffered text and closes the destination unless it is the console
+     * @throws IOException  If the text cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closeWriter) {
+            this.writer.close();
+        } else {
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Writes a column value followed by enough spaces to fill the column width. Values
+     * longer than their column are left as they are.
+     * @param value Value of the column
+     * @param width Width of the column in characters
+     */
+    private void writeColumn(String value, int width) throws IOException {
+        int start = this.lineLength;
+        this.write(value);
+
+        int padding = start + width - this.lineLength;
+        while (padding > 0) {
+            int count = Math.min(padding, SPACES.length);
+            this.writer.write(SPACES, 0, count);
+            this.lineLength += count;
+            padding -= count;
+        }
+    }
+
+    /**
+     * Writes text to the current line, writing null values as "null"
+     */
+    private void write(String text) throws IOException {
+        String value = String.valueOf(text);
+        this.writer.write(value);
+        this.lineLength += value.length();
+    }
+
+    /**
+     * Ends the current line with a line separator
+     */
+    private void endLine() throws IOException {
+        this.writer.write(LINE_SEPARATOR);
+        this.lineLength = 0;
+    }
+}
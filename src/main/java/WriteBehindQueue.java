@@ -0,0 +1,574 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts food log entries in the background so that the user does not wait
+ * on a database round trip for every entry. Entries are placed on a bounded
+ * queue and a writer thread drains them into the food log in batched
+ * transactions, retrying with a growing delay when the database reports a
+ * transient failure until it succeeds or the queue is closed. If a journal
+ * file is given, every entry is appended to it before being queued and a
+ * commit mark is appended after each batch is written, so entries that were
+ * queued but not yet written when the process died are written again the
+ * next time the queue is started. Entries are queued in sequence order, so a
+ * commit mark covers every earlier entry. Entries that could not be written
+ * are marked as failed in the journal instead, so they are not covered by
+ * later commit marks and are written again on the next start. An entry may
+ * be written twice if the process dies between a commit and its commit mark.
+ *
+ * @author iDoc1
+ *
+ */
+public class WriteBehindQueue {
+
+    // Time the writer waits for more entries before checking whether it should stop
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    // Delay before the first retry of a transient failure, doubled on each further retry
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10 * 1000;
+
+    // Journal record types
+    private static final String ENTRY_RECORD = "E";
+    private static final String COMMIT_RECORD = "C";
+    private static final String FAILED_RECORD = "F";
+    private static final String DROPPED_RECORD = "D";
+    private static final String NULL_FIELD = "\\N";
+
+    private final FoodLogComm foodLogComm;
+    private final BlockingQueue<QueuedEntry> queue;
+    private final int batchSize;
+    private final Path journalFile;
+    private final Thread writerThread;
+
+    // Entries recovered from the journal, written before the queue and only used by the writer
+    private final Deque<QueuedEntry> recovered = new ArrayDeque<>();
+
+    // Held while an entry is numbered and put on the queue, so the queue stays in sequence order
+    private final Object enqueueLock = new Object();
+
+    private BufferedWriter journal;  // null if entries are not journaled
+    private long nextSequence = 1;
+    private int pendingCount = 0;  // Entries queued or being written
+    private int failedCount = 0;  // Entries left in the journal because they could not be written
+    private volatile String lastError = null;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a WriteBehindQueue and starts its writer thread. Entries left in the
+     * journal by an earlier run that were never written are written first. They do not
+     * count toward the capacity, so the constructor does not wait on the database.
+     * @param foodLogComm   Object used to insert entries into the food log database
+     * @param capacity      Maximum number of new entries waiting to be written before
+     *                      enqueue blocks
+     * @param batchSize     Maximum number of entries written per transaction
+     * @param journalFile   File entries are journaled to until written, or null to not
+     *                      journal entries
+     * @throws IOException  If the journal file cannot be read or written
+     */
+    public WriteBehindQueue(FoodLogComm foodLogComm, int capacity, int batchSize, Path journalFile)
+            throws IOException {
+        this.foodLogComm = foodLogComm;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.journalFile = journalFile;
+
+        // Recover unwritten entries and replace the journal with one holding only them
+        if (journalFile != null) {
+            for (FoodTableEntry entry : this.readJournal(journalFile)) {
+                this.recovered.add(new QueuedEntry(this.nextSequence++, entry));
+            }
+            rewriteJournal(journalFile, this.recovered);
+            this.journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8
+                    , StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.pendingCount = this.recovered.size();
+        }
+
+        this.writerThread = new Thread(this::writeEntries, "food-log-write-behind");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues an entry to be inserted into the food log, waiting for space if the queue
+     * is full. The entry is journaled before this method returns.
+     * @param entry The entry to insert
+     * @return      true if the entry was queued, false if the queue is closed or the
+     *              entry could not be journaled
+     */
+    public boolean enqueue(FoodTableEntry entry) {
+        synchronized (this.enqueueLock) {
+            QueuedEntry queued;
+            synchronized (this) {
+                if (this.closed) {
+                    return false;
+                }
+
+                queued = new QueuedEntry(this.nextSequence++, entry);
+                try {
+                    this.journalEntry(queued);
+                } catch (IOException e) {
+                    this.lastError = "Entry could not be journaled: " + e.getMessage();
+                    return false;
+                }
+                this.pendingCount++;
+            }
+
+            // Numbering and queueing under one lock keeps later entries from being queued first
+            try {
+                this.queue.put(queued);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.dropEntry(queued);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued entry has been written or dropped
+     * @param timeoutMillis Maximum time to wait
+     * @return              true if all entries were written, false if the wait timed out
+     */
+    public synchronized boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.pendingCount > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                this.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting entries, waits for queued entries to be written, then stops the
+     * writer thread and closes the journal. Entries still unwritten when the timeout
+     * passes remain in the journal and are written on the next start.
+     * @param timeoutMillis Maximum time to wait for queued entries to be written
+     * @return              true if every entry was written before closing
+     */
+    public boolean close(long timeoutMillis) {
+        synchronized (this) {
+            if (this.closed) {
+                return this.pendingCount == 0 && this.failedCount == 0;
+            }
+            this.closed = true;
+        }
+
+        boolean flushed = this.flush(timeoutMillis);
+        this.writerThread.interrupt();
+        try {
+            this.writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (this.journal != null) {
+                try {
+                    this.journal.close();
+                } catch (IOException e) {
+                    this.lastError = "Journal could not be closed: " + e.getMessage();
+                    flushed = false;
+                }
+                this.journal = null;
+            }
+            return flushed && this.failedCount == 0;
+        }
+    }
+
+    /**
+     * @return  Number of entries queued or being written
+     */
+    public synchronized int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * @return  Number of entries that could not be written this session. Journaled
+     *          entries are written again the next time the queue is started.
+     */
+    public synchronized int getFailedCount() {
+        return this.failedCount;
+    }
+
+    /**
+     * @return  A description of the most recent failure to write or journal entries,
+     *          or null if there has been none
+     */
+    public String getLastError() {
+        return this.lastError;
+    }
+
+    /**
+     * Writes the recovered entries, then drains the queue in batches until the queue is
+     * closed and empty, or until close interrupts the writer after its timeout passes.
+     * Entries not yet written when the writer stops remain in the journal.
+     */
+    private void writeEntries() {
+        List<QueuedEntry> batch = new ArrayList<>(this.batchSize);
+
+        // Recovered entries have the lowest sequence numbers, so they are written first
+        while (!this.recovered.isEmpty()) {
+            while (batch.size() < this.batchSize && !this.recovered.isEmpty()) {
+                batch.add(this.recovered.poll());
+            }
+            if (!this.writeBatch(batch)) {
+                return;
+            }
+            batch.clear();
+        }
+
+        while (!(this.closed && this.queue.isEmpty())) {
+            try {
+                QueuedEntry first = this.queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            this.queue.drainTo(batch, this.batchSize - 1);
+            if (!this.writeBatch(batch)) {
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of entries in one transaction, retrying transient failures. If the
+     * batch fails for another reason, it is written again row by row so that only the
+     * rows that caused the failure are left unwritten. Unwritten rows stay in the
+     * journal to be written again on the next start.
+     * @param batch Entries to write, in queue order
+     * @return      true if the batch was handled, false if the writer was interrupted,
+     *              in which case the whole batch stays in the journal
+     */
+    private boolean writeBatch(List<QueuedEntry> batch) {
+        List<FoodTableEntry> entries = new ArrayList<>(batch.size());
+        for (QueuedEntry queued : batch) {
+            entries.add(queued.entry);
+        }
+
+        long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+        List<QueuedEntry> failed = new ArrayList<>();
+        while (true) {
+            try {
+                this.foodLogComm.insertRowsAtomically(entries);
+                break;
+            } catch (SQLTransientException | SQLRecoverableException e) {
+
+                // Stop without dropping the entries, which stay journaled for the next start
+                if (!sleep(retryDelay)) {
+                    this.stopWriting(batch, e);
+                    return false;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+            } catch (SQLException e) {
+
+                // A connection borrow interrupted by close fails for every row, so nothing is retried
+                if (Thread.currentThread().isInterrupted()) {
+                    this.stopWriting(batch, e);
+                    return false;
+                }
+
+                BatchInsertResult result = this.foodLogComm.insertRows(entries);
+                if (Thread.currentThread().isInterrupted() && !result.getFailedRows().isEmpty()) {
+                    this.stopWriting(batch, e);
+                    return false;
+                }
+                for (Map.Entry<Integer, String> failure : result.getFailedRows().entrySet()) {
+                    failed.add(batch.get(failure.getKey()));
+                    this.lastError = "Entry for " + entries.get(failure.getKey()).getFoodName()
+                            + " not written: " + failure.getValue();
+                }
+                break;
+            }
+        }
+
+        this.commitEntries(batch.get(batch.size() - 1).sequence, batch.size(), failed);
+        return true;
+    }
+
+    /**
+     * Records why the writer stopped before writing a batch. The batch is left pending
+     * and uncommitted in the journal.
+     * @param batch     Entries that were not written
+     * @param cause     The failure that stopped the writer
+     */
+    private void stopWriting(List<QueuedEntry> batch, SQLException cause) {
+        this.lastError = batch.size() + " entries not written: " + cause.getMessage();
+    }
+
+    /**
+     * Marks the entries up to the given sequence number as written in the journal,
+     * except for the failed entries, which are marked so that they are written again on
+     * the next start. The journal is started over once nothing is pending and no entry
+     * has failed.
+     * @param lastSequence  Sequence number of the last entry in the batch
+     * @param count         Number of entries in the batch
+     * @param failed        Entries of the batch that could not be written
+     */
+    private synchronized void commitEntries(long lastSequence, int count, List<QueuedEntry> failed) {
+        this.failedCount += failed.size();
+        if (this.journal != null) {
+            try {
+                if (this.pendingCount == count && this.failedCount == 0) {
+                    this.journal.close();
+                    this.journal = Files.newBufferedWriter(this.journalFile, StandardCharsets.UTF_8
+                            , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                } else {
+                    for (QueuedEntry queued : failed) {
+                        this.journal.write(FAILED_RECORD + "\t" + queued.sequence);
+                        this.journal.newLine();
+                    }
+                    this.journal.write(COMMIT_RECORD + "\t" + lastSequence);
+                    this.journal.newLine();
+                    this.journal.flush();
+                }
+            } catch (IOException e) {
+                this.lastError = "Journal not updated: " + e.getMessage();
+            }
+        }
+        this.finishEntries(count);
+    }
+
+    /**
+     * Marks an entry that was journaled but never queued as dropped, so that it is not
+     * written on the next start, and removes it from the pending count
+     * @param queued    The entry that was not queued
+     */
+    private synchronized void dropEntry(QueuedEntry queued) {
+        if (this.journal != null) {
+            try {
+                this.journal.write(DROPPED_RECORD + "\t" + queued.sequence);
+                this.journal.newLine();
+                this.journal.flush();
+            } catch (IOException e) {
+                this.lastError = "Journal not updated: " + e.getMessage();
+            }
+        }
+        this.finishEntries(1);
+    }
+
+    /**
+     * Removes the given number of entries from the pending count and wakes any thread
+     * waiting in flush
+     * @param count Number of entries finished
+     */
+    private synchronized void finishEntries(int count) {
+        this.pendingCount -= count;
+        this.notifyAll();
+    }
+
+    /**
+     * Appends an entry to the journal and writes it out to the operating system, so
+     * that it survives the process dying
+     * @param queued        The entry to journal
+     * @throws IOException  If the entry cannot be written
+     */
+    private void journalEntry(QueuedEntry queued) throws IOException {
+        if (this.journal == null) {
+            return;
+        }
+
+        this.journal.write(entryRecord(queued));
+        this.journal.newLine();
+        this.journal.flush();
+    }
+
+    /**
+     * Replaces the journal with one holding only the given entries. The new journal is
+     * written beside the old one and forced to disk before being moved into place, so
+     * the entries are never left only in memory.
+     * @param journalFile   The journal file
+     * @param entries       Entries to journal, in sequence order
+     * @throws IOException  If the new journal cannot be written
+     */
+    private static void rewriteJournal(Path journalFile, Iterable<QueuedEntry> entries) throws IOException {
+        StringBuilder records = new StringBuilder();
+        for (QueuedEntry queued : entries) {
+            records.append(entryRecord(queued)).append(System.lineSeparator());
+        }
+
+        // Write beside the journal then move it into place
+        Path tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE
+                , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Formats an entry as a journal line
+     * @param queued    The entry to journal
+     * @return          The journal line, without a line break
+     */
+    private static String entryRecord(QueuedEntry queued) {
+        FoodTableEntry entry = queued.entry;
+        return String.join("\t", ENTRY_RECORD, Long.toString(queued.sequence)
+                , escape(entry.getEntryDate() == null ? null : entry.getEntryDate().toString())
+                , escape(entry.getFoodName()), escape(entry.getMealType())
+                , Double.toString(entry.getServingQuantity()), escape(entry.getEntryNotes()));
+    }
+
+    /**
+     * Reads the entries in a journal that were not marked as written
+     * @param journalFile   The journal file
+     * @return              Unwritten entries in the order they were queued
+     * @throws IOException  If the journal cannot be read
+     */
+    private List<FoodTableEntry> readJournal(Path journalFile) throws IOException {
+        List<FoodTableEntry> entries = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        Set<Long> failedSequences = new HashSet<>();
+        Set<Long> droppedSequences = new HashSet<>();
+        long committedSequence = 0;
+        int skippedCount = 0;
+
+        if (!Files.exists(journalFile)) {
+            return entries;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+
+                // A partly written last line is an entry that was never queued
+                try {
+                    if (fields[0].equals(COMMIT_RECORD) && fields.length == 2) {
+                        committedSequence = Math.max(committedSequence, Long.parseLong(fields[1]));
+                    } else if (fields[0].equals(FAILED_RECORD) && fields.length == 2) {
+                        failedSequences.add(Long.parseLong(fields[1]));
+                    } else if (fields[0].equals(DROPPED_RECORD) && fields.length == 2) {
+                        droppedSequences.add(Long.parseLong(fields[1]));
+                    } else if (fields[0].equals(ENTRY_RECORD) && fields.length == 7) {
+                        String entryDate = unescape(fields[2]);
+                        entries.add(new FoodTableEntry(entryDate == null ? null : LocalDate.parse(entryDate)
+                                , unescape(fields[3]), unescape(fields[4]), Double.parseDouble(fields[5])
+                                , unescape(fields[6])));
+                        sequences.add(Long.parseLong(fields[1]));
+                    }
+                } catch (RuntimeException e) {
+                    skippedCount++;
+                }
+            }
+        }
+        if (skippedCount > 0) {
+            this.lastError = skippedCount + " unreadable journal lines were skipped.";
+        }
+
+        // Batches are written in queue order, so every entry up to the last commit mark was
+        // written except for the entries marked as failed
+        List<FoodTableEntry> unwritten = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            long sequence = sequences.get(i);
+            if ((sequence > committedSequence || failedSequences.contains(sequence))
+                    && !droppedSequences.contains(sequence)) {
+                unwritten.add(entries.get(i));
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * Escapes a journal field so that it contains no tabs or line breaks
+     * @param value Value of the field, which may be null
+     * @return      The escaped field
+     */
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL_FIELD;
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Reverses escape
+     * @param field An escaped journal field
+     * @return      The original value, which may be null
+     */
+    private static String unescape(String field) {
+        if (field.equals(NULL_FIELD)) {
+            return null;
+        }
+
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                value.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Sleeps for the given time
+     * @param millis    Time to sleep
+     * @return          false if the sleep was interrupted
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * An entry on the queue along with its journal sequence number
+     */
+    private static class QueuedEntry {
+        private final long sequence;
+        private final FoodTableEntry entry;
+
+        QueuedEntry(long sequence, FoodTableEntry entry) {
+            this.sequence = sequence;
+            this.entry = entry;
+        }
+    }
+}
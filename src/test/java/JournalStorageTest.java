@@ -0,0 +1,207 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that JournalStorage keeps its entries across reopening, recovers from a
+ * torn write at the end of its log, and compacts without losing current data.
+ *
+ * @author iDoc1
+ *
+ */
+public class JournalStorageTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void entriesAreReplayedAfterReopening() throws IOException {
+        JournalStorage storage = openWithFood();
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Snack", 2), TODAY, "Green"));
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Lunch", 1.5), TODAY.minusDays(1), null));
+        assertTrue(storage.close());
+
+        JournalStorage reopened = new JournalStorage(this.directory);
+        LinkedHashMap<Integer, FoodTableEntry> entries = reopened.fetchEntriesFromDateRange(TODAY.minusDays(1), TODAY);
+        assertEquals(2, entries.size());
+
+        FoodTableEntry entry = reopened.fetchEntry(1);
+        assertEquals(TODAY, entry.getEntryDate());
+        assertEquals("apple", entry.getFoodName());
+        assertEquals("Snack", entry.getMealType());
+        assertEquals(2, entry.getServingQuantity());
+        assertEquals("Green", entry.getEntryNotes());
+        assertEquals(80, reopened.getCalorieMap().get("apple").getCaloriesPerServing());
+
+        // New entries continue after the highest replayed ID
+        assertTrue(reopened.insertRowGivenDate(new FoodDetails("apple", "Dinner", 1), TODAY, null));
+        assertEquals("Dinner", reopened.fetchEntry(3).getMealType());
+        assertTrue(reopened.close());
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws IOException {
+        JournalStorage storage = openWithFood();
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Snack", 1), TODAY, null));
+        assertTrue(storage.close());
+
+        // A record header promising more bytes than were written, as left by a crash
+        Path logFile = currentLog();
+        long length = Files.size(logFile);
+        appendBytes(logFile, ByteBuffer.allocate(10).putInt(100).putInt(12345));
+
+        JournalStorage reopened = new JournalStorage(this.directory);
+        assertEquals(length, Files.size(logFile));
+        assertEquals("Snack", reopened.fetchEntry(1).getMealType());
+        assertTrue(reopened.insertRowGivenDate(new FoodDetails("apple", "Lunch", 1), TODAY, null));
+        assertTrue(reopened.close());
+
+        JournalStorage again = new JournalStorage(this.directory);
+        assertEquals("Lunch", again.fetchEntry(2).getMealType());
+        assertTrue(again.close());
+    }
+
+    @Test
+    public void damagedRecordBeforeValidRecordsFailsToOpen() throws IOException {
+        JournalStorage storage = openWithFood();
+        storage.compact();
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Snack", 1), TODAY, null));
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Lunch", 1), TODAY, null));
+        assertTrue(storage.close());
+
+        // Flip a payload byte of the first appended entry, leaving the second one intact
+        Path logFile = currentLog();
+        byte[] bytes = Files.readAllBytes(logFile);
+        int secondRecordLength = (bytes.length - (int) findFirstEntryOffset(bytes)) / 2;
+        bytes[bytes.length - 2 * secondRecordLength + 12] ^= 0x55;
+        Files.write(logFile, bytes);
+        long length = Files.size(logFile);
+
+        assertThrows(IOException.class, () -> new JournalStorage(this.directory));
+        assertEquals(length, Files.size(logFile));
+    }
+
+    @Test
+    public void compactionKeepsOnlyCurrentEntries() throws IOException {
+        JournalStorage storage = openWithFood();
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Snack", 1), TODAY, null));
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Lunch", 1), TODAY.minusDays(90), null));
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "Dinner", 1), TODAY.minusDays(1), null));
+        assertTrue(storage.editEntry(1, TODAY, "apple", "Breakfast", 3, "Edited"));
+        assertTrue(storage.deleteOldEntries(30));
+        long uncompactedLength = Files.size(currentLog());
+
+        storage.compact();
+        assertTrue(Files.size(currentLog()) < uncompactedLength);
+        assertEquals(1, countFiles(".journal"));
+        assertEquals(1, countFiles(".index"));
+
+        // Edits after the compaction are read from the appended log records
+        assertTrue(storage.editEntry(3, TODAY.minusDays(2), "apple", "Dinner", 2, null));
+        assertTrue(storage.close());
+
+        JournalStorage reopened = new JournalStorage(this.directory);
+        assertEquals("Breakfast", reopened.fetchEntry(1).getMealType());
+        assertEquals(3, reopened.fetchEntry(1).getServingQuantity());
+        assertNull(reopened.fetchEntry(2));
+        assertEquals(TODAY.minusDays(2), reopened.fetchEntry(3).getEntryDate());
+
+        List<Integer> entryIDs = new ArrayList<>(reopened.fetchEntriesFromDateRange(TODAY.minusDays(100), TODAY)
+                .keySet());
+        assertEquals(List.of(3, 1), entryIDs);
+        assertTrue(reopened.close());
+    }
+
+    @Test
+    public void pagesOfAnotherStorageAreRejected() throws IOException {
+        JournalStorage storage = openWithFood();
+        FoodLogPage foreignPage = new FoodLogPage(new LinkedHashMap<>(), 10, true, true, "not a journal query");
+
+        assertNull(storage.fetchNextPage(foreignPage));
+        assertNull(storage.fetchPreviousPage(foreignPage));
+        assertNotNull(storage.fetchPageFromDateRange(TODAY, TODAY, 10));
+        assertTrue(storage.close());
+    }
+
+    @Test
+    public void foodDetailsMatchEntriesIgnoringCase() throws IOException {
+        JournalStorage storage = new JournalStorage(this.directory);
+        assertTrue(storage.insertFoodDetails("Apple", 80, "fruit"));
+        assertFalse(storage.insertFoodDetails("APPLE", 90, "fruit"));
+        assertTrue(storage.insertRowGivenDate(new FoodDetails("apple", "snack", 2), TODAY, null));
+
+        assertEquals(160, storage.fetchDataReport(TODAY, TODAY).getTotalCalories());
+        assertTrue(storage.close());
+
+        JournalStorage reopened = new JournalStorage(this.directory);
+        assertEquals(80, reopened.getCalorieMap().get("apple").getCaloriesPerServing());
+        assertEquals(1, reopened.deleteFoodDetails("APPLE"));
+        assertNull(reopened.getCalorieMap().get("apple"));
+        assertTrue(reopened.close());
+    }
+
+    /**
+     * Opens the storage in the test directory with one food added
+     */
+    private JournalStorage openWithFood() throws IOException {
+        JournalStorage storage = new JournalStorage(this.directory);
+        assertTrue(storage.insertFoodDetails("apple", 80, "Fruit"));
+        return storage;
+    }
+
+    /**
+     * @return  The log file named by CURRENT, or the first log if there is no CURRENT file
+     */
+    private Path currentLog() throws IOException {
+        Path currentFile = this.directory.resolve("CURRENT");
+        if (!Files.exists(currentFile)) {
+            return this.directory.resolve("food_log.journal");
+        }
+        return this.directory.resolve(Files.readAllLines(currentFile).get(0));
+    }
+
+    /**
+     * @return  The offset just past the foods of a freshly compacted log holding one food
+     */
+    private static long findFirstEntryOffset(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int foodLength = buffer.getInt(4 + 2 + 8);
+        return 4 + 2 + 8 + 4 + 4 + foodLength;
+    }
+
+    private int countFiles(String suffix) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + suffix)) {
+            for (Path file : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void appendBytes(Path file, ByteBuffer bytes) throws IOException {
+        bytes.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(bytes);
+        }
+    }
+}